@@ -35,4 +35,46 @@ const createApi = (baseUrl) => {
   return api;
 };
 
+/**
+ * Subscribe to a Server-Sent Events stream.
+ * EventSource cannot send the Authorization header, so the stream is read with fetch.
+ * Returns a function that closes the stream.
+ */
+export const streamEvents = (baseUrl, path, onEvent) => {
+  const controller = new AbortController();
+  const token = localStorage.getItem('token');
+
+  (async () => {
+    const response = await fetch(baseUrl + path, {
+      headers: { Accept: 'text/event-stream', ...(token ? { Authorization: `Bearer ${token}` } : {}) },
+      signal: controller.signal,
+    });
+    const reader = response.body.getReader();
+    const decoder = new TextDecoder();
+    let buffer = '';
+
+    for (;;) {
+      const { done, value } = await reader.read();
+      if (done) break;
+      buffer += decoder.decode(value, { stream: true });
+
+      let boundary;
+      while ((boundary = buffer.indexOf('\n\n')) >= 0) {
+        const block = buffer.slice(0, boundary);
+        buffer = buffer.slice(boundary + 2);
+        const data = block
+          .split('\n')
+          .filter((line) => line.startsWith('data:'))
+          .map((line) => line.slice(5))
+          .join('\n');
+        if (data) onEvent(JSON.parse(data));
+      }
+    }
+  })().catch((error) => {
+    if (error.name !== 'AbortError') console.error('Event stream failed', error);
+  });
+
+  return () => controller.abort();
+};
+
 export default createApi;
@@ -1,5 +1,5 @@
 import React, { useState, useEffect } from 'react';
-import { Table, Button, Modal, Form, Input, message, Space } from 'antd';
+import { Table, Button, Modal, Form, Input, Select, message, Space } from 'antd';
 import { PlusOutlined, EditOutlined, DeleteOutlined } from '@ant-design/icons';
 import createApi from '../api';
 
@@ -9,6 +9,7 @@ function Groups({ apiBaseUrl }) {
   const [modalVisible, setModalVisible] = useState(false);
   const [editingGroup, setEditingGroup] = useState(null);
   const [pagination, setPagination] = useState({ current: 1, pageSize: 10, total: 0 });
+  const [memberOptions, setMemberOptions] = useState([]);
 
   const [form] = Form.useForm();
   const api = createApi(apiBaseUrl);
@@ -35,16 +36,35 @@ function Groups({ apiBaseUrl }) {
     }
   };
 
+  const searchMembers = async (prefix) => {
+    if (!prefix) return;
+    try {
+      const response = await api.get('/users/suggest', { params: { prefix } });
+      // Keep the options of selected members so their labels stay visible
+      const selected = form.getFieldValue('members') || [];
+      const found = response.data
+        .map((user) => ({ value: String(user.id), label: `${user.loginName} (${user.displayName})` }))
+        .filter((option) => !selected.includes(option.value));
+      setMemberOptions((prev) => [...prev.filter((option) => selected.includes(option.value)), ...found]);
+    } catch (error) {
+      setMemberOptions([]);
+    }
+  };
+
   const handleCreate = () => {
     setEditingGroup(null);
     form.resetFields();
+    setMemberOptions([]);
     setModalVisible(true);
   };
 
   const handleEdit = (group) => {
     setEditingGroup(group);
+    const members = (group.members || []).map((member) => ({ value: member.value, label: member.display }));
+    setMemberOptions(members);
     form.setFieldsValue({
       displayName: group.displayName,
+      members: members.map((member) => member.value),
     });
     setModalVisible(true);
   };
@@ -64,6 +84,7 @@ function Groups({ apiBaseUrl }) {
       const groupData = {
         schemas: ['urn:ietf:params:scim:schemas:core:2.0:Group'],
         displayName: values.displayName,
+        members: (values.members || []).map((value) => ({ value })),
       };
 
       if (editingGroup) {
@@ -132,6 +153,16 @@ function Groups({ apiBaseUrl }) {
           <Form.Item name="displayName" label="Group Name" rules={[{ required: true }]}>
             <Input />
           </Form.Item>
+          <Form.Item name="members" label="Members">
+            <Select
+              mode="multiple"
+              showSearch
+              filterOption={false}
+              onSearch={searchMembers}
+              options={memberOptions}
+              placeholder="Type a login name, email or name"
+            />
+          </Form.Item>
         </Form>
       </Modal>
     </div>
@@ -1,29 +1,80 @@
-import React, { useState, useEffect } from 'react';
-import { Table, Button, Upload, message, Tag, Space, Modal, Typography } from 'antd';
+import React, { useState, useEffect, useRef } from 'react';
+import { Table, Button, Upload, message, Tag, Space, Modal, Typography, Alert, InputNumber, Input, Select } from 'antd';
 import { UploadOutlined, CloudUploadOutlined, DownloadOutlined } from '@ant-design/icons';
-import createApi from '../api';
+import createApi, { streamEvents } from '../api';
 
 const { Dragger } = Upload;
 const { Text, Paragraph } = Typography;
 
 function Provisioning({ apiBaseUrl }) {
   const [jobs, setJobs] = useState([]);
+  const [nextCursor, setNextCursor] = useState(null);
+  const [statusFilter, setStatusFilter] = useState(null);
   const [loading, setLoading] = useState(false);
   const [uploading, setUploading] = useState(false);
   const [dryRun, setDryRun] = useState(true);
+  const [workers, setWorkers] = useState(1);
+  const [delta, setDelta] = useState(false);
+  const [restUrl, setRestUrl] = useState('');
+  const [pulling, setPulling] = useState(false);
   const [selectedFile, setSelectedFile] = useState(null);
+  const [progress, setProgress] = useState(null);
+  const [report, setReport] = useState(null);
+  const closeStream = useRef(null);
 
   const api = createApi(apiBaseUrl);
 
   useEffect(() => {
     fetchJobs();
+    return () => closeStream.current && closeStream.current();
   }, []);
 
-  const fetchJobs = async () => {
+  const followProgress = (jobId) => {
+    if (closeStream.current) closeStream.current();
+    closeStream.current = streamEvents(apiBaseUrl, `/provisioning/jobs/${jobId}/events`, (event) => {
+      setProgress(event);
+      if (event.status === 'COMPLETED' || event.status === 'FAILED' || event.status === 'CANCELLED') {
+        closeStream.current();
+        closeStream.current = null;
+        if (event.status === 'COMPLETED') {
+          message.success(dryRun ? 'Dry run completed' : 'Provisioning completed');
+          if (dryRun) fetchReport(jobId);
+        } else {
+          message.error('Provisioning failed');
+        }
+        fetchJobs();
+      }
+    });
+  };
+
+  const formatEta = (seconds) => {
+    if (seconds === null || seconds === undefined) return '-';
+    if (seconds < 60) return `${seconds}s`;
+    return `${Math.floor(seconds / 60)}m ${seconds % 60}s`;
+  };
+
+  // Loads the latest page; older pages are appended by loadMoreJobs
+  const fetchJobs = async (status = statusFilter) => {
+    setLoading(true);
+    try {
+      const response = await api.get('/provisioning/jobs', { params: { status: status || undefined, size: 20 } });
+      setJobs(response.data.jobs);
+      setNextCursor(response.data.nextCursor);
+    } catch (error) {
+      message.error('Failed to fetch jobs');
+    } finally {
+      setLoading(false);
+    }
+  };
+
+  const loadMoreJobs = async () => {
     setLoading(true);
     try {
-      const response = await api.get('/provisioning/jobs');
-      setJobs(response.data);
+      const response = await api.get('/provisioning/jobs', {
+        params: { status: statusFilter || undefined, cursor: nextCursor, size: 20 },
+      });
+      setJobs((current) => [...current, ...response.data.jobs]);
+      setNextCursor(response.data.nextCursor);
     } catch (error) {
       message.error('Failed to fetch jobs');
     } finally {
@@ -31,31 +82,62 @@ function Provisioning({ apiBaseUrl }) {
     }
   };
 
+  const handleStatusFilter = (status) => {
+    setStatusFilter(status);
+    fetchJobs(status);
+  };
+
+  const fetchReport = async (jobId) => {
+    try {
+      const response = await api.get(`/provisioning/jobs/${jobId}/report`);
+      setReport({ jobId, ...response.data });
+    } catch (error) {
+      message.error('Failed to fetch dry run report');
+    }
+  };
+
+  const reportColumns = [
+    { title: 'Row', dataIndex: 'rowNumber', width: 80 },
+    { title: 'Type', dataIndex: 'type', width: 180, render: (type) => <Tag>{type}</Tag> },
+    { title: 'Login Name', dataIndex: 'loginName', width: 160 },
+    { title: 'Message', dataIndex: 'message' },
+    { title: 'First Row', dataIndex: 'firstRowNumber', width: 90 },
+  ];
+
+  const sourceTypeOf = (fileName) => {
+    const name = fileName.toLowerCase();
+    if (name.endsWith('.ndjson') || name.endsWith('.jsonl')) return 'NDJSON';
+    if (name.endsWith('.json')) return 'JSON';
+    return 'CSV';
+  };
+
   const handleUpload = async () => {
     if (!selectedFile) {
-      message.warning('Please select a CSV file first');
+      message.warning('Please select a file first');
       return;
     }
 
     setUploading(true);
     try {
+      const sourceType = sourceTypeOf(selectedFile.name);
+
       // Create job first
       const jobResponse = await api.post('/provisioning/jobs', {
-        jobName: 'CSV Import - ' + new Date().toISOString(),
+        jobName: `${sourceType} Import - ` + new Date().toISOString(),
+        sourceType,
         sourceLocation: selectedFile.name,
+        sourceKey: selectedFile.name,
         triggeredBy: 'admin',
       });
 
-      // Upload and execute
-      const formData = new FormData();
-      formData.append('file', selectedFile);
-      formData.append('dryRun', dryRun);
-
-      await api.post(`/provisioning/jobs/${jobResponse.data.id}/execute`, formData, {
-        headers: { 'Content-Type': 'multipart/form-data' },
+      // Stream the file as the request body so large feeds bypass multipart limits
+      await api.post(`/provisioning/jobs/${jobResponse.data.id}/execute`, selectedFile, {
+        params: { dryRun, workers, delta },
+        headers: { 'Content-Type': sourceType === 'CSV' ? 'text/csv' : 'application/octet-stream' },
       });
 
-      message.success(dryRun ? 'Dry run completed' : 'Provisioning completed');
+      message.info('Provisioning job queued');
+      followProgress(jobResponse.data.id);
       fetchJobs();
       setSelectedFile(null);
     } catch (error) {
@@ -65,9 +147,89 @@ function Provisioning({ apiBaseUrl }) {
     }
   };
 
+  const handlePull = async () => {
+    if (!restUrl) {
+      message.warning('Please enter the source URL first');
+      return;
+    }
+
+    setPulling(true);
+    try {
+      const jobResponse = await api.post('/provisioning/jobs', {
+        jobName: 'REST Pull - ' + new Date().toISOString(),
+        sourceType: 'REST',
+        sourceLocation: restUrl,
+        triggeredBy: 'admin',
+      });
+
+      await api.post(`/provisioning/jobs/${jobResponse.data.id}/pull`, null, {
+        params: { dryRun, delta },
+      });
+
+      message.info('Provisioning job queued');
+      followProgress(jobResponse.data.id);
+      fetchJobs();
+    } catch (error) {
+      message.error(error.response?.data?.error || 'Provisioning failed');
+    } finally {
+      setPulling(false);
+    }
+  };
+
+  const handleResume = async (jobId) => {
+    try {
+      await api.post(`/provisioning/jobs/${jobId}/resume`);
+      message.info(`Resuming job #${jobId}`);
+      followProgress(jobId);
+      fetchJobs();
+    } catch (error) {
+      message.error(error.response?.data?.error || 'Failed to resume job');
+    }
+  };
+
+  const handleCancel = async (jobId) => {
+    try {
+      await api.post(`/provisioning/jobs/${jobId}/cancel`);
+      message.info(`Cancelling job #${jobId}`);
+      fetchJobs();
+    } catch (error) {
+      message.error(error.response?.data?.error || 'Failed to cancel job');
+    }
+  };
+
+  // An empty ceiling falls back to the configured one
+  const handleThrottle = async (job, rowsPerSecond) => {
+    try {
+      await api.put(`/provisioning/jobs/${job.id}/throttle`, {
+        rowsPerSecond: rowsPerSecond ?? null,
+        maxInFlightChunks: job.maxInFlightChunks ?? null,
+      });
+      message.info(rowsPerSecond != null
+        ? `Job #${job.id} limited to ${rowsPerSecond} rows/s`
+        : `Job #${job.id} uses the default rate limit`);
+      fetchJobs();
+    } catch (error) {
+      message.error(error.response?.data?.error || 'Failed to change rate limit');
+    }
+  };
+
+  const downloadErrors = async (jobId) => {
+    try {
+      const response = await api.get(`/provisioning/jobs/${jobId}/errors`, { responseType: 'blob' });
+      const url = window.URL.createObjectURL(response.data);
+      const a = document.createElement('a');
+      a.href = url;
+      a.download = `job-${jobId}-errors.csv`;
+      a.click();
+      window.URL.revokeObjectURL(url);
+    } catch (error) {
+      message.error('No error file for this job');
+    }
+  };
+
   const downloadTemplate = () => {
     const csvContent =
-      'loginName,email,firstName,lastName,active\njohn.doe,john@example.com,John,Doe,true\njane.smith,jane@example.com,Jane,Smith,false';
+      'loginName,email,firstName,lastName,active,groups\njohn.doe,john@example.com,John,Doe,true,Staff;Sales\njane.smith,jane@example.com,Jane,Smith,false,Staff';
     const blob = new Blob([csvContent], { type: 'text/csv' });
     const url = window.URL.createObjectURL(blob);
     const a = document.createElement('a');
@@ -87,9 +249,11 @@ function Provisioning({ apiBaseUrl }) {
       render: (status) => {
         const colors = {
           PENDING: 'default',
+          QUEUED: 'default',
           RUNNING: 'processing',
           COMPLETED: 'success',
           FAILED: 'error',
+          CANCELLED: 'warning',
         };
         return <Tag color={colors[status]}>{status}</Tag>;
       },
@@ -111,12 +275,21 @@ function Provisioning({ apiBaseUrl }) {
       width: 80,
       render: (count) => <Text type="warning">{count}</Text>,
     },
+    { title: 'Unchanged', dataIndex: 'unchangedCount', width: 90 },
+    { title: 'Deactivated', dataIndex: 'deactivatedCount', width: 100 },
     {
       title: 'Failed',
       dataIndex: 'failedCount',
       width: 80,
       render: (count) => <Text type="danger">{count}</Text>,
     },
+    {
+      title: 'Rows/s',
+      dataIndex: 'rowsPerSecond',
+      width: 90,
+      render: (value) => (value ? Math.round(value) : '-'),
+    },
+    { title: 'Workers', dataIndex: 'workerCount', width: 80 },
     { title: 'Type', dataIndex: 'sourceType', width: 80 },
     { title: 'Dry Run', dataIndex: 'dryRun', width: 90 },
     { title: 'Created At', dataIndex: 'createdAt', width: 160 },
@@ -125,6 +298,45 @@ function Provisioning({ apiBaseUrl }) {
       dataIndex: 'triggeredBy',
       width: 120,
     },
+    {
+      title: 'Checkpoint',
+      dataIndex: 'committedRows',
+      width: 100,
+      render: (rows) => (rows ? `row ${rows}` : '-'),
+    },
+    {
+      title: 'Actions',
+      width: 160,
+      render: (_, job) => (
+        <Space>
+          {['PENDING', 'QUEUED', 'RUNNING'].includes(job.status) && (
+            <>
+              <InputNumber
+                size="small"
+                min={0}
+                placeholder="rows/s"
+                defaultValue={job.rowsPerSecondLimit}
+                onPressEnter={(e) => handleThrottle(job, e.target.value === '' ? null : Number(e.target.value))}
+                style={{ width: 90 }}
+              />
+              <Button size="small" danger onClick={() => handleCancel(job.id)}>
+                Cancel
+              </Button>
+            </>
+          )}
+          {(job.status === 'FAILED' || job.status === 'CANCELLED') && job.spoolFile && (
+            <Button size="small" onClick={() => handleResume(job.id)}>
+              Resume
+            </Button>
+          )}
+          {job.failedCount > 0 && job.errorFile && (
+            <Button size="small" icon={<DownloadOutlined />} onClick={() => downloadErrors(job.id)}>
+              Errors
+            </Button>
+          )}
+        </Space>
+      ),
+    },
   ];
 
   return (
@@ -156,7 +368,7 @@ function Provisioning({ apiBaseUrl }) {
           </div>
 
           <Dragger
-            accept=".csv"
+            accept=".csv,.json,.ndjson,.jsonl"
             beforeUpload={(file) => {
               setSelectedFile(file);
               return false;
@@ -168,10 +380,28 @@ function Provisioning({ apiBaseUrl }) {
             <p className="ant-upload-drag-icon">
               <CloudUploadOutlined style={{ fontSize: '48px', color: '#1890ff' }} />
             </p>
-            <p className="ant-upload-text">Click or drag CSV file to upload</p>
-            <p className="ant-upload-hint">Supports CSV format only</p>
+            <p className="ant-upload-text">Click or drag a file to upload</p>
+            <p className="ant-upload-hint">Supports CSV, a JSON array of users, or NDJSON (one user per line)</p>
+            <p className="ant-upload-hint">
+              Fields: loginName, email, firstName, lastName, active, and optionally groups (names separated by ;)
+            </p>
           </Dragger>
 
+          <div style={{ marginTop: 16 }}>
+            <Space>
+              <Text>Or pull from a paged REST endpoint:</Text>
+              <Input
+                placeholder="https://hr.example.com/api/users"
+                value={restUrl}
+                onChange={(e) => setRestUrl(e.target.value)}
+                style={{ width: 400 }}
+              />
+              <Button icon={<CloudUploadOutlined />} onClick={handlePull} loading={pulling}>
+                Pull
+              </Button>
+            </Space>
+          </div>
+
           {selectedFile && (
             <div style={{ marginTop: 16 }}>
               <Space>
@@ -180,26 +410,109 @@ function Provisioning({ apiBaseUrl }) {
                 </Button>
                 <Button onClick={() => setSelectedFile(null)}>Cancel</Button>
               </Space>
-              <div style={{ marginTop: 8 }}>
-                <label>
-                  <input type="checkbox" checked={dryRun} onChange={(e) => setDryRun(e.target.checked)} />
-                  {' '}Dry run (preview changes only)
-                </label>
-              </div>
             </div>
           )}
+
+          <div style={{ marginTop: 16 }}>
+            <div style={{ marginTop: 8 }}>
+              <label>
+                <input type="checkbox" checked={dryRun} onChange={(e) => setDryRun(e.target.checked)} />
+                {' '}Dry run (preview changes only)
+              </label>
+            </div>
+            <div style={{ marginTop: 8 }}>
+              <label>
+                <input type="checkbox" checked={delta} onChange={(e) => setDelta(e.target.checked)} />
+                {' '}Delta (skip unchanged rows, deactivate users missing from this file)
+              </label>
+            </div>
+            <div style={{ marginTop: 8 }}>
+              <Space>
+                <Text>Workers:</Text>
+                <InputNumber min={1} max={16} value={workers} onChange={(value) => setWorkers(value || 1)} />
+              </Space>
+            </div>
+          </div>
         </div>
 
+        {progress && (
+          <Alert
+            type={progress.status === 'FAILED' ? 'error' : progress.status === 'COMPLETED' ? 'success' : 'info'}
+            message={`Job #${progress.jobId}: ${progress.status}`}
+            description={
+              <Space size="large">
+                <Text>Processed: {progress.totalProcessed}</Text>
+                <Text>Rows/s: {progress.rowsPerSecond ? Math.round(progress.rowsPerSecond) : '-'}</Text>
+                <Text>ETA: {formatEta(progress.estimatedSecondsRemaining)}</Text>
+                <Text type="success">Created: {progress.createdCount}</Text>
+                <Text type="warning">Updated: {progress.updatedCount}</Text>
+                <Text>Unchanged: {progress.unchangedCount}</Text>
+                <Text>Deactivated: {progress.deactivatedCount}</Text>
+                <Text type="danger">Failed: {progress.failedCount}</Text>
+              </Space>
+            }
+            closable
+            onClose={() => setProgress(null)}
+          />
+        )}
+
+        <Modal
+          title={report ? `Dry run report for job #${report.jobId}` : ''}
+          open={!!report}
+          onCancel={() => setReport(null)}
+          footer={null}
+          width={900}
+        >
+          {report && (
+            <Space direction="vertical" style={{ width: '100%' }}>
+              <Space size="large" wrap>
+                <Text type="success">To create: {report.toCreate}</Text>
+                <Text type="warning">To update: {report.toUpdate}</Text>
+                <Text type="danger">Invalid: {report.invalidRows}</Text>
+                <Text>Duplicate login names: {report.duplicateLoginNames}</Text>
+                <Text type="danger">Duplicate emails: {report.duplicateEmails}</Text>
+                <Text type="danger">Emails in use: {report.emailsInUse}</Text>
+              </Space>
+              {report.conflictsTruncated && (
+                <Alert type="warning" message={`Showing the first ${report.conflicts.length} conflicts`} />
+              )}
+              <Table
+                columns={reportColumns}
+                dataSource={report.conflicts}
+                rowKey={(conflict) => `${conflict.rowNumber}-${conflict.type}`}
+                size="small"
+                pagination={{ pageSize: 10 }}
+              />
+            </Space>
+          )}
+        </Modal>
+
         <div>
-          <h3>Provisioning History</h3>
+          <Space style={{ marginBottom: 16 }}>
+            <h3 style={{ margin: 0 }}>Provisioning History</h3>
+            <Select
+              allowClear
+              placeholder="All statuses"
+              value={statusFilter}
+              onChange={(value) => handleStatusFilter(value || null)}
+              style={{ width: 160 }}
+              options={['PENDING', 'QUEUED', 'RUNNING', 'COMPLETED', 'FAILED', 'CANCELLED']
+                .map((status) => ({ value: status, label: status }))}
+            />
+          </Space>
           <Table
             columns={columns}
             dataSource={jobs}
             loading={loading}
             rowKey="id"
-            pagination={{ pageSize: 10 }}
+            pagination={false}
             scroll={{ x: 1200 }}
           />
+          {nextCursor && (
+            <div style={{ marginTop: 16, textAlign: 'center' }}>
+              <Button onClick={loadMoreJobs} loading={loading}>Load older jobs</Button>
+            </div>
+          )}
         </div>
       </Space>
     </div>
@@ -1,5 +1,5 @@
 import React, { useState, useEffect } from 'react';
-import { Table, Button, Modal, Form, Input, Switch, Space, message, Popconfirm, Tag } from 'antd';
+import { Table, Button, Modal, Form, Input, Switch, Space, message, Popconfirm, Tag, AutoComplete } from 'antd';
 import { PlusOutlined, EditOutlined, DeleteOutlined, KeyOutlined } from '@ant-design/icons';
 import createApi from '../api';
 
@@ -11,6 +11,7 @@ function Users({ apiBaseUrl }) {
   const [passwordModalVisible, setPasswordModalVisible] = useState(false);
   const [pagination, setPagination] = useState({ current: 1, pageSize: 10, total: 0 });
   const [search, setSearch] = useState('');
+  const [suggestions, setSuggestions] = useState([]);
 
   const [form] = Form.useForm();
   const [passwordForm] = Form.useForm();
@@ -39,19 +40,48 @@ function Users({ apiBaseUrl }) {
     }
   };
 
+  const fetchSuggestions = async (prefix) => {
+    if (!prefix) {
+      setSuggestions([]);
+      return;
+    }
+    try {
+      const response = await api.get('/users/suggest', { params: { prefix } });
+      setSuggestions(
+        response.data.map((user) => ({
+          value: user.loginName,
+          label: `${user.loginName} — ${user.displayName} <${user.email}>`,
+        }))
+      );
+    } catch (error) {
+      setSuggestions([]);
+    }
+  };
+
+  const applySearch = (value) => {
+    setSearch(value);
+    setPagination({ ...pagination, current: 1 });
+  };
+
   const handleCreate = () => {
     setEditingUser(null);
     form.resetFields();
     setModalVisible(true);
   };
 
-  const handleEdit = (user) => {
-    setEditingUser(user);
-    form.setFieldsValue({
-      ...user,
-      active: user.active,
-    });
-    setModalVisible(true);
+  const handleEdit = async (user) => {
+    // List rows are summaries; the form needs the full user
+    try {
+      const response = await api.get(`/users/${user.id}`);
+      setEditingUser(response.data);
+      form.setFieldsValue({
+        ...response.data,
+        active: response.data.active,
+      });
+      setModalVisible(true);
+    } catch (error) {
+      message.error('Failed to load user');
+    }
   };
 
   const handleDelete = async (id) => {
@@ -137,15 +167,9 @@ function Users({ apiBaseUrl }) {
           <Button type="primary" icon={<PlusOutlined />} onClick={handleCreate}>
             Add User
           </Button>
-          <Input.Search
-            placeholder="Search by login name or email"
-            style={{ width: 300 }}
-            onSearch={(value) => {
-              setSearch(value);
-              setPagination({ ...pagination, current: 1 });
-            }}
-            allowClear
-          />
+          <AutoComplete options={suggestions} onSearch={fetchSuggestions} onSelect={applySearch} style={{ width: 300 }}>
+            <Input.Search placeholder="Search by login name, email or name" onSearch={applySearch} allowClear />
+          </AutoComplete>
         </Space>
       </div>
 
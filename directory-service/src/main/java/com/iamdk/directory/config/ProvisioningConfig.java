@@ -0,0 +1,56 @@
+package com.iamdk.directory.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Provisioning Configuration
+ * Executors used to run provisioning jobs off the request thread, and scheduling
+ * for job retention
+ */
+@Configuration
+@EnableScheduling
+public class ProvisioningConfig {
+
+    /**
+     * Bounded executor for provisioning jobs.
+     * At most max-concurrent-jobs run at once; further jobs wait in a bounded queue
+     * and are rejected once it is full.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor provisioningJobExecutor(
+            @Value("${provisioning.executor.max-concurrent-jobs:2}") int maxConcurrentJobs,
+            @Value("${provisioning.executor.queue-capacity:20}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(maxConcurrentJobs);
+        executor.setMaxPoolSize(maxConcurrentJobs);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("provisioning-job-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Executor for hashing initial passwords of newly created users. It runs one
+     * sweeper per thread, which reads the users to hash from the database, so its
+     * queue never holds more than one task per thread and callers never hash.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor passwordHashingExecutor(
+            @Value("${provisioning.hashing.threads:2}") int threads) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(threads);
+        executor.setThreadNamePrefix("password-hashing-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(60);
+        executor.initialize();
+        return executor;
+    }
+}
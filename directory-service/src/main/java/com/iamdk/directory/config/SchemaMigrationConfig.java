@@ -0,0 +1,44 @@
+package com.iamdk.directory.config;
+
+import com.iamdk.directory.repository.UserAttributeRepository;
+import org.flywaydb.core.Flyway;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
+
+/**
+ * Schema Migration Configuration
+ * Hibernate creates and extends the tables from the entities; the Flyway
+ * migrations in db/migration add what entities cannot express, such as
+ * extensions and trigram indexes. They therefore run once Hibernate has
+ * updated the schema instead of before it.
+ */
+@Configuration
+public class SchemaMigrationConfig {
+
+    /**
+     * Skip the migration Spring Boot runs before the JPA setup
+     */
+    @Bean
+    public FlywayMigrationStrategy deferredMigrationStrategy() {
+        return flyway -> {
+        };
+    }
+
+    @Bean
+    @DependsOn("entityManagerFactory")
+    public InitializingBean schemaMigration(Flyway flyway) {
+        return flyway::migrate;
+    }
+
+    /**
+     * Generated columns of the attributes configured in users.attributes.promoted
+     */
+    @Bean
+    @DependsOn("schemaMigration")
+    public InitializingBean promotedAttributeColumns(UserAttributeRepository attributeRepository) {
+        return attributeRepository::promoteConfiguredAttributes;
+    }
+}
@@ -2,6 +2,7 @@ package com.iamdk.directory.config;
 
 import com.iamdk.directory.security.JwtAuthenticationFilter;
 import com.iamdk.directory.security.JwtAuthenticationProvider;
+import jakarta.servlet.DispatcherType;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -49,9 +50,12 @@ public class SecurityConfig {
                 session.sessionCreationPolicy(SessionCreationPolicy.STATELESS)
             )
             .authorizeHttpRequests(auth -> auth
+                // Async dispatches (e.g. SSE progress streams) were already authorized on the original request
+                .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                 .requestMatchers("/actuator/**", "/health", "/error").permitAll()
                 .requestMatchers("/api/scim/v2/**").hasRole("ADMIN")
                 .requestMatchers(HttpMethod.POST, "/api/admin/login").permitAll()
+                .requestMatchers(HttpMethod.POST, "/api/admin/password").hasAnyRole("ADMIN", "PASSWORD_RESET")
                 .requestMatchers("/api/admin/**").hasRole("ADMIN")
                 .anyRequest().authenticated()
             )
@@ -1,10 +1,19 @@
 package com.iamdk.directory.controller;
 
+import com.iamdk.directory.dto.CursorPage;
+import com.iamdk.directory.dto.admin.BulkUserResult;
+import com.iamdk.directory.dto.admin.IdentityCacheStats;
+import com.iamdk.directory.dto.admin.UserSuggestion;
+import com.iamdk.directory.dto.admin.UserSummary;
 import com.iamdk.directory.entity.OAuthClient;
 import com.iamdk.directory.entity.User;
 import com.iamdk.directory.security.JwtService;
+import com.iamdk.directory.service.AttributeFilter;
 import com.iamdk.directory.service.OAuthClientService;
+import com.iamdk.directory.service.UserBulkService;
+import com.iamdk.directory.service.UserIdentityCache;
 import com.iamdk.directory.service.UserService;
+import com.iamdk.directory.service.UserSuggestIndex;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
@@ -22,6 +31,7 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -36,6 +46,9 @@ import java.util.Set;
 public class AdminController {
 
     private final UserService userService;
+    private final UserSuggestIndex userSuggestIndex;
+    private final UserIdentityCache userIdentityCache;
+    private final UserBulkService userBulkService;
     private final OAuthClientService clientService;
     private final AuthenticationManager authenticationManager;
     private final JwtService jwtService;
@@ -50,11 +63,16 @@ public class AdminController {
                 new UsernamePasswordAuthenticationToken(request.username(), request.password())
             );
 
-            String token = jwtService.generateToken(request.username());
+            // Users who must set a new password get a token that only allows that
+            boolean passwordResetRequired = authentication.getAuthorities().stream()
+                .anyMatch(authority -> authority.getAuthority().equals("ROLE_" + JwtService.PASSWORD_RESET_ROLE));
+            String token = jwtService.generateToken(request.username(),
+                passwordResetRequired ? JwtService.PASSWORD_RESET_ROLE : JwtService.ADMIN_ROLE);
 
-            Map<String, String> response = new HashMap<>();
+            Map<String, Object> response = new HashMap<>();
             response.put("token", token);
             response.put("type", "Bearer");
+            response.put("passwordResetRequired", passwordResetRequired);
 
             return ResponseEntity.ok(response);
         } catch (AuthenticationException e) {
@@ -63,19 +81,91 @@ public class AdminController {
         }
     }
 
+    /**
+     * Set the password of the logged in user. Also accepted with the reset-only token
+     * of a login that must set a new password; returns an admin token to go on with.
+     */
+    @PostMapping("/password")
+    @PreAuthorize("hasAnyRole('ADMIN', 'PASSWORD_RESET')")
+    public ResponseEntity<Map<String, Object>> changeOwnPassword(Authentication authentication,
+                                                                 @RequestBody ChangePasswordRequest request) {
+        if (request.password() == null || request.password().isBlank()) {
+            throw new IllegalArgumentException("A new password is required");
+        }
+        User user = userService.getUserByLoginName(authentication.getName())
+            .orElseThrow(() -> new IllegalArgumentException("User not found: " + authentication.getName()));
+        userService.changePassword(user.getId(), request.password());
+
+        return ResponseEntity.ok(Map.of(
+            "token", jwtService.generateToken(user.getLoginName()),
+            "type", "Bearer",
+            "passwordResetRequired", false));
+    }
+
     // ==================== User Management ====================
 
     @GetMapping("/users")
     @PreAuthorize("hasRole('ADMIN')")
-    public ResponseEntity<Page<User>> getUsers(
+    public ResponseEntity<Page<UserSummary>> getUsers(
             @RequestParam(required = false) String search,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "20") int size) {
         Pageable pageable = PageRequest.of(page, size, Sort.by("createdAt").descending());
-        Page<User> users = userService.searchUsers(search, pageable);
+        Page<UserSummary> users = userService.searchUserSummaries(search, pageable);
         return ResponseEntity.ok(users);
     }
 
+    /**
+     * One page of users, newest first, read by keyset so deep pages cost no more than
+     * the first. Pass the returned nextCursor as cursor to get the next page; the
+     * total is only counted when asked for.
+     */
+    @GetMapping("/users/scroll")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<CursorPage<UserSummary>> scrollUsers(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(defaultValue = "false") boolean total) {
+        return ResponseEntity.ok(userService.listUsersNewestFirst(cursor, size, total));
+    }
+
+    /**
+     * Users whose custom attributes have the given values, in id order. Each
+     * attribute term is name=value and all of them must match.
+     * GET /users/by-attributes?attribute=costCenter=4711&attribute=region=EU
+     */
+    @GetMapping("/users/by-attributes")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<CursorPage<UserSummary>> getUsersByAttributes(
+            @RequestParam List<String> attribute,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(defaultValue = "false") boolean total) {
+        return ResponseEntity.ok(userService.findUsersByAttributes(AttributeFilter.fromTerms(attribute), cursor,
+            size, total));
+    }
+
+    /**
+     * Typeahead: users whose login name, email or a word of their name starts with
+     * the prefix, served from memory
+     */
+    @GetMapping("/users/suggest")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<List<UserSuggestion>> suggestUsers(
+            @RequestParam String prefix,
+            @RequestParam(defaultValue = "10") int limit) {
+        return ResponseEntity.ok(userSuggestIndex.suggest(prefix, limit));
+    }
+
+    /**
+     * Hit, miss and eviction counts of the identity cache logins read through
+     */
+    @GetMapping("/users/identity-cache")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<IdentityCacheStats> getIdentityCacheStats() {
+        return ResponseEntity.ok(userIdentityCache.stats());
+    }
+
     @GetMapping("/users/{id}")
     @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<User> getUser(@PathVariable Long id) {
@@ -122,6 +212,23 @@ public class AdminController {
         return ResponseEntity.ok(updated);
     }
 
+    /**
+     * Activate, deactivate, unlock, delete or set an attribute of many users at
+     * once, selected by ids or by a filter. Returns how many users matched and how
+     * many were changed.
+     */
+    @PostMapping("/users/bulk")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<BulkUserResult> bulkUpdateUsers(@RequestBody BulkUserRequest request) {
+        if (request.operation() == null) {
+            throw new IllegalArgumentException("operation is required");
+        }
+        UserBulkService.Selection selection = new UserBulkService.Selection(request.ids(), request.department(),
+            AttributeFilter.fromTerms(request.attributes()));
+        return ResponseEntity.ok(userBulkService.apply(request.operation(), selection, request.attributeName(),
+            request.attributeValue()));
+    }
+
     @DeleteMapping("/users/{id}")
     @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<Void> deleteUser(@PathVariable Long id) {
@@ -190,6 +297,13 @@ public class AdminController {
                java.util.UUID.randomUUID().toString().replace("-", "");
     }
 
+    // ==================== Error Handlers ====================
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Map<String, String>> handleIllegalArgumentException(IllegalArgumentException e) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("error", e.getMessage()));
+    }
+
     // ==================== DTOs ====================
 
     public record LoginRequest(String username, String password) {}
@@ -220,4 +334,16 @@ public class AdminController {
     ) {}
 
     public record ChangePasswordRequest(String password) {}
+
+    /**
+     * Either ids, or department and/or attribute terms (name=value) selecting the users
+     */
+    public record BulkUserRequest(
+        UserBulkService.Operation operation,
+        List<Long> ids,
+        String department,
+        List<String> attributes,
+        String attributeName,
+        Object attributeValue
+    ) {}
 }
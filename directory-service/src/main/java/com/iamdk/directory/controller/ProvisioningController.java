@@ -1,14 +1,29 @@
 package com.iamdk.directory.controller;
 
+import com.iamdk.directory.dto.provisioning.DryRunReport;
+import com.iamdk.directory.dto.provisioning.JobHistoryPage;
+import com.iamdk.directory.dto.provisioning.RowError;
 import com.iamdk.directory.entity.ProvisioningJob;
+import com.iamdk.directory.entity.ProvisioningJobDailyStats;
+import com.iamdk.directory.service.ProvisioningRetentionService;
 import com.iamdk.directory.service.ProvisioningService;
+import com.iamdk.directory.service.source.SourceRecord;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.InputStream;
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
 
@@ -23,6 +38,7 @@ import java.util.Map;
 public class ProvisioningController {
 
     private final ProvisioningService provisioningService;
+    private final ProvisioningRetentionService retentionService;
 
     /**
      * Create a new provisioning job
@@ -32,34 +48,127 @@ public class ProvisioningController {
     public ResponseEntity<ProvisioningJob> createJob(@RequestBody CreateJobRequest request) {
         ProvisioningJob job = provisioningService.createJob(
             request.jobName(),
+            request.sourceType(),
             request.sourceLocation(),
+            request.sourceKey(),
+            request.columnMappings(),
             request.triggeredBy()
         );
         return ResponseEntity.status(201).body(job);
     }
 
     /**
-     * Execute a provisioning job with CSV file
+     * Execute a provisioning job with CSV file.
+     * Returns 202 Accepted once the job is queued; follow progress via /jobs/{id}/events
      */
-    @PostMapping("/jobs/{id}/execute")
+    @PostMapping(value = "/jobs/{id}/execute", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<ProvisioningJob> executeJob(
             @PathVariable Long id,
             @RequestParam("file") MultipartFile file,
-            @RequestParam(value = "dryRun", defaultValue = "false") boolean dryRun) {
+            @RequestParam(value = "dryRun", defaultValue = "false") boolean dryRun,
+            @RequestParam(value = "workers", required = false) Integer workers,
+            @RequestParam(value = "delta", defaultValue = "false") boolean delta) {
 
-        ProvisioningJob job = provisioningService.executeJob(id, file, dryRun);
-        return ResponseEntity.ok(job);
+        ProvisioningJob job = provisioningService.executeJob(id, file, dryRun, workers, delta);
+        return ResponseEntity.accepted().body(job);
+    }
+
+    /**
+     * Execute a provisioning job with the CSV, JSON or NDJSON file as the raw request body.
+     * The body is streamed to disk without multipart buffering or size limit.
+     */
+    @PostMapping(value = "/jobs/{id}/execute",
+                 consumes = {"text/csv", "application/x-ndjson", MediaType.APPLICATION_JSON_VALUE,
+                             MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<ProvisioningJob> executeJobStreaming(
+            @PathVariable Long id,
+            InputStream body,
+            @RequestParam(value = "dryRun", defaultValue = "false") boolean dryRun,
+            @RequestParam(value = "workers", required = false) Integer workers,
+            @RequestParam(value = "delta", defaultValue = "false") boolean delta) {
+
+        ProvisioningJob job = provisioningService.executeJob(id, body, dryRun, workers, delta);
+        return ResponseEntity.accepted().body(job);
+    }
+
+    /**
+     * Execute a REST job, which pulls its records from the job's source URL
+     */
+    @PostMapping("/jobs/{id}/pull")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<ProvisioningJob> pullJob(
+            @PathVariable Long id,
+            @RequestParam(value = "dryRun", defaultValue = "false") boolean dryRun,
+            @RequestParam(value = "delta", defaultValue = "false") boolean delta) {
+
+        ProvisioningJob job = provisioningService.pullJob(id, dryRun, delta);
+        return ResponseEntity.accepted().body(job);
+    }
+
+    /**
+     * Resume a failed or cancelled job from its last checkpoint
+     */
+    @PostMapping("/jobs/{id}/resume")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<ProvisioningJob> resumeJob(
+            @PathVariable Long id,
+            @RequestParam(value = "workers", required = false) Integer workers) {
+
+        ProvisioningJob job = provisioningService.resumeJob(id, workers);
+        return ResponseEntity.accepted().body(job);
+    }
+
+    /**
+     * Cancel a job; a running job stops at its next chunk boundary
+     */
+    @PostMapping("/jobs/{id}/cancel")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<ProvisioningJob> cancelJob(@PathVariable Long id) {
+        return ResponseEntity.accepted().body(provisioningService.cancelJob(id));
+    }
+
+    /**
+     * Set the rows-per-second ceiling and in-flight chunk cap of a job, also while it runs
+     */
+    @PutMapping("/jobs/{id}/throttle")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<ProvisioningJob> throttleJob(@PathVariable Long id, @RequestBody ThrottleRequest request) {
+        return ResponseEntity.ok(provisioningService.throttleJob(id, request.rowsPerSecond(), request.maxInFlightChunks()));
     }
 
     /**
-     * Get job history
+     * Stream job progress as Server-Sent Events
+     */
+    @GetMapping(value = "/jobs/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @PreAuthorize("hasRole('ADMIN')")
+    public SseEmitter streamJobProgress(@PathVariable Long id) {
+        return provisioningService.subscribeToProgress(id);
+    }
+
+    /**
+     * Get one page of job history, newest first.
+     * Pass the returned nextCursor as cursor to get the next (older) page.
      */
     @GetMapping("/jobs")
     @PreAuthorize("hasRole('ADMIN')")
-    public ResponseEntity<List<ProvisioningJob>> getJobHistory() {
-        List<ProvisioningJob> jobs = provisioningService.getJobHistory();
-        return ResponseEntity.ok(jobs);
+    public ResponseEntity<JobHistoryPage> getJobHistory(
+            @RequestParam(required = false) ProvisioningJob.JobStatus status,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int size) {
+        return ResponseEntity.ok(provisioningService.getJobHistory(status, cursor, size));
+    }
+
+    /**
+     * Get daily totals of jobs compacted by retention
+     */
+    @GetMapping("/jobs/daily")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<List<ProvisioningJobDailyStats>> getDailyStats(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        return ResponseEntity.ok(retentionService.getDailyStats(from, to));
     }
 
     /**
@@ -73,24 +182,82 @@ public class ProvisioningController {
     }
 
     /**
-     * Get CSV template info
+     * Get the conflict report of a dry run
+     */
+    @GetMapping("/jobs/{id}/report")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<DryRunReport> getDryRunReport(@PathVariable Long id) {
+        return provisioningService.getDryRunReport(id)
+            .map(ResponseEntity::ok)
+            .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Download the CSV ledger of every row the job rejected
+     */
+    @GetMapping(value = "/jobs/{id}/errors", produces = "text/csv")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Resource> downloadErrors(@PathVariable Long id) {
+        return provisioningService.getErrorFile(id)
+            .<ResponseEntity<Resource>>map(file -> ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"job-" + id + "-errors.csv\"")
+                .body(new FileSystemResource(file)))
+            .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Get the first rejected rows of a job
+     */
+    @GetMapping("/jobs/{id}/errors/sample")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<List<RowError>> getErrorSample(@PathVariable Long id) {
+        return ResponseEntity.ok(provisioningService.getErrorSample(id));
+    }
+
+    /**
+     * Get CSV template info.
+     * groups is optional: a cell lists group names separated by groupsSeparator and
+     * sets the user's memberships to exactly those, a blank cell removes the user from
+     * every group, and without the column memberships are left as they are.
      */
     @GetMapping("/template")
     @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<Map<String, Object>> getTemplateInfo() {
         return ResponseEntity.ok(Map.of(
-            "columns", List.of("loginName", "email", "firstName", "lastName", "active"),
+            "columns", List.of("loginName", "email", "firstName", "lastName", "active", "groups"),
             "requiredFields", List.of("loginName", "email", "firstName", "lastName"),
-            "example", "loginName,email,firstName,lastName,active\njohn.doe,john@example.com,John,Doe,true",
+            "groupsSeparator", SourceRecord.MULTI_VALUE_SEPARATOR,
+            "example", "loginName,email,firstName,lastName,active,groups\n"
+                + "john.doe,john@example.com,John,Doe,true,Staff" + SourceRecord.MULTI_VALUE_SEPARATOR + "Sales",
             "maxRows", 5000
         ));
     }
 
+    // ==================== Error Handlers ====================
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Map<String, String>> handleIllegalArgumentException(IllegalArgumentException e) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("error", e.getMessage()));
+    }
+
+    @ExceptionHandler(IllegalStateException.class)
+    public ResponseEntity<Map<String, String>> handleIllegalStateException(IllegalStateException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+    }
+
     // ==================== DTOs ====================
 
+    public record ThrottleRequest(
+        Double rowsPerSecond,
+        Integer maxInFlightChunks
+    ) {}
+
     public record CreateJobRequest(
         String jobName,
+        ProvisioningJob.SourceType sourceType,
         String sourceLocation,
+        String sourceKey,
+        Map<String, String> columnMappings,
         String triggeredBy
     ) {}
 }
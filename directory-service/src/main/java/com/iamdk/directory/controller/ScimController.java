@@ -1,10 +1,12 @@
 package com.iamdk.directory.controller;
 
+import com.iamdk.directory.dto.CursorPage;
 import com.iamdk.directory.dto.scim.ScimErrorResponse;
 import com.iamdk.directory.dto.scim.ScimGroup;
 import com.iamdk.directory.dto.scim.ScimUser;
 import com.iamdk.directory.entity.Group;
 import com.iamdk.directory.entity.User;
+import com.iamdk.directory.service.AttributeFilter;
 import com.iamdk.directory.service.GroupService;
 import com.iamdk.directory.service.UserService;
 import jakarta.servlet.http.HttpServletRequest;
@@ -20,7 +22,9 @@ import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
 import java.net.URI;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -46,12 +50,45 @@ public class ScimController {
         return scheme + "://" + serverName + ":" + serverPort + contextPath;
     }
 
+    /**
+     * Ids of the members a group carries, or null if it carries none
+     */
+    private Set<Long> memberIds(ScimGroup group) {
+        if (group.getMembers() == null) {
+            return null;
+        }
+        Set<Long> ids = new HashSet<>();
+        for (ScimGroup.Member member : group.getMembers()) {
+            try {
+                ids.add(Long.valueOf(member.getValue()));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid member id: " + member.getValue());
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Cursor pages walk the whole, unfiltered list in order. They carry no
+     * totalResults, as counting would cost a full scan on every page.
+     */
+    private void checkCursorPaging(String filter, Integer startIndex) {
+        if (startIndex != null) {
+            throw new IllegalArgumentException("cursor and startIndex cannot be combined");
+        }
+        if (filter != null) {
+            throw new IllegalArgumentException("cursor paging does not support filters");
+        }
+    }
+
     // ==================== Users ====================
 
     /**
      * Get users with optional filter
      * GET /Users?filter=userName eq "john.doe"
+     * GET /Users?filter=urn:iamdk:params:scim:schemas:extension:attributes:2.0:User:costCenter eq "4711"
      * GET /Users?startIndex=1&count=100
+     * GET /Users?cursor=&count=100 (keyset pages by userName, RFC 9865)
      */
     @GetMapping("/Users")
     @PreAuthorize("hasRole('ADMIN')")
@@ -59,9 +96,22 @@ public class ScimController {
             @RequestParam(required = false) String filter,
             @RequestParam(required = false) Integer startIndex,
             @RequestParam(required = false) Integer count,
+            @RequestParam(required = false) String cursor,
             HttpServletRequest request) {
 
         String baseUrl = getBaseUrl(request);
+        if (cursor != null) {
+            checkCursorPaging(filter, startIndex);
+            CursorPage<User> users = userService.listUsersByLoginName(cursor, count != null ? count : 100, false);
+            return ResponseEntity.ok(ScimUserListResponse.builder()
+                .schemas(List.of("urn:ietf:params:scim:api:messages:2.0:ListResponse"))
+                .itemsPerPage(users.items().size())
+                .nextCursor(users.nextCursor())
+                .Resources(users.items().stream()
+                    .map(user -> userService.toScimUser(user, baseUrl))
+                    .collect(Collectors.toList()))
+                .build());
+        }
         int page = (startIndex != null && startIndex > 0) ? (startIndex - 1) : 0;
         int size = (count != null && count > 0) ? count : 100;
 
@@ -79,7 +129,10 @@ public class ScimController {
             }
         }
 
-        Page<User> users = userService.searchUsers(search, pageable);
+        AttributeFilter attributeFilter = AttributeFilter.fromScim(filter);
+        Page<User> users = attributeFilter != null
+            ? userService.searchUsersByAttributes(attributeFilter, pageable)
+            : userService.searchUsers(search, pageable);
 
         ScimUserListResponse response = ScimUserListResponse.builder()
             .schemas(List.of("urn:ietf:params:scim:api:messages:2.0:ListResponse"))
@@ -117,7 +170,6 @@ public class ScimController {
             .loginName(scimUser.getUserName())
             .email(scimUser.getEmails() != null && !scimUser.getEmails().isEmpty() ?
                 scimUser.getEmails().get(0).getValue() : null)
-            .password("ChangeMe123!")
             .firstName(scimUser.getName() != null ? scimUser.getName().getGivenName() : "")
             .lastName(scimUser.getName() != null ? scimUser.getName().getFamilyName() : "")
             .active(scimUser.getActive() != null ? scimUser.getActive() : true)
@@ -169,6 +221,7 @@ public class ScimController {
     /**
      * Get groups
      * GET /Groups
+     * GET /Groups?cursor=&count=100 (keyset pages by displayName, RFC 9865)
      */
     @GetMapping("/Groups")
     @PreAuthorize("hasRole('ADMIN')")
@@ -176,9 +229,22 @@ public class ScimController {
             @RequestParam(required = false) String filter,
             @RequestParam(required = false) Integer startIndex,
             @RequestParam(required = false) Integer count,
+            @RequestParam(required = false) String cursor,
             HttpServletRequest request) {
 
         String baseUrl = getBaseUrl(request);
+        if (cursor != null) {
+            checkCursorPaging(filter, startIndex);
+            CursorPage<Group> groups = groupService.listGroupsByName(cursor, count != null ? count : 100, false);
+            return ResponseEntity.ok(ScimGroupListResponse.builder()
+                .schemas(List.of("urn:ietf:params:scim:api:messages:2.0:ListResponse"))
+                .itemsPerPage(groups.items().size())
+                .nextCursor(groups.nextCursor())
+                .Resources(groups.items().stream()
+                    .map(group -> groupService.toScimGroup(group, baseUrl))
+                    .collect(Collectors.toList()))
+                .build());
+        }
         int page = (startIndex != null && startIndex > 0) ? (startIndex - 1) : 0;
         int size = (count != null && count > 0) ? count : 100;
 
@@ -229,7 +295,7 @@ public class ScimController {
             .description("")
             .build();
 
-        Group created = groupService.createGroup(group);
+        Group created = groupService.createGroup(group, memberIds(scimGroup));
         String baseUrl = getBaseUrl(request);
         ScimGroup response = groupService.toScimGroup(created, baseUrl);
 
@@ -249,7 +315,8 @@ public class ScimController {
             .name(scimGroup.getDisplayName())
             .build();
 
-        Group updated = groupService.updateGroup(id, group);
+        // PUT replaces the resource, so members it carries replace the current ones
+        Group updated = groupService.updateGroup(id, group, memberIds(scimGroup));
         String baseUrl = getBaseUrl(request);
         return ResponseEntity.ok(groupService.toScimGroup(updated, baseUrl));
     }
@@ -283,11 +350,13 @@ public class ScimController {
     @lombok.Builder
     @lombok.NoArgsConstructor
     @lombok.AllArgsConstructor
+    @com.fasterxml.jackson.annotation.JsonInclude(com.fasterxml.jackson.annotation.JsonInclude.Include.NON_NULL)
     public static class ScimUserListResponse {
         private List<String> schemas;
         private Integer totalResults;
         private Integer startIndex;
         private Integer itemsPerPage;
+        private String nextCursor;
         private List<ScimUser> Resources;
     }
 
@@ -295,11 +364,13 @@ public class ScimController {
     @lombok.Builder
     @lombok.NoArgsConstructor
     @lombok.AllArgsConstructor
+    @com.fasterxml.jackson.annotation.JsonInclude(com.fasterxml.jackson.annotation.JsonInclude.Include.NON_NULL)
     public static class ScimGroupListResponse {
         private List<String> schemas;
         private Integer totalResults;
         private Integer startIndex;
         private Integer itemsPerPage;
+        private String nextCursor;
         private List<ScimGroup> Resources;
     }
 }
@@ -0,0 +1,16 @@
+package com.iamdk.directory.dto;
+
+import java.util.List;
+
+/**
+ * Cursor Page
+ * One page of a list read by keyset, continuing after the last item of the previous page
+ *
+ * @param nextCursor   cursor of the next page, or null if this is the last one
+ * @param totalResults size of the whole list, or null if it was not counted
+ */
+public record CursorPage<T>(
+    List<T> items,
+    String nextCursor,
+    Long totalResults
+) {}
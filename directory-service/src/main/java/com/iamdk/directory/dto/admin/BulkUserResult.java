@@ -0,0 +1,13 @@
+package com.iamdk.directory.dto.admin;
+
+/**
+ * Bulk User Result
+ *
+ * @param matched  users the ids or filter selected that exist
+ * @param affected users the operation changed; already active users are not activated again
+ */
+public record BulkUserResult(
+    String operation,
+    int matched,
+    int affected
+) {}
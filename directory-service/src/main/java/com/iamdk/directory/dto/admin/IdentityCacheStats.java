@@ -0,0 +1,15 @@
+package com.iamdk.directory.dto.admin;
+
+/**
+ * Identity Cache Stats
+ * Counters of the user identity cache since startup
+ *
+ * @param evictions entries dropped for size or age; invalidations by writes are not counted
+ */
+public record IdentityCacheStats(
+    long size,
+    long hits,
+    long misses,
+    double hitRate,
+    long evictions
+) {}
@@ -0,0 +1,12 @@
+package com.iamdk.directory.dto.admin;
+
+/**
+ * A user offered by typeahead
+ */
+public record UserSuggestion(
+    Long id,
+    String loginName,
+    String email,
+    String displayName,
+    boolean active
+) {}
@@ -0,0 +1,25 @@
+package com.iamdk.directory.dto.admin;
+
+import java.time.LocalDateTime;
+
+/**
+ * User Summary
+ * The columns of a user that user lists show, read without the password hash,
+ * the attributes document or the groups
+ */
+public interface UserSummary {
+
+    Long getId();
+
+    String getLoginName();
+
+    String getEmail();
+
+    String getFirstName();
+
+    String getLastName();
+
+    Boolean getActive();
+
+    LocalDateTime getCreatedAt();
+}
@@ -0,0 +1,39 @@
+package com.iamdk.directory.dto.provisioning;
+
+import java.util.List;
+
+/**
+ * Dry Run Report
+ * Outcome of validating a whole file against the directory without writing it
+ */
+public record DryRunReport(
+    long toCreate,
+    long toUpdate,
+    long invalidRows,
+    long duplicateLoginNames,
+    long duplicateEmails,
+    long emailsInUse,
+    List<Conflict> conflicts,
+    boolean conflictsTruncated
+) {
+
+    public enum ConflictType {
+        INVALID_ROW,
+        DUPLICATE_LOGIN_NAME,
+        DUPLICATE_EMAIL,
+        EMAIL_IN_USE
+    }
+
+    /**
+     * A row that would fail or be overridden in a real import
+     *
+     * @param firstRowNumber earlier row of the file the conflict is with, if any
+     */
+    public record Conflict(
+        long rowNumber,
+        ConflictType type,
+        String loginName,
+        String message,
+        Long firstRowNumber
+    ) {}
+}
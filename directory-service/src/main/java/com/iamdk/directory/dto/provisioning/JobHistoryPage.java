@@ -0,0 +1,16 @@
+package com.iamdk.directory.dto.provisioning;
+
+import com.iamdk.directory.entity.ProvisioningJob;
+
+import java.util.List;
+
+/**
+ * Job History Page
+ * One page of provisioning jobs, newest first
+ *
+ * @param nextCursor cursor of the next (older) page, or null if this is the last one
+ */
+public record JobHistoryPage(
+    List<ProvisioningJob> jobs,
+    String nextCursor
+) {}
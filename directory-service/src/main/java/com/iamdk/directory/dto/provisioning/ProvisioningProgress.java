@@ -0,0 +1,36 @@
+package com.iamdk.directory.dto.provisioning;
+
+import com.iamdk.directory.entity.ProvisioningJob;
+
+/**
+ * Provisioning Progress
+ * Snapshot of a running job pushed to progress subscribers
+ */
+public record ProvisioningProgress(
+    Long jobId,
+    ProvisioningJob.JobStatus status,
+    Integer totalProcessed,
+    Integer createdCount,
+    Integer updatedCount,
+    Integer unchangedCount,
+    Integer deactivatedCount,
+    Integer failedCount,
+    Double rowsPerSecond,
+    Long estimatedSecondsRemaining
+) {
+
+    public static ProvisioningProgress of(ProvisioningJob job, Long estimatedSecondsRemaining) {
+        return new ProvisioningProgress(
+            job.getId(),
+            job.getStatus(),
+            job.getTotalProcessed(),
+            job.getCreatedCount(),
+            job.getUpdatedCount(),
+            job.getUnchangedCount(),
+            job.getDeactivatedCount(),
+            job.getFailedCount(),
+            job.getRowsPerSecond(),
+            estimatedSecondsRemaining
+        );
+    }
+}
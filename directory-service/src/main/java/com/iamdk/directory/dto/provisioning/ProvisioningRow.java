@@ -0,0 +1,73 @@
+package com.iamdk.directory.dto.provisioning;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Provisioning Row
+ * A validated source record ready to be written to the directory
+ *
+ * @param groups names of the groups the user should be a member of, or null if the
+ *               source has no groups column and memberships are left as they are
+ * @param attributes entries to set in the user's attribute map, or null if no
+ *                   attribute is mapped
+ */
+public record ProvisioningRow(
+    long rowNumber,
+    String loginName,
+    String email,
+    String firstName,
+    String lastName,
+    boolean active,
+    Set<String> groups,
+    Map<String, String> attributes
+) {
+
+    /**
+     * 64-bit content hash of every provisioned attribute, used to detect unchanged rows
+     */
+    public long fingerprint() {
+        MessageDigest digest = sha256();
+        update(digest, loginName);
+        update(digest, email);
+        update(digest, firstName);
+        update(digest, lastName);
+        digest.update((byte) (active ? 1 : 0));
+        // Rows without groups or attributes keep the fingerprint they had before those existed
+        if (groups != null) {
+            digest.update((byte) 1);
+            for (String group : new TreeSet<>(groups)) {
+                update(digest, group);
+            }
+        }
+        if (attributes != null) {
+            digest.update((byte) 2);
+            for (Map.Entry<String, String> attribute : new TreeMap<>(attributes).entrySet()) {
+                update(digest, attribute.getKey());
+                update(digest, attribute.getValue());
+            }
+        }
+        return ByteBuffer.wrap(digest.digest()).getLong();
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        if (value != null) {
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+        }
+        digest.update((byte) 0);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.iamdk.directory.dto.provisioning;
+
+/**
+ * Row Error
+ * Why a source row was rejected
+ *
+ * @param field source field at fault, or null if the row as a whole was rejected
+ */
+public record RowError(
+    long rowNumber,
+    String field,
+    String reason
+) {}
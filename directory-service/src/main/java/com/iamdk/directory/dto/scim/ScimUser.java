@@ -19,6 +19,11 @@ import java.util.Map;
 @AllArgsConstructor
 public class ScimUser {
 
+    /**
+     * Extension schema carrying the user's custom attributes
+     */
+    public static final String ATTRIBUTES_SCHEMA = "urn:iamdk:params:scim:schemas:extension:attributes:2.0:User";
+
     @JsonProperty("schemas")
     @Builder.Default
     private List<String> schemas = List.of("urn:ietf:params:scim:schemas:core:2.0:User");
@@ -50,6 +55,9 @@ public class ScimUser {
     @JsonProperty("urn:ietf:params:scim:schemas:extension:enterprise:2.0:User")
     private EnterpriseExtension enterprise;
 
+    @JsonProperty(ATTRIBUTES_SCHEMA)
+    private Map<String, Object> attributes;
+
     @JsonProperty("meta")
     private Meta meta;
 
@@ -24,7 +24,8 @@ import java.util.Set;
 public class OAuthClient {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "oauth_clients_seq")
+    @SequenceGenerator(name = "oauth_clients_seq", sequenceName = "oauth_clients_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false, unique = true, length = 100)
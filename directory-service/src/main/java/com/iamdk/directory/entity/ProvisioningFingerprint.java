@@ -0,0 +1,42 @@
+package com.iamdk.directory.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Provisioning Fingerprint Entity
+ * Content hash of the last row a provisioning source delivered for a user,
+ * used by delta provisioning to skip unchanged rows
+ */
+@Entity
+@Table(name = "provisioning_fingerprints",
+    uniqueConstraints = @UniqueConstraint(name = "uk_provisioning_fingerprints_source_login",
+        columnNames = {"sourceKey", "loginName"}),
+    indexes = @Index(name = "idx_provisioning_fingerprints_loginName", columnList = "loginName"))
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProvisioningFingerprint {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 500)
+    private String sourceKey;
+
+    @Column(nullable = false, length = 100)
+    private String loginName;
+
+    @Column(nullable = false)
+    private Long fingerprint;
+
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+}
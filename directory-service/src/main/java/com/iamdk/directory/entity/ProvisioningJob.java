@@ -1,19 +1,30 @@
 package com.iamdk.directory.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.iamdk.directory.dto.provisioning.DryRunReport;
+import com.iamdk.directory.dto.provisioning.RowError;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Provisioning Job Entity
  * Tracks user provisioning job executions
  */
 @Entity
-@Table(name = "provisioning_jobs")
+@Table(name = "provisioning_jobs", indexes = {
+    @Index(name = "idx_provisioning_jobs_createdAt_id", columnList = "createdAt, id"),
+    @Index(name = "idx_provisioning_jobs_status_createdAt_id", columnList = "status, createdAt, id")
+})
 @Data
 @Builder
 @NoArgsConstructor
@@ -21,7 +32,8 @@ import java.time.LocalDateTime;
 public class ProvisioningJob {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "provisioning_jobs_seq")
+    @SequenceGenerator(name = "provisioning_jobs_seq", sequenceName = "provisioning_jobs_seq", allocationSize = 50)
     private Long id;
 
     @Column(length = 100, nullable = false)
@@ -34,9 +46,15 @@ public class ProvisioningJob {
     @Column(length = 500)
     private String sourceLocation; // File path or REST URL
 
+    @Column(length = 500)
+    private String sourceKey; // Identifies the feed for delta provisioning
+
     @Column(nullable = false)
     private Boolean dryRun;
 
+    @Column
+    private Boolean deltaMode;
+
     @Column(nullable = false)
     @Enumerated(EnumType.STRING)
     private JobStatus status;
@@ -50,18 +68,74 @@ public class ProvisioningJob {
     @Builder.Default
     private Integer updatedCount = 0;
 
+    @Builder.Default
+    private Integer unchangedCount = 0;
+
     @Builder.Default
     private Integer deactivatedCount = 0;
 
     @Builder.Default
     private Integer failedCount = 0;
 
+    @Column
+    private Double rowsPerSecond;
+
+    @Column
+    private Integer processedAtStart; // totalProcessed when the current run started, after any resume
+
+    @Column
+    private Integer workerCount;
+
+    @Column
+    private Double rowsPerSecondLimit; // null to use the configured ceiling, 0 for none
+
+    @Column
+    private Integer maxInFlightChunks; // null to use the configured cap, 0 for none
+
+    // Column mappings of this job, overriding those of its source and the defaults
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(columnDefinition = "jsonb")
+    private Map<String, String> columnMappings;
+
+    @Column(length = 1000)
+    private String spoolFile; // Kept until the job completes so it can be resumed
+
+    @Column
+    private Long committedOffset; // Byte offset in the spool file up to which rows are committed
+
+    @Column
+    private Long committedRows; // Last data row number covered by committedOffset
+
     @Column(columnDefinition = "TEXT")
     private String errorMessage;
 
+    @Column(length = 1000)
+    private String errorFile; // CSV ledger of every rejected row
+
+    // Served by /jobs/{id}/errors/sample rather than with every job listing
+    @JsonIgnore
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(columnDefinition = "jsonb")
+    private List<RowError> errorSample;
+
+    // Served by /jobs/{id}/report rather than with every job listing
+    @JsonIgnore
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(columnDefinition = "jsonb")
+    private DryRunReport dryRunReport;
+
     @Column(length = 100)
     private String triggeredBy;
 
+    // Node queuing or running the job, and its last heartbeat by the database clock.
+    // Only written by ProvisioningJobRepository.claim and heartbeat, so saving the
+    // job never moves them back.
+    @Column(length = 200, insertable = false, updatable = false)
+    private String ownerNode;
+
+    @Column(insertable = false, updatable = false)
+    private LocalDateTime heartbeatAt;
+
     @Column(nullable = false, updatable = false)
     private LocalDateTime createdAt;
 
@@ -78,29 +152,80 @@ public class ProvisioningJob {
 
     public enum SourceType {
         CSV,
-        REST
+        JSON,
+        NDJSON,
+        REST;
+
+        /**
+         * Whether the source is uploaded and spooled rather than pulled
+         */
+        public boolean isUploaded() {
+            return this != REST;
+        }
+
+        /**
+         * Whether records of the source have field positions, so mappings can be
+         * compiled against its header rather than looked up by field name
+         */
+        public boolean hasFieldPositions() {
+            return this == CSV;
+        }
     }
 
     public enum JobStatus {
         PENDING,
+        QUEUED,
         RUNNING,
         COMPLETED,
-        FAILED
+        FAILED,
+        CANCELLED
     }
 
+    /**
+     * Start a run. A resumed job starts a new run, so its throughput only counts the
+     * rows processed since then.
+     */
     public void start() {
         this.status = JobStatus.RUNNING;
         this.startedAt = LocalDateTime.now();
+        this.processedAtStart = totalProcessed;
     }
 
     public void complete() {
         this.status = JobStatus.COMPLETED;
         this.completedAt = LocalDateTime.now();
+        updateThroughput(completedAt);
+    }
+
+    public void cancel() {
+        this.status = JobStatus.CANCELLED;
+        this.completedAt = LocalDateTime.now();
+        updateThroughput(completedAt);
+    }
+
+    /**
+     * Whether a resume can continue the job from its checkpoint
+     */
+    public boolean isResumable() {
+        return status == JobStatus.FAILED || status == JobStatus.CANCELLED;
     }
 
     public void fail(String errorMessage) {
         this.status = JobStatus.FAILED;
         this.completedAt = LocalDateTime.now();
         this.errorMessage = errorMessage;
+        updateThroughput(completedAt);
+    }
+
+    /**
+     * Recalculate rows per second from the rows processed since the run started
+     */
+    public void updateThroughput(LocalDateTime now) {
+        if (startedAt == null || totalProcessed == null) {
+            return;
+        }
+        long millis = Math.max(1, Duration.between(startedAt, now).toMillis());
+        int processed = totalProcessed - (processedAtStart != null ? processedAtStart : 0);
+        this.rowsPerSecond = processed * 1000.0 / millis;
     }
 }
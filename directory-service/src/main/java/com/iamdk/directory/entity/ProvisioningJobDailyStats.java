@@ -0,0 +1,54 @@
+package com.iamdk.directory.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+/**
+ * Provisioning Job Daily Stats Entity
+ * Totals of the provisioning jobs of one day, source type and final status,
+ * kept after retention has removed the jobs themselves
+ */
+@Entity
+@Table(name = "provisioning_job_daily_stats",
+    uniqueConstraints = @UniqueConstraint(name = "uk_provisioning_job_daily_stats_day_type_status",
+        columnNames = {"day", "sourceType", "status"}))
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProvisioningJobDailyStats {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private LocalDate day;
+
+    @Column(length = 50, nullable = false)
+    @Enumerated(EnumType.STRING)
+    private ProvisioningJob.SourceType sourceType;
+
+    @Column(length = 50, nullable = false)
+    @Enumerated(EnumType.STRING)
+    private ProvisioningJob.JobStatus status;
+
+    private Long jobCount;
+
+    private Long totalProcessed;
+
+    private Long createdCount;
+
+    private Long updatedCount;
+
+    private Long unchangedCount;
+
+    private Long deactivatedCount;
+
+    private Long failedCount;
+}
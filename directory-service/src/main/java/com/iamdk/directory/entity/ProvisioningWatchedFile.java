@@ -0,0 +1,54 @@
+package com.iamdk.directory.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Provisioning Watched File Entity
+ * State of a file in the watched provisioning directory, shared by every node:
+ * how much of it has been imported, the job importing the rest, and the lease
+ * of the node currently deciding what to do with it
+ */
+@Entity
+@Table(name = "provisioning_watched_files",
+    uniqueConstraints = @UniqueConstraint(name = "uk_provisioning_watched_files_path", columnNames = "path"))
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProvisioningWatchedFile {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 1000)
+    private String path;
+
+    // Bytes imported; the whole file in full mode, the records tailed so far in tail mode
+    @Column(nullable = false)
+    private Long committedOffset;
+
+    // Modification time of the file when it was last imported
+    private LocalDateTime committedModified;
+
+    // Job importing the file up to jobEndOffset, until it finishes
+    private Long jobId;
+
+    private Long jobEndOffset;
+
+    private LocalDateTime jobModified;
+
+    @Column(length = 200)
+    private String leaseOwner;
+
+    private LocalDateTime leaseUntil;
+
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+}
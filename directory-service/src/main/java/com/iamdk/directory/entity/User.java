@@ -1,5 +1,7 @@
 package com.iamdk.directory.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -18,7 +20,8 @@ import java.util.Set;
 @Entity
 @Table(name = "users", indexes = {
     @Index(name = "idx_users_loginName", columnList = "loginName"),
-    @Index(name = "idx_users_email", columnList = "email")
+    @Index(name = "idx_users_email", columnList = "email"),
+    @Index(name = "idx_users_createdAt_id", columnList = "createdAt, id")
 })
 @Data
 @Builder
@@ -26,8 +29,16 @@ import java.util.Set;
 @AllArgsConstructor
 public class User {
 
+    /**
+     * Password value of an account whose credential has not been set yet.
+     * It never matches any password, so such accounts cannot log in.
+     */
+    public static final String CREDENTIAL_NOT_SET = "";
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Pooled sequence, see V3__pooled_id_sequences.sql; one round trip reserves 50 ids
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "users_seq")
+    @SequenceGenerator(name = "users_seq", sequenceName = "users_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false, unique = true, length = 100)
@@ -36,9 +47,16 @@ public class User {
     @Column(nullable = false, unique = true, length = 255)
     private String email;
 
+    // Read from request bodies, never written to responses
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
     @Column(nullable = false, length = 100)
     private String password;
 
+    // Defaulted in the DDL so Hibernate can add it to a populated table
+    @Column(nullable = false, columnDefinition = "boolean not null default false")
+    @Builder.Default
+    private boolean passwordResetRequired = false;
+
     @Column(nullable = false, length = 100)
     private String firstName;
 
@@ -72,6 +90,8 @@ public class User {
     @Column
     private LocalDateTime lastLoginAt;
 
+    // Lazy, and a group serializes its users in turn
+    @JsonIgnore
     @ManyToMany(fetch = FetchType.LAZY)
     @JoinTable(
         name = "user_groups",
@@ -105,6 +125,13 @@ public class User {
         return lockedUntil != null && LocalDateTime.now().isBefore(lockedUntil);
     }
 
+    /**
+     * Check if a password has been set for this account
+     */
+    public boolean hasCredential() {
+        return password != null && !password.isEmpty();
+    }
+
     /**
      * Unlock account
      */
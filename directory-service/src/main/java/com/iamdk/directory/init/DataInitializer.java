@@ -4,6 +4,7 @@ import com.iamdk.directory.entity.Group;
 import com.iamdk.directory.entity.User;
 import com.iamdk.directory.repository.GroupRepository;
 import com.iamdk.directory.repository.UserRepository;
+import com.iamdk.directory.service.UserIdentityCache;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.CommandLineRunner;
@@ -22,10 +23,11 @@ public class DataInitializer implements CommandLineRunner {
     private final UserRepository userRepository;
     private final GroupRepository groupRepository;
     private final PasswordEncoder passwordEncoder;
+    private final UserIdentityCache identityCache;
 
     @Override
     public void run(String... args) {
-        if (userRepository.findByLoginName("admin").isEmpty()) {
+        if (identityCache.findByLoginName("admin").isEmpty()) {
             createDefaultAdmin();
         }
 
@@ -0,0 +1,120 @@
+package com.iamdk.directory.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Group Batch Repository
+ * Set-based JDBC access to groups and the user_groups join table used by the
+ * provisioning pipeline
+ */
+@Repository
+@RequiredArgsConstructor
+public class GroupBatchRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SequenceIdAllocator idAllocator;
+
+    /**
+     * Ids of the named groups that exist, keyed by name
+     */
+    public Map<String, Long> findGroupIds(Collection<String> names) {
+        Map<String, Long> ids = new HashMap<>();
+        if (names.isEmpty()) {
+            return ids;
+        }
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement("SELECT id, name FROM groups WHERE name = ANY(?)");
+            ps.setArray(1, con.createArrayOf("varchar", names.toArray()));
+            return ps;
+        }, rs -> {
+            ids.put(rs.getString(2), rs.getLong(1));
+        });
+        return ids;
+    }
+
+    /**
+     * Create the named groups, skipping names that already exist
+     */
+    public void insertGroups(Collection<String> names) {
+        if (names.isEmpty()) {
+            return;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<String> rows = List.copyOf(names);
+        long[] ids = idAllocator.allocate("groups_seq", rows.size());
+        int[] next = {0};
+        jdbcTemplate.batchUpdate(
+            "INSERT INTO groups (id, name, created_at, updated_at) VALUES (?, ?, ?, ?) ON CONFLICT (name) DO NOTHING",
+            rows, rows.size(), (ps, name) -> {
+                ps.setLong(1, ids[next[0]++]);
+                ps.setString(2, name);
+                ps.setTimestamp(3, now);
+                ps.setTimestamp(4, now);
+            });
+    }
+
+    /**
+     * Group ids of each of the given users that is a member of any group
+     */
+    public Map<Long, Set<Long>> findMemberships(Collection<Long> userIds) {
+        Map<Long, Set<Long>> memberships = new HashMap<>();
+        if (userIds.isEmpty()) {
+            return memberships;
+        }
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(
+                "SELECT user_id, group_id FROM user_groups WHERE user_id = ANY(?)");
+            ps.setArray(1, con.createArrayOf("bigint", userIds.toArray()));
+            return ps;
+        }, rs -> {
+            memberships.computeIfAbsent(rs.getLong(1), id -> new HashSet<>()).add(rs.getLong(2));
+        });
+        return memberships;
+    }
+
+    /**
+     * Add memberships as a single JDBC batch, skipping those that already exist
+     *
+     * @param memberships pairs of user id and group id
+     */
+    public void addMemberships(List<long[]> memberships) {
+        if (memberships.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(
+            "INSERT INTO user_groups (user_id, group_id) VALUES (?, ?) ON CONFLICT DO NOTHING",
+            memberships, memberships.size(), (ps, membership) -> {
+                ps.setLong(1, membership[0]);
+                ps.setLong(2, membership[1]);
+            });
+    }
+
+    /**
+     * Remove memberships as a single JDBC batch
+     *
+     * @param memberships pairs of user id and group id
+     */
+    public void removeMemberships(List<long[]> memberships) {
+        if (memberships.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(
+            "DELETE FROM user_groups WHERE user_id = ? AND group_id = ?",
+            memberships, memberships.size(), (ps, membership) -> {
+                ps.setLong(1, membership[0]);
+                ps.setLong(2, membership[1]);
+            });
+    }
+}
@@ -17,10 +17,31 @@ import java.util.Optional;
 @Repository
 public interface GroupRepository extends JpaRepository<Group, Long> {
 
+    // Shared by the search query and its count query
+    String SEARCH_GROUPS = "SELECT g.* FROM groups g"
+        + " WHERE lower(g.name) LIKE :primary AND lower(g.name) LIKE ALL (string_to_array(:patterns, ' '))";
+
     Optional<Group> findByName(String name);
 
     List<Group> findByNameContainingIgnoreCase(String name);
 
-    @Query("SELECT g FROM Group g WHERE LOWER(g.name) LIKE LOWER(CONCAT('%', :query, '%'))")
-    Page<Group> findByNameContainingIgnoreCase(@Param("query") String query, Pageable pageable);
+    /**
+     * Groups whose name contains every term, best matches first. The page must be
+     * unsorted, as the order is the ranking.
+     *
+     * @see com.iamdk.directory.service.SearchTerms
+     */
+    @Query(value = SEARCH_GROUPS + " ORDER BY similarity(lower(g.name), :query) DESC, g.id",
+        countQuery = "SELECT count(*) FROM (" + SEARCH_GROUPS + ") matches",
+        nativeQuery = true)
+    Page<Group> search(@Param("query") String query, @Param("primary") String primary,
+                       @Param("patterns") String patterns, Pageable pageable);
+
+    // Keyset pages; group names are unique, so they alone order the groups
+
+    @Query("SELECT g FROM Group g ORDER BY g.name")
+    List<Group> findOrderedByName(Pageable pageable);
+
+    @Query("SELECT g FROM Group g WHERE g.name > :name ORDER BY g.name")
+    List<Group> findAfterName(@Param("name") String name, Pageable pageable);
 }
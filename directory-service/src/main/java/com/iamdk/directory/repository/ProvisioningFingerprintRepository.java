@@ -0,0 +1,122 @@
+package com.iamdk.directory.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Provisioning Fingerprint Repository
+ * Set-based JDBC access to the per-source row fingerprints used by delta provisioning
+ */
+@Repository
+@RequiredArgsConstructor
+public class ProvisioningFingerprintRepository {
+
+    private static final String UPSERT_SQL = """
+        INSERT INTO provisioning_fingerprints (source_key, login_name, fingerprint, updated_at)
+        VALUES (?, ?, ?, ?)
+        ON CONFLICT (source_key, login_name) DO UPDATE SET
+            fingerprint = EXCLUDED.fingerprint,
+            updated_at = EXCLUDED.updated_at
+        """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Stored fingerprints of the given users for a source
+     */
+    public Map<String, Long> findFingerprints(String sourceKey, Collection<String> loginNames) {
+        Map<String, Long> fingerprints = new HashMap<>();
+        if (loginNames.isEmpty()) {
+            return fingerprints;
+        }
+        jdbcTemplate.query(withLoginNames(
+                "SELECT login_name, fingerprint FROM provisioning_fingerprints WHERE source_key = ? AND login_name = ANY(?)",
+                sourceKey, loginNames),
+            rs -> {
+                fingerprints.put(rs.getString(1), rs.getLong(2));
+            });
+        return fingerprints;
+    }
+
+    /**
+     * Insert or replace fingerprints as one JDBC batch
+     */
+    public void upsertFingerprints(String sourceKey, Map<String, Long> fingerprintsByLoginName) {
+        if (fingerprintsByLoginName.isEmpty()) {
+            return;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Map.Entry<String, Long>> entries = List.copyOf(fingerprintsByLoginName.entrySet());
+        jdbcTemplate.batchUpdate(UPSERT_SQL, entries, entries.size(), (ps, entry) -> {
+            ps.setString(1, sourceKey);
+            ps.setString(2, entry.getKey());
+            ps.setLong(3, entry.getValue());
+            ps.setTimestamp(4, now);
+        });
+    }
+
+    /**
+     * Stream every login name a source has provisioned
+     */
+    public void forEachLoginName(String sourceKey, Consumer<String> consumer) {
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(
+                "SELECT login_name FROM provisioning_fingerprints WHERE source_key = ?");
+            ps.setFetchSize(10_000);
+            ps.setString(1, sourceKey);
+            return ps;
+        }, rs -> {
+            consumer.accept(rs.getString(1));
+        });
+    }
+
+    public int deleteFingerprints(String sourceKey, Collection<String> loginNames) {
+        if (loginNames.isEmpty()) {
+            return 0;
+        }
+        return jdbcTemplate.update(withLoginNames(
+            "DELETE FROM provisioning_fingerprints WHERE source_key = ? AND login_name = ANY(?)",
+            sourceKey, loginNames));
+    }
+
+    /**
+     * Forget a user in every source, e.g. after it was deleted or renamed
+     */
+    public int deleteByLoginName(String loginName) {
+        return jdbcTemplate.update("DELETE FROM provisioning_fingerprints WHERE login_name = ?", loginName);
+    }
+
+    /**
+     * Forget users in every source
+     */
+    public int deleteByLoginNames(Collection<String> loginNames) {
+        if (loginNames.isEmpty()) {
+            return 0;
+        }
+        return jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement("DELETE FROM provisioning_fingerprints WHERE login_name = ANY(?)");
+            ps.setArray(1, con.createArrayOf("varchar", loginNames.toArray()));
+            return ps;
+        });
+    }
+
+    private PreparedStatementCreator withLoginNames(String sql, String sourceKey, Collection<String> loginNames) {
+        return con -> {
+            PreparedStatement ps = con.prepareStatement(sql);
+            ps.setString(1, sourceKey);
+            ps.setArray(2, con.createArrayOf("varchar", loginNames.toArray()));
+            return ps;
+        };
+    }
+}
@@ -0,0 +1,111 @@
+package com.iamdk.directory.repository;
+
+import com.iamdk.directory.entity.ProvisioningJob;
+import com.iamdk.directory.entity.ProvisioningJobDailyStats;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Provisioning Job Daily Stats Repository
+ * Set-based JDBC compaction of finished provisioning jobs into daily totals
+ */
+@Repository
+@RequiredArgsConstructor
+public class ProvisioningJobDailyStatsRepository {
+
+    // Only the rows this statement deleted are added to the totals. When two nodes
+    // compact at once, the second one's DELETE skips the rows the first one removed,
+    // so no job is counted twice.
+    private static final String COMPACT_SQL = """
+        WITH gone AS (
+            DELETE FROM provisioning_jobs
+            WHERE created_at < ? AND status IN ('COMPLETED', 'FAILED', 'CANCELLED')
+            RETURNING created_at, source_type, status, total_processed, created_count, updated_count,
+                      unchanged_count, deactivated_count, failed_count, spool_file, error_file
+        ), totals AS (
+            INSERT INTO provisioning_job_daily_stats (day, source_type, status, job_count, total_processed,
+                                                      created_count, updated_count, unchanged_count,
+                                                      deactivated_count, failed_count)
+            SELECT CAST(created_at AS date), source_type, status, COUNT(*),
+                   SUM(COALESCE(total_processed, 0)), SUM(COALESCE(created_count, 0)),
+                   SUM(COALESCE(updated_count, 0)), SUM(COALESCE(unchanged_count, 0)),
+                   SUM(COALESCE(deactivated_count, 0)), SUM(COALESCE(failed_count, 0))
+            FROM gone
+            GROUP BY CAST(created_at AS date), source_type, status
+            ON CONFLICT (day, source_type, status) DO UPDATE SET
+                job_count = provisioning_job_daily_stats.job_count + EXCLUDED.job_count,
+                total_processed = provisioning_job_daily_stats.total_processed + EXCLUDED.total_processed,
+                created_count = provisioning_job_daily_stats.created_count + EXCLUDED.created_count,
+                updated_count = provisioning_job_daily_stats.updated_count + EXCLUDED.updated_count,
+                unchanged_count = provisioning_job_daily_stats.unchanged_count + EXCLUDED.unchanged_count,
+                deactivated_count = provisioning_job_daily_stats.deactivated_count + EXCLUDED.deactivated_count,
+                failed_count = provisioning_job_daily_stats.failed_count + EXCLUDED.failed_count
+        )
+        SELECT spool_file, error_file FROM gone
+        """;
+
+    /**
+     * Outcome of a compaction
+     *
+     * @param jobs  number of jobs compacted
+     * @param files spool and error files of the compacted jobs
+     */
+    public record Compaction(int jobs, List<String> files) {}
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Delete the finished jobs created before the cutoff and add them to the daily
+     * totals, as one statement
+     */
+    public Compaction compactJobsBefore(LocalDateTime cutoff) {
+        List<String> files = new ArrayList<>();
+        int[] jobs = new int[1];
+        jdbcTemplate.query(COMPACT_SQL,
+            rs -> {
+                jobs[0]++;
+                for (int column = 1; column <= 2; column++) {
+                    if (rs.getString(column) != null) {
+                        files.add(rs.getString(column));
+                    }
+                }
+            },
+            Timestamp.valueOf(cutoff));
+        return new Compaction(jobs[0], files);
+    }
+
+    /**
+     * Daily totals between two days, inclusive, newest first
+     */
+    public List<ProvisioningJobDailyStats> findBetween(LocalDate from, LocalDate to) {
+        return jdbcTemplate.query("""
+                SELECT id, day, source_type, status, job_count, total_processed, created_count, updated_count,
+                       unchanged_count, deactivated_count, failed_count
+                FROM provisioning_job_daily_stats
+                WHERE day BETWEEN ? AND ?
+                ORDER BY day DESC, source_type, status
+                """,
+            (rs, rowNum) -> ProvisioningJobDailyStats.builder()
+                .id(rs.getLong("id"))
+                .day(rs.getDate("day").toLocalDate())
+                .sourceType(ProvisioningJob.SourceType.valueOf(rs.getString("source_type")))
+                .status(ProvisioningJob.JobStatus.valueOf(rs.getString("status")))
+                .jobCount(rs.getLong("job_count"))
+                .totalProcessed(rs.getLong("total_processed"))
+                .createdCount(rs.getLong("created_count"))
+                .updatedCount(rs.getLong("updated_count"))
+                .unchangedCount(rs.getLong("unchanged_count"))
+                .deactivatedCount(rs.getLong("deactivated_count"))
+                .failedCount(rs.getLong("failed_count"))
+                .build(),
+            Date.valueOf(from), Date.valueOf(to));
+    }
+}
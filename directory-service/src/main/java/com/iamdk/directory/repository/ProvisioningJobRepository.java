@@ -1,16 +1,115 @@
 package com.iamdk.directory.repository;
 
 import com.iamdk.directory.entity.ProvisioningJob;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 /**
  * Provisioning Job Repository
+ * Job history is read newest first by keyset on (createdAt, id), so every page
+ * is an index range scan however many jobs have accumulated
  */
 @Repository
 public interface ProvisioningJobRepository extends JpaRepository<ProvisioningJob, Long> {
 
-    List<ProvisioningJob> findByOrderByCreatedAtDesc();
+    /**
+     * Move a job to a status if it is in one of the given ones, as a single statement,
+     * so of two concurrent requests for the same job only one succeeds
+     *
+     * @return 1 if the job was moved, 0 if it was in another status
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE ProvisioningJob j SET j.status = :to WHERE j.id = :id AND j.status IN :from")
+    int updateStatus(@Param("id") Long id, @Param("from") Collection<ProvisioningJob.JobStatus> from,
+                     @Param("to") ProvisioningJob.JobStatus to);
+
+    /**
+     * Move a job to QUEUED on behalf of a node, if it is in one of the given statuses.
+     * The node then owns the job and keeps its heartbeat fresh until it finishes.
+     *
+     * @return 1 if the job was claimed, 0 if it was in another status
+     */
+    @Transactional
+    @Modifying
+    @Query(value = """
+        UPDATE provisioning_jobs SET status = 'QUEUED', owner_node = :node, heartbeat_at = now()
+        WHERE id = :id AND status IN (:from)
+        """, nativeQuery = true)
+    int claim(@Param("id") Long id, @Param("from") Collection<String> from, @Param("node") String node);
+
+    /**
+     * Refresh the heartbeat of a job the node still owns and has not finished
+     *
+     * @return 0 if the job was failed as interrupted or taken over by another node
+     */
+    @Transactional
+    @Modifying
+    @Query(value = """
+        UPDATE provisioning_jobs SET heartbeat_at = now()
+        WHERE id = :id AND owner_node = :node AND status IN ('QUEUED', 'RUNNING')
+        """, nativeQuery = true)
+    int heartbeat(@Param("id") Long id, @Param("node") String node);
+
+    /**
+     * Queued and running jobs that cannot finish any more: those whose owner stopped
+     * sending heartbeats and, if the given node has just restarted, its own
+     */
+    @Query(value = """
+        SELECT * FROM provisioning_jobs
+        WHERE status IN ('QUEUED', 'RUNNING')
+          AND ((:restarted AND owner_node = :node) OR heartbeat_at IS NULL
+               OR heartbeat_at < now() - make_interval(secs => :leaseSeconds))
+        """, nativeQuery = true)
+    List<ProvisioningJob> findInterrupted(@Param("node") String node, @Param("restarted") boolean restarted,
+                                          @Param("leaseSeconds") double leaseSeconds);
+
+    /**
+     * Fail a job found by {@link #findInterrupted}, unless its owner sent a heartbeat
+     * or finished it in the meantime
+     *
+     * @return 1 if the job was failed
+     */
+    @Transactional
+    @Modifying
+    @Query(value = """
+        UPDATE provisioning_jobs SET status = 'FAILED', completed_at = now(), error_message = :message
+        WHERE id = :id AND status IN ('QUEUED', 'RUNNING')
+          AND ((:restarted AND owner_node = :node) OR heartbeat_at IS NULL
+               OR heartbeat_at < now() - make_interval(secs => :leaseSeconds))
+        """, nativeQuery = true)
+    int failInterrupted(@Param("id") Long id, @Param("node") String node, @Param("restarted") boolean restarted,
+                        @Param("leaseSeconds") double leaseSeconds, @Param("message") String message);
+
+    @Query("SELECT j FROM ProvisioningJob j ORDER BY j.createdAt DESC, j.id DESC")
+    List<ProvisioningJob> findLatest(Pageable pageable);
+
+    @Query("""
+        SELECT j FROM ProvisioningJob j
+        WHERE (j.createdAt, j.id) < (:createdAt, :id)
+        ORDER BY j.createdAt DESC, j.id DESC
+        """)
+    List<ProvisioningJob> findOlderThan(@Param("createdAt") LocalDateTime createdAt, @Param("id") Long id,
+                                        Pageable pageable);
+
+    @Query("SELECT j FROM ProvisioningJob j WHERE j.status = :status ORDER BY j.createdAt DESC, j.id DESC")
+    List<ProvisioningJob> findLatestByStatus(@Param("status") ProvisioningJob.JobStatus status, Pageable pageable);
+
+    @Query("""
+        SELECT j FROM ProvisioningJob j
+        WHERE j.status = :status AND (j.createdAt, j.id) < (:createdAt, :id)
+        ORDER BY j.createdAt DESC, j.id DESC
+        """)
+    List<ProvisioningJob> findOlderThanByStatus(@Param("status") ProvisioningJob.JobStatus status,
+                                                @Param("createdAt") LocalDateTime createdAt, @Param("id") Long id,
+                                                Pageable pageable);
 }
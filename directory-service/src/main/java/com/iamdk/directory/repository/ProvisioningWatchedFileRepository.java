@@ -0,0 +1,103 @@
+package com.iamdk.directory.repository;
+
+import com.iamdk.directory.entity.ProvisioningWatchedFile;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Provisioning Watched File Repository
+ * JDBC access to the watched file state, with a lease that lets exactly one node
+ * at a time act on a file
+ */
+@Repository
+@RequiredArgsConstructor
+public class ProvisioningWatchedFileRepository {
+
+    // Take the lease if nobody holds it, it expired, or this node already holds it.
+    // Times come from the database clock, so nodes with skewed clocks agree on expiry.
+    private static final String LEASE_SQL = """
+        INSERT INTO provisioning_watched_files (path, committed_offset, lease_owner, lease_until, updated_at)
+        VALUES (?, 0, ?, now() + make_interval(secs => ?), now())
+        ON CONFLICT (path) DO UPDATE SET
+            lease_owner = EXCLUDED.lease_owner,
+            lease_until = EXCLUDED.lease_until,
+            updated_at = EXCLUDED.updated_at
+        WHERE provisioning_watched_files.lease_until IS NULL
+           OR provisioning_watched_files.lease_until < now()
+           OR provisioning_watched_files.lease_owner = EXCLUDED.lease_owner
+        """;
+
+    private static final String UPDATE_SQL = """
+        UPDATE provisioning_watched_files SET
+            committed_offset = ?, committed_modified = ?, job_id = ?, job_end_offset = ?, job_modified = ?,
+            updated_at = ?
+        WHERE path = ? AND lease_owner = ?
+        """;
+
+    private static final RowMapper<ProvisioningWatchedFile> ROW_MAPPER = (rs, rowNum) -> ProvisioningWatchedFile.builder()
+        .id(rs.getLong("id"))
+        .path(rs.getString("path"))
+        .committedOffset(rs.getLong("committed_offset"))
+        .committedModified(toLocalDateTime(rs.getTimestamp("committed_modified")))
+        .jobId(rs.getObject("job_id", Long.class))
+        .jobEndOffset(rs.getObject("job_end_offset", Long.class))
+        .jobModified(toLocalDateTime(rs.getTimestamp("job_modified")))
+        .leaseOwner(rs.getString("lease_owner"))
+        .leaseUntil(toLocalDateTime(rs.getTimestamp("lease_until")))
+        .updatedAt(toLocalDateTime(rs.getTimestamp("updated_at")))
+        .build();
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Lease a file to a node for the given duration
+     *
+     * @return the file's state if the node now holds the lease, empty if another node does
+     */
+    public Optional<ProvisioningWatchedFile> tryLease(String path, String owner, Duration lease) {
+        int leased = jdbcTemplate.update(LEASE_SQL, path, owner, (double) lease.toSeconds());
+        if (leased == 0) {
+            return Optional.empty();
+        }
+        return jdbcTemplate.query("SELECT * FROM provisioning_watched_files WHERE path = ?", ROW_MAPPER, path)
+            .stream().findFirst();
+    }
+
+    /**
+     * Save the import state of a file, if the node still holds its lease
+     *
+     * @return false if the lease was lost to another node in the meantime
+     */
+    public boolean update(ProvisioningWatchedFile file, String owner) {
+        return jdbcTemplate.update(UPDATE_SQL,
+            file.getCommittedOffset(),
+            toTimestamp(file.getCommittedModified()),
+            file.getJobId(),
+            file.getJobEndOffset(),
+            toTimestamp(file.getJobModified()),
+            Timestamp.valueOf(LocalDateTime.now()),
+            file.getPath(),
+            owner) == 1;
+    }
+
+    public void release(String path, String owner) {
+        jdbcTemplate.update(
+            "UPDATE provisioning_watched_files SET lease_owner = NULL, lease_until = NULL WHERE path = ? AND lease_owner = ?",
+            path, owner);
+    }
+
+    private static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toLocalDateTime() : null;
+    }
+
+    private static Timestamp toTimestamp(LocalDateTime time) {
+        return time != null ? Timestamp.valueOf(time) : null;
+    }
+}
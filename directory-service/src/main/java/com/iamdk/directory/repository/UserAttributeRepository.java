@@ -0,0 +1,127 @@
+package com.iamdk.directory.repository;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.iamdk.directory.service.AttributeFilter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * User Attribute Repository
+ * Finds users by custom attributes. Conditions compile to one jsonb containment
+ * predicate, served by the jsonb_path_ops GIN index; string conditions on promoted
+ * attributes compare a generated column with a B-tree index of its own instead.
+ */
+@Repository
+public class UserAttributeRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final Set<String> promoted;
+
+    public UserAttributeRepository(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper,
+                                   @Value("${users.attributes.promoted:}") Set<String> promoted) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.promoted = promoted;
+        promoted.forEach(AttributeFilter::checkName);
+    }
+
+    /**
+     * Generated column holding an attribute's text value
+     */
+    public static String columnOf(String attribute) {
+        AttributeFilter.checkName(attribute);
+        return "attr_" + attribute.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Add the generated column and index of every promoted attribute that lacks them.
+     * Adding a stored column rewrites the table once.
+     */
+    public void promoteConfiguredAttributes() {
+        for (String attribute : promoted) {
+            String column = columnOf(attribute);
+            jdbcTemplate.execute("ALTER TABLE users ADD COLUMN IF NOT EXISTS " + column
+                + " text GENERATED ALWAYS AS (attributes ->> '" + attribute + "') STORED");
+            jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_users_" + column + " ON users (" + column + ")");
+        }
+    }
+
+    /**
+     * Ids of matching users after afterId, in id order
+     */
+    public List<Long> findIdsAfter(AttributeFilter filter, long afterId, int limit) {
+        Where where = where(filter);
+        List<Object> params = new ArrayList<>(where.params());
+        params.add(afterId);
+        params.add(limit);
+        return jdbcTemplate.queryForList("SELECT id FROM users WHERE " + where.sql() + " AND id > ? ORDER BY id LIMIT ?",
+            Long.class, params.toArray());
+    }
+
+    /**
+     * Ids of matching users at an offset, in id order
+     */
+    public List<Long> findIds(AttributeFilter filter, long offset, int limit) {
+        Where where = where(filter);
+        List<Object> params = new ArrayList<>(where.params());
+        params.add(limit);
+        params.add(offset);
+        return jdbcTemplate.queryForList("SELECT id FROM users WHERE " + where.sql() + " ORDER BY id LIMIT ? OFFSET ?",
+            Long.class, params.toArray());
+    }
+
+    public long count(AttributeFilter filter) {
+        Where where = where(filter);
+        Long count = jdbcTemplate.queryForObject("SELECT count(*) FROM users WHERE " + where.sql(), Long.class,
+            where.params().toArray());
+        return count != null ? count : 0;
+    }
+
+    /**
+     * A WHERE condition on the users table and its parameters
+     */
+    public record Where(String sql, List<Object> params) {
+    }
+
+    /**
+     * The filter as a condition on the users table, for queries built elsewhere
+     */
+    public Where where(AttributeFilter filter) {
+        List<String> conditions = new ArrayList<>();
+        List<Object> params = new ArrayList<>();
+        Map<String, Object> contained = new LinkedHashMap<>();
+        filter.equals().forEach((name, value) -> {
+            // ->> yields text, so only string values can be compared with the column;
+            // unlike containment, "4711" then also matches the number 4711
+            if (promoted.contains(name) && value instanceof String) {
+                conditions.add(columnOf(name) + " = ?");
+                params.add(value);
+            } else {
+                contained.put(name, value);
+            }
+        });
+        if (!contained.isEmpty()) {
+            conditions.add("attributes @> ?::jsonb");
+            params.add(toJson(contained));
+        }
+        return new Where(String.join(" AND ", conditions), params);
+    }
+
+    private String toJson(Map<String, Object> attributes) {
+        try {
+            return objectMapper.writeValueAsString(attributes);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize attribute filter", e);
+        }
+    }
+}
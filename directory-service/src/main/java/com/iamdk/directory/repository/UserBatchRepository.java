@@ -0,0 +1,206 @@
+package com.iamdk.directory.repository;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.iamdk.directory.dto.admin.UserSuggestion;
+import com.iamdk.directory.dto.provisioning.ProvisioningRow;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * User Batch Repository
+ * Set-based JDBC writes used by the provisioning pipeline
+ */
+@Repository
+@RequiredArgsConstructor
+public class UserBatchRepository {
+
+    private static final String SUGGESTION_COLUMNS = "id, login_name, email, first_name, last_name, active";
+
+    private static final RowMapper<UserSuggestion> SUGGESTION_MAPPER = (rs, rowNum) -> new UserSuggestion(
+        rs.getLong(1), rs.getString(2), rs.getString(3), rs.getString(4) + " " + rs.getString(5), rs.getBoolean(6));
+
+    private static final String UPSERT_SQL = """
+        INSERT INTO users (id, login_name, email, password, password_reset_required, first_name, last_name,
+                           active, attributes, failed_login_attempts, created_at, updated_at)
+        VALUES (?, ?, ?, '', true, ?, ?, ?, ?::jsonb, 0, ?, ?)
+        ON CONFLICT (login_name) DO UPDATE SET
+            email = EXCLUDED.email,
+            first_name = EXCLUDED.first_name,
+            last_name = EXCLUDED.last_name,
+            active = EXCLUDED.active,
+            attributes = CASE WHEN EXCLUDED.attributes IS NULL THEN users.attributes
+                              ELSE COALESCE(users.attributes, '{}'::jsonb) || EXCLUDED.attributes END,
+            updated_at = EXCLUDED.updated_at
+        """;
+
+    private static final String SET_INITIAL_PASSWORD_SQL =
+        "UPDATE users SET password = ? WHERE login_name = ? AND password = ''";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final SequenceIdAllocator idAllocator;
+
+    /**
+     * Insert or update users keyed by loginName as a single JDBC batch.
+     * Inserted users have no credential and must reset their password.
+     * Mapped attributes are merged into the user's attribute map.
+     * Rows must have distinct login names. Ids are reserved for every row, and go
+     * unused for rows that update an existing user.
+     */
+    public void upsertUsers(Collection<ProvisioningRow> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        long[] ids = idAllocator.allocate("users_seq", rows.size());
+        int[] next = {0};
+        jdbcTemplate.batchUpdate(UPSERT_SQL, rows, rows.size(), (ps, row) -> {
+            ps.setLong(1, ids[next[0]++]);
+            ps.setString(2, row.loginName());
+            ps.setString(3, row.email());
+            ps.setString(4, row.firstName());
+            ps.setString(5, row.lastName());
+            ps.setBoolean(6, row.active());
+            ps.setString(7, toJson(row.attributes()));
+            ps.setTimestamp(8, now);
+            ps.setTimestamp(9, now);
+        });
+    }
+
+    /**
+     * Deactivate the given users with a single set-based update
+     *
+     * @return number of users that were active and are now deactivated
+     */
+    public int deactivateUsers(Collection<String> loginNames) {
+        if (loginNames.isEmpty()) {
+            return 0;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        return jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement(
+                "UPDATE users SET active = false, updated_at = ? WHERE active = true AND login_name = ANY(?)");
+            ps.setTimestamp(1, now);
+            ps.setArray(2, con.createArrayOf("varchar", loginNames.toArray()));
+            return ps;
+        });
+    }
+
+    /**
+     * Ids of the given users that exist, keyed by loginName
+     */
+    public Map<String, Long> findUserIds(Collection<String> loginNames) {
+        Map<String, Long> ids = new HashMap<>();
+        if (loginNames.isEmpty()) {
+            return ids;
+        }
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement("SELECT id, login_name FROM users WHERE login_name = ANY(?)");
+            ps.setArray(1, con.createArrayOf("varchar", loginNames.toArray()));
+            return ps;
+        }, rs -> {
+            ids.put(rs.getString(2), rs.getLong(1));
+        });
+        return ids;
+    }
+
+    /**
+     * Stream the loginName and email of every user.
+     * Rows are fetched in batches when called inside a transaction.
+     */
+    public void forEachUserKey(BiConsumer<String, String> consumer) {
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement("SELECT login_name, email FROM users");
+            ps.setFetchSize(10_000);
+            return ps;
+        }, rs -> {
+            consumer.accept(rs.getString(1), rs.getString(2));
+        });
+    }
+
+    /**
+     * Stream every user as a typeahead suggestion
+     */
+    public void forEachSuggestion(Consumer<UserSuggestion> consumer) {
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement("SELECT " + SUGGESTION_COLUMNS + " FROM users");
+            ps.setFetchSize(10_000);
+            return ps;
+        }, rs -> {
+            consumer.accept(SUGGESTION_MAPPER.mapRow(rs, 0));
+        });
+    }
+
+    /**
+     * The users with the given login names as typeahead suggestions
+     */
+    public List<UserSuggestion> findSuggestions(Collection<String> loginNames) {
+        if (loginNames.isEmpty()) {
+            return List.of();
+        }
+        return jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(
+                "SELECT " + SUGGESTION_COLUMNS + " FROM users WHERE login_name = ANY(?)");
+            ps.setArray(1, con.createArrayOf("varchar", loginNames.toArray()));
+            return ps;
+        }, SUGGESTION_MAPPER);
+    }
+
+    /**
+     * Users without a credential with an id after afterId, in id order, keyed by id.
+     * Only ids in the given residue class modulo shares are read, so that concurrent
+     * callers with different residues never read the same user.
+     */
+    public Map<Long, String> findWithoutCredential(long afterId, int shares, int share, int limit) {
+        Map<Long, String> users = new LinkedHashMap<>();
+        jdbcTemplate.query("""
+            SELECT id, login_name FROM users
+            WHERE password = '' AND id > ? AND id % ? = ?
+            ORDER BY id
+            LIMIT ?
+            """, rs -> {
+            users.put(rs.getLong(1), rs.getString(2));
+        }, afterId, shares, share, limit);
+        return users;
+    }
+
+    /**
+     * Set password hashes for users that still have no credential.
+     * Users that set a credential in the meantime are left untouched.
+     */
+    public void setInitialPasswords(Map<String, String> hashesByLoginName) {
+        if (hashesByLoginName.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<String, String>> entries = List.copyOf(hashesByLoginName.entrySet());
+        jdbcTemplate.batchUpdate(SET_INITIAL_PASSWORD_SQL, entries, entries.size(), (ps, entry) -> {
+            ps.setString(1, entry.getValue());
+            ps.setString(2, entry.getKey());
+        });
+    }
+
+    private String toJson(Map<String, String> attributes) {
+        if (attributes == null) {
+            return null;
+        }
+        try {
+            return objectMapper.writeValueAsString(attributes);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize user attributes", e);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.iamdk.directory.repository;
+
+import com.iamdk.directory.service.AttributeFilter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * User Bulk Repository
+ * Set-based JDBC statements of the bulk user operations, each applied to a chunk
+ * of user ids at once
+ */
+@Repository
+@RequiredArgsConstructor
+public class UserBulkRepository {
+
+    private static final String SET_ACTIVE_SQL =
+        "UPDATE users SET active = ?, updated_at = ? WHERE id = ANY(?) AND active <> ?";
+
+    private static final String UNLOCK_SQL = """
+        UPDATE users SET failed_login_attempts = 0, locked_until = NULL
+        WHERE id = ANY(?) AND (failed_login_attempts <> 0 OR locked_until IS NOT NULL)
+        """;
+
+    // A null value removes the attribute
+    private static final String SET_ATTRIBUTE_SQL = """
+        UPDATE users SET
+            attributes = CASE WHEN ?::jsonb IS NULL THEN attributes - ?
+                              ELSE COALESCE(attributes, '{}'::jsonb) || jsonb_build_object(?, ?::jsonb) END,
+            updated_at = ?
+        WHERE id = ANY(?)
+        """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final UserAttributeRepository attributeRepository;
+
+    /**
+     * Ids after afterId, in id order, of the users in the department (if given) that
+     * match the attribute filter (if given)
+     */
+    public List<Long> findIdsAfter(String department, AttributeFilter attributes, long afterId, int limit) {
+        List<String> conditions = new ArrayList<>();
+        List<Object> params = new ArrayList<>();
+        if (department != null) {
+            conditions.add("department = ?");
+            params.add(department);
+        }
+        if (attributes != null) {
+            UserAttributeRepository.Where where = attributeRepository.where(attributes);
+            conditions.add(where.sql());
+            params.addAll(where.params());
+        }
+        conditions.add("id > ?");
+        params.add(afterId);
+        params.add(limit);
+        return jdbcTemplate.queryForList(
+            "SELECT id FROM users WHERE " + String.join(" AND ", conditions) + " ORDER BY id LIMIT ?",
+            Long.class, params.toArray());
+    }
+
+    /**
+     * Login names of the given users that exist, keyed by id
+     */
+    public Map<Long, String> findLoginNames(Collection<Long> ids) {
+        Map<Long, String> loginNames = new LinkedHashMap<>();
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement("SELECT id, login_name FROM users WHERE id = ANY(?) ORDER BY id");
+            ps.setArray(1, con.createArrayOf("bigint", ids.toArray()));
+            return ps;
+        }, rs -> {
+            loginNames.put(rs.getLong(1), rs.getString(2));
+        });
+        return loginNames;
+    }
+
+    /**
+     * @return number of users whose active flag changed
+     */
+    public int setActive(Collection<Long> ids, boolean active) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        return jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement(SET_ACTIVE_SQL);
+            ps.setBoolean(1, active);
+            ps.setTimestamp(2, now);
+            ps.setArray(3, con.createArrayOf("bigint", ids.toArray()));
+            ps.setBoolean(4, active);
+            return ps;
+        });
+    }
+
+    /**
+     * @return number of users that had failed logins or a lock to clear
+     */
+    public int unlock(Collection<Long> ids) {
+        return jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement(UNLOCK_SQL);
+            ps.setArray(1, con.createArrayOf("bigint", ids.toArray()));
+            return ps;
+        });
+    }
+
+    /**
+     * @param jsonValue the attribute's new value as JSON, or null to remove it
+     */
+    public int setAttribute(Collection<Long> ids, String name, String jsonValue) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        return jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement(SET_ATTRIBUTE_SQL);
+            ps.setString(1, jsonValue);
+            ps.setString(2, name);
+            ps.setString(3, name);
+            ps.setString(4, jsonValue);
+            ps.setTimestamp(5, now);
+            ps.setArray(6, con.createArrayOf("bigint", ids.toArray()));
+            return ps;
+        });
+    }
+
+    /**
+     * Delete users along with their group memberships
+     *
+     * @return number of users deleted
+     */
+    public int delete(Collection<Long> ids) {
+        jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement("DELETE FROM user_groups WHERE user_id = ANY(?)");
+            ps.setArray(1, con.createArrayOf("bigint", ids.toArray()));
+            return ps;
+        });
+        return jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement("DELETE FROM users WHERE id = ANY(?)");
+            ps.setArray(1, con.createArrayOf("bigint", ids.toArray()));
+            return ps;
+        });
+    }
+}
@@ -0,0 +1,78 @@
+package com.iamdk.directory.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * User Login Repository
+ * Login bookkeeping as single-statement updates of only the columns involved, so
+ * concurrent attempts on the same user never lose a count and never rewrite the
+ * rest of the row
+ */
+@Repository
+@RequiredArgsConstructor
+public class UserLoginRepository {
+
+    // The lock decision is taken on the incremented count, in the same statement
+    private static final String FAILED_LOGIN_SQL = """
+        UPDATE users SET
+            failed_login_attempts = failed_login_attempts + 1,
+            locked_until = CASE WHEN failed_login_attempts + 1 >= ? THEN ? ELSE locked_until END
+        WHERE login_name = ?
+        RETURNING failed_login_attempts
+        """;
+
+    // Most logins have nothing to reset and write nothing
+    private static final String RESET_FAILED_LOGINS_SQL = """
+        UPDATE users SET failed_login_attempts = 0, locked_until = NULL
+        WHERE login_name = ? AND (failed_login_attempts <> 0 OR locked_until IS NOT NULL)
+        """;
+
+    // greatest() skips a NULL column and keeps a later login flushed by another node
+    private static final String LAST_LOGIN_SQL =
+        "UPDATE users SET last_login_at = greatest(last_login_at, ?) WHERE login_name = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Count a failed login, locking the user until lockedUntil once the count
+     * reaches maxAttempts
+     *
+     * @return the user's failed attempts including this one, or empty if there is no such user
+     */
+    public Optional<Integer> recordFailedLogin(String loginName, int maxAttempts, LocalDateTime lockedUntil) {
+        return jdbcTemplate.query(FAILED_LOGIN_SQL, (rs, rowNum) -> rs.getInt(1),
+            maxAttempts, Timestamp.valueOf(lockedUntil), loginName).stream().findFirst();
+    }
+
+    /**
+     * Clear the failed attempts and any lock of a user
+     *
+     * @return whether the user had anything to clear
+     */
+    public boolean resetFailedLogins(String loginName) {
+        return jdbcTemplate.update(RESET_FAILED_LOGINS_SQL, loginName) == 1;
+    }
+
+    /**
+     * Store last login times as a single JDBC batch; a time older than the stored one is ignored
+     */
+    public void updateLastLogins(Map<String, LocalDateTime> lastLogins) {
+        if (lastLogins.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<String, LocalDateTime>> entries = new ArrayList<>(lastLogins.entrySet());
+        jdbcTemplate.batchUpdate(LAST_LOGIN_SQL, entries, entries.size(), (ps, entry) -> {
+            ps.setTimestamp(1, Timestamp.valueOf(entry.getValue()));
+            ps.setString(2, entry.getKey());
+        });
+    }
+}
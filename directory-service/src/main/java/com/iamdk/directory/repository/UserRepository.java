@@ -1,6 +1,8 @@
 package com.iamdk.directory.repository;
 
+import com.iamdk.directory.dto.admin.UserSummary;
 import com.iamdk.directory.entity.User;
+import com.iamdk.directory.service.UserIdentity;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -8,8 +10,11 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 /**
  * User Repository
@@ -17,15 +22,97 @@ import java.util.Optional;
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
 
+    // Shared by the search queries and their count query
+    String SEARCH_USERS = " FROM users u"
+        + " WHERE (lower(u.login_name) LIKE :primary OR lower(u.email) LIKE :primary"
+        + " OR lower(u.first_name) LIKE :primary OR lower(u.last_name) LIKE :primary)"
+        + " AND lower(u.login_name || ' ' || u.email || ' ' || u.first_name || ' ' || u.last_name)"
+        + " LIKE ALL (string_to_array(:patterns, ' '))";
+
+    String SEARCH_RANKING = " ORDER BY greatest(similarity(lower(u.login_name), :query),"
+        + " similarity(lower(u.email), :query), similarity(lower(u.first_name || ' ' || u.last_name), :query)) DESC,"
+        + " u.id";
+
+    // Columns of UserSummary; quoted aliases keep their case in native queries
+    String USER_SUMMARY_COLUMNS = "SELECT u.id AS \"id\", u.login_name AS \"loginName\", u.email AS \"email\","
+        + " u.first_name AS \"firstName\", u.last_name AS \"lastName\", u.active AS \"active\","
+        + " u.created_at AS \"createdAt\"";
+
+    String USER_SUMMARY = "SELECT u.id AS id, u.loginName AS loginName, u.email AS email, u.firstName AS firstName,"
+        + " u.lastName AS lastName, u.active AS active, u.createdAt AS createdAt FROM User u";
+
+    String USER_IDENTITY = "SELECT new com.iamdk.directory.service.UserIdentity("
+        + "u.id, u.loginName, u.password, u.passwordResetRequired, u.active, u.lockedUntil) FROM User u";
+
     Optional<User> findByLoginName(String loginName);
 
     Optional<User> findByEmail(String email);
 
+    @Query(USER_IDENTITY + " WHERE u.loginName = :loginName")
+    Optional<UserIdentity> findIdentityByLoginName(@Param("loginName") String loginName);
+
+    @Query(USER_IDENTITY + " WHERE u.id = :id")
+    Optional<UserIdentity> findIdentityById(@Param("id") Long id);
+
+    @Query(value = USER_SUMMARY, countQuery = "SELECT count(u) FROM User u")
+    Page<UserSummary> findSummaries(Pageable pageable);
+
+    @Query(USER_SUMMARY + " WHERE u.id IN :ids ORDER BY u.id")
+    List<UserSummary> findSummariesByIds(@Param("ids") Collection<Long> ids);
+
+    List<User> findByIdInOrderById(Collection<Long> ids);
+
+    @Query("SELECT u.loginName FROM User u WHERE u.id = :id")
+    Optional<String> findLoginNameById(@Param("id") Long id);
+
+    @Query("SELECT u.loginName FROM User u WHERE u.id IN :ids")
+    Set<String> findLoginNamesByIds(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT u.loginName FROM User u JOIN u.groups g WHERE g.id = :groupId")
+    Set<String> findLoginNamesByGroupId(@Param("groupId") Long groupId);
+
+    @Query("SELECT u.loginName FROM User u WHERE u.loginName IN :loginNames")
+    Set<String> findExistingLoginNames(@Param("loginNames") Collection<String> loginNames);
+
     List<User> findByLoginNameContainingIgnoreCaseOrEmailContainingIgnoreCase(
         String loginName, String email);
 
-    @Query("SELECT u FROM User u WHERE LOWER(u.loginName) LIKE LOWER(CONCAT('%', :query, '%')) OR LOWER(u.email) LIKE LOWER(CONCAT('%', :query, '%'))")
-    Page<User> findByLoginNameOrEmailContainingIgnoreCase(@Param("query") String query, Pageable pageable);
+    /**
+     * Users whose login name, email, first or last name contain every term, best
+     * matches first. The primary term is matched per column so the trigram indexes
+     * apply; the page must be unsorted, as the order is the ranking.
+     *
+     * @see com.iamdk.directory.service.SearchTerms
+     */
+    @Query(value = "SELECT u.*" + SEARCH_USERS + SEARCH_RANKING,
+        countQuery = "SELECT count(*)" + SEARCH_USERS,
+        nativeQuery = true)
+    Page<User> search(@Param("query") String query, @Param("primary") String primary,
+                      @Param("patterns") String patterns, Pageable pageable);
+
+    /**
+     * The matches of {@link #search} as summaries
+     */
+    @Query(value = USER_SUMMARY_COLUMNS + SEARCH_USERS + SEARCH_RANKING,
+        countQuery = "SELECT count(*)" + SEARCH_USERS,
+        nativeQuery = true)
+    Page<UserSummary> searchSummaries(@Param("query") String query, @Param("primary") String primary,
+                                      @Param("patterns") String patterns, Pageable pageable);
+
+    // Keyset pages, read with an unsorted limit of one more than the page size
+
+    @Query(USER_SUMMARY + " ORDER BY u.createdAt DESC, u.id DESC")
+    List<UserSummary> findNewest(Pageable pageable);
+
+    @Query(USER_SUMMARY + " WHERE (u.createdAt, u.id) < (:createdAt, :id) ORDER BY u.createdAt DESC, u.id DESC")
+    List<UserSummary> findOlderThan(@Param("createdAt") LocalDateTime createdAt, @Param("id") Long id, Pageable pageable);
+
+    // Login names are unique, so they alone order the users
+    @Query("SELECT u FROM User u ORDER BY u.loginName")
+    List<User> findOrderedByLoginName(Pageable pageable);
+
+    @Query("SELECT u FROM User u WHERE u.loginName > :loginName ORDER BY u.loginName")
+    List<User> findAfterLoginName(@Param("loginName") String loginName, Pageable pageable);
 
     @Query("SELECT u FROM User u JOIN u.groups g WHERE g.name = :groupName")
     List<User> findByGroupName(@Param("groupName") String groupName);
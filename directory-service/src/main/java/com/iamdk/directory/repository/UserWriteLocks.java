@@ -0,0 +1,64 @@
+package com.iamdk.directory.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.util.Collection;
+import java.util.TreeSet;
+
+/**
+ * User Write Locks
+ * Transaction-scoped Postgres advisory locks striped by loginName hash, taken by
+ * every writer of a user (provisioning chunks, SCIM and admin edits) so that two
+ * writers of the same user are serialized instead of losing an update.
+ * Stripes are always locked in ascending order, so writers never deadlock.
+ */
+@Repository
+public class UserWriteLocks {
+
+    // First key of the two-key advisory lock space reserved for user writes
+    private static final int LOCK_SPACE = 0x55534552;
+
+    private static final String LOCK_SQL = """
+        SELECT pg_advisory_xact_lock(?, stripe)
+        FROM (SELECT DISTINCT unnest(?) AS stripe ORDER BY stripe) ordered
+        """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int stripes;
+
+    public UserWriteLocks(JdbcTemplate jdbcTemplate, @Value("${provisioning.locks.stripes:1024}") int stripes) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.stripes = stripes;
+    }
+
+    /**
+     * Stripe of a loginName. Writers that partition users by stripe never wait for each other.
+     */
+    public int stripeOf(String loginName) {
+        return Math.floorMod(loginName.hashCode(), stripes);
+    }
+
+    /**
+     * Lock the stripes of the given users until the current transaction ends,
+     * waiting for other transactions that hold any of them
+     */
+    public void lock(Collection<String> loginNames) {
+        if (loginNames.isEmpty()) {
+            return;
+        }
+        TreeSet<Integer> locked = new TreeSet<>();
+        for (String loginName : loginNames) {
+            locked.add(stripeOf(loginName));
+        }
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(LOCK_SQL);
+            ps.setInt(1, LOCK_SPACE);
+            ps.setArray(2, con.createArrayOf("integer", locked.toArray()));
+            return ps;
+        }, rs -> {
+        });
+    }
+}
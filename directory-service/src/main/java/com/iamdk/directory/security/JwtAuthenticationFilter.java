@@ -36,17 +36,18 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
         if (token != null && jwtService.validateToken(token) && !jwtService.isTokenExpired(token)) {
             String username = jwtService.extractUsername(token);
+            String role = jwtService.extractRole(token);
 
             // Create authentication
             UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
                 username,
                 null,
-                Collections.singletonList(new SimpleGrantedAuthority("ROLE_ADMIN"))
+                Collections.singletonList(new SimpleGrantedAuthority("ROLE_" + role))
             );
             authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
             SecurityContextHolder.getContext().setAuthentication(authentication);
 
-            log.debug("Authenticated user: {}", username);
+            log.debug("Authenticated user: {} ({})", username, role);
         }
 
         filterChain.doFilter(request, response);
@@ -16,6 +16,14 @@ import java.util.Date;
 @Component
 public class JwtService {
 
+    public static final String ADMIN_ROLE = "ADMIN";
+
+    /**
+     * Role of a token issued to a user who must set a new password first; it only
+     * grants changing the user's own password
+     */
+    public static final String PASSWORD_RESET_ROLE = "PASSWORD_RESET";
+
     @Value("${jwt.secret}")
     private String jwtSecret;
 
@@ -30,6 +38,13 @@ public class JwtService {
      * Generate JWT token for admin user
      */
     public String generateToken(String username) {
+        return generateToken(username, ADMIN_ROLE);
+    }
+
+    /**
+     * Generate JWT token granting the given role
+     */
+    public String generateToken(String username, String role) {
         Date now = new Date();
         Date expiryDate = new Date(now.getTime() + jwtExpiration);
 
@@ -37,7 +52,7 @@ public class JwtService {
             .subject(username)
             .issuedAt(now)
             .expiration(expiryDate)
-            .claim("role", "ADMIN")
+            .claim("role", role)
             .signWith(getSigningKey())
             .compact();
     }
@@ -54,6 +69,19 @@ public class JwtService {
             .getSubject();
     }
 
+    /**
+     * Extract the role from token; tokens issued without one are admin tokens
+     */
+    public String extractRole(String token) {
+        String role = Jwts.parser()
+            .verifyWith(getSigningKey())
+            .build()
+            .parseSignedClaims(token)
+            .getPayload()
+            .get("role", String.class);
+        return role != null ? role : ADMIN_ROLE;
+    }
+
     /**
      * Validate token
      */
@@ -2,6 +2,8 @@ package com.iamdk.directory.security;
 
 import com.iamdk.directory.entity.User;
 import com.iamdk.directory.repository.UserRepository;
+import com.iamdk.directory.service.UserIdentity;
+import com.iamdk.directory.service.UserIdentityCache;
 import lombok.RequiredArgsConstructor;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -19,24 +21,33 @@ import java.util.Collections;
 public class JwtUserDetailsService implements UserDetailsService {
 
     private final UserRepository userRepository;
+    private final UserIdentityCache identityCache;
 
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        User user = userRepository.findByLoginName(username)
+        // Served from the identity cache; writers of this node invalidate the user on commit
+        UserIdentity user = identityCache.findByLoginName(username)
             .orElseThrow(() -> new UsernameNotFoundException("User not found: " + username));
 
         if (user.isLocked()) {
             throw new UsernameNotFoundException("Account is locked: " + username);
         }
 
-        if (!user.getActive()) {
+        if (!user.active()) {
             throw new UsernameNotFoundException("Account is inactive: " + username);
         }
 
+        if (!user.hasCredential()) {
+            throw new UsernameNotFoundException("Credential not set: " + username);
+        }
+
+        // A user given an initial password may only set a new one
+        String role = user.passwordResetRequired() ? JwtService.PASSWORD_RESET_ROLE : JwtService.ADMIN_ROLE;
+
         return org.springframework.security.core.userdetails.User.builder()
-            .username(user.getLoginName())
-            .password(user.getPassword())
-            .authorities(Collections.singletonList(new SimpleGrantedAuthority("ROLE_ADMIN")))
+            .username(user.loginName())
+            .password(user.passwordHash())
+            .authorities(Collections.singletonList(new SimpleGrantedAuthority("ROLE_" + role)))
             .build();
     }
 
@@ -0,0 +1,96 @@
+package com.iamdk.directory.service;
+
+import com.iamdk.directory.dto.scim.ScimUser;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Attribute Filter
+ * Equality conditions on custom user attributes that must all hold. The admin API
+ * passes them as name=value, matched as strings, which is how provisioning stores
+ * attributes; SCIM filters on the attribute extension pass typed JSON literals.
+ *
+ * @param equals attribute names and the String, Number or Boolean value each must have
+ */
+public record AttributeFilter(Map<String, Object> equals) {
+
+    // Names also become column names when an attribute is promoted
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9_]{1,50}");
+
+    // <schema>:<name> eq <literal>, followed by "and" and the next term, or the end
+    private static final Pattern SCIM_TERM = Pattern.compile(
+        "\\s*" + Pattern.quote(ScimUser.ATTRIBUTES_SCHEMA) + ":([A-Za-z0-9_]+)\\s+eq\\s+"
+            + "(\"(?:[^\"\\\\]|\\\\.)*\"|true|false|-?\\d+(?:\\.\\d+)?)"
+            + "\\s*(?:$|and\\s+(?=\\S))",
+        Pattern.CASE_INSENSITIVE);
+
+    public AttributeFilter {
+        if (equals.isEmpty()) {
+            throw new IllegalArgumentException("Attribute filter has no conditions");
+        }
+        equals.keySet().forEach(AttributeFilter::checkName);
+    }
+
+    public static void checkName(String name) {
+        if (!NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("Invalid attribute name: " + name);
+        }
+    }
+
+    /**
+     * @param terms name=value terms
+     * @return the filter, or null if there are no terms
+     */
+    public static AttributeFilter fromTerms(List<String> terms) {
+        if (terms == null || terms.isEmpty()) {
+            return null;
+        }
+        Map<String, Object> equals = new LinkedHashMap<>();
+        for (String term : terms) {
+            int separator = term.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Attribute term must be name=value: " + term);
+            }
+            equals.put(term.substring(0, separator).trim(), term.substring(separator + 1));
+        }
+        return new AttributeFilter(equals);
+    }
+
+    /**
+     * @return the filter, or null if the SCIM filter is not on the attribute extension
+     * @throws IllegalArgumentException for attribute filters other than eq terms joined by and
+     */
+    public static AttributeFilter fromScim(String filter) {
+        if (filter == null || !filter.trim().regionMatches(true, 0, ScimUser.ATTRIBUTES_SCHEMA + ":", 0,
+                ScimUser.ATTRIBUTES_SCHEMA.length() + 1)) {
+            return null;
+        }
+        Map<String, Object> equals = new LinkedHashMap<>();
+        Matcher term = SCIM_TERM.matcher(filter);
+        int position = 0;
+        while (position < filter.length()) {
+            term.region(position, filter.length());
+            if (!term.lookingAt()) {
+                throw new IllegalArgumentException("Unsupported attribute filter: " + filter);
+            }
+            equals.put(term.group(1), literal(term.group(2)));
+            position = term.end();
+        }
+        return new AttributeFilter(equals);
+    }
+
+    private static Object literal(String literal) {
+        if (literal.startsWith("\"")) {
+            return literal.substring(1, literal.length() - 1).replaceAll("\\\\(.)", "$1");
+        }
+        if (literal.equalsIgnoreCase("true") || literal.equalsIgnoreCase("false")) {
+            return Boolean.valueOf(literal);
+        }
+        return new BigDecimal(literal);
+    }
+}
@@ -0,0 +1,329 @@
+package com.iamdk.directory.service;
+
+import com.iamdk.directory.service.source.ProvisioningSource;
+import com.iamdk.directory.service.source.SourceRecord;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * CSV Record Ranges
+ * Splits a CSV file into byte ranges that start and end on record boundaries.
+ * Boundaries are found with a quote-aware byte scan, so quoted fields
+ * containing line breaks are never split. Records are counted as the parsers
+ * read them: CRLF, LF and CR all end a record and empty lines are skipped, so
+ * row numbers are the same however the file is split.
+ */
+public final class CsvRecordRanges {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private CsvRecordRanges() {
+    }
+
+    /**
+     * A record-aligned byte range [start, end) holding the 1-based data rows
+     * firstRow..lastRow
+     */
+    public record Range(long start, long end, long firstRow, long lastRow) {
+
+        public long length() {
+            return end - start;
+        }
+    }
+
+    /**
+     * Offset just past the first record (the header line), or the file size if there is none
+     */
+    public static long headerEnd(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        long size = channel.size();
+        long position = 0;
+        boolean inQuotes = false;
+        boolean inRecord = false;
+
+        while (position < size) {
+            buffer.clear();
+            int n = channel.read(buffer, position);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                byte b = buffer.get(i);
+                if (b == '"') {
+                    inQuotes = !inQuotes;
+                    inRecord = true;
+                } else if (!isLineBreak(b)) {
+                    inRecord = true;
+                } else if (!inQuotes && inRecord) {
+                    return position + i + 1;
+                }
+            }
+            position += n;
+        }
+        return size;
+    }
+
+    /**
+     * Offset just past the last complete record in [start, EOF), or start if there is
+     * none. A record still being appended, without its line break yet, is excluded.
+     *
+     * @param quoted whether line breaks inside double quotes belong to the record, as
+     *               in CSV; NDJSON has none and may contain escaped quotes
+     */
+    public static long completeRecordsEnd(FileChannel channel, long start, boolean quoted) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        long size = channel.size();
+        long position = start;
+        long end = start;
+        boolean inQuotes = false;
+
+        while (position < size) {
+            buffer.clear();
+            int n = channel.read(buffer, position);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                byte b = buffer.get(i);
+                if (b == '"' && quoted) {
+                    inQuotes = !inQuotes;
+                } else if (isLineBreak(b) && !inQuotes) {
+                    end = position + i + 1;
+                }
+            }
+            position += n;
+        }
+        return end;
+    }
+
+    /**
+     * Split [start, EOF) into ranges of roughly targetSize bytes each
+     */
+    public static List<Range> split(FileChannel channel, long start, long targetSize) throws IOException {
+        return split(channel, start, 1, targetSize, Long.MAX_VALUE);
+    }
+
+    /**
+     * Split [start, EOF) into ranges that end once they reach targetSize bytes or
+     * maxRows records, whichever comes first
+     *
+     * @param firstRow row number of the record at start
+     */
+    public static List<Range> split(FileChannel channel, long start, long firstRow,
+                                    long targetSize, long maxRows) throws IOException {
+        List<Range> ranges = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        long size = channel.size();
+        long position = start;
+        long rangeStart = start;
+        long rows = firstRow - 1;
+        boolean inQuotes = false;
+        boolean inRecord = false;
+
+        while (position < size) {
+            buffer.clear();
+            int n = channel.read(buffer, position);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                byte b = buffer.get(i);
+                // An escaped quote ("") toggles twice, leaving the state unchanged
+                if (b == '"') {
+                    inQuotes = !inQuotes;
+                    inRecord = true;
+                } else if (!isLineBreak(b)) {
+                    inRecord = true;
+                } else if (!inQuotes && inRecord) {
+                    // The LF of a CRLF then starts the next range as an empty line
+                    inRecord = false;
+                    rows++;
+                    long recordEnd = position + i + 1;
+                    if (recordEnd - rangeStart >= targetSize || rows - firstRow + 1 >= maxRows) {
+                        ranges.add(new Range(rangeStart, recordEnd, firstRow, rows));
+                        rangeStart = recordEnd;
+                        firstRow = rows + 1;
+                    }
+                }
+            }
+            position += n;
+        }
+
+        if (rangeStart < size) {
+            // The last record may lack a trailing line break
+            ranges.add(new Range(rangeStart, size, firstRow, inRecord ? rows + 1 : rows));
+        }
+        return ranges;
+    }
+
+    private static boolean isLineBreak(byte b) {
+        return b == '\n' || b == '\r';
+    }
+
+    /**
+     * Open an input stream over [start, end) of the channel using positional reads,
+     * so several ranges of the same channel can be read concurrently
+     */
+    public static InputStream open(FileChannel channel, long start, long end) {
+        return new RangeInputStream(channel, start, end);
+    }
+
+    /**
+     * How the records of a CSV file are read
+     *
+     * @param delimiter   field delimiter, see {@link #delimiter(FileChannel, long)}
+     * @param columnsRead header positions the mapping plan reads
+     * @param tokenize    whether to read comma separated files with {@link CsvTokenizer}
+     */
+    public record Format(String[] header, char delimiter, boolean[] columnsRead, boolean tokenize) {
+
+        public static Format of(FileChannel channel, long headerEnd, String[] header, ProvisioningMappingPlan plan,
+                                boolean tokenize) throws IOException {
+            return new Format(header, CsvRecordRanges.delimiter(channel, headerEnd), plan.columnsRead(header.length), tokenize);
+        }
+    }
+
+    /**
+     * Read the records of a range. Comma separated files are read by the byte
+     * tokenizer, other dialects by commons-csv. Row numbers start at the range's first row.
+     */
+    public static ProvisioningSource records(FileChannel channel, Range range, Format format) throws IOException {
+        InputStream in = open(channel, range.start(), range.end());
+        if (format.tokenize() && format.delimiter() == ',') {
+            return new CsvTokenizer(in, format.header(), format.columnsRead(), range.firstRow());
+        }
+        CSVParser parser = CSVFormat.DEFAULT
+            .withDelimiter(format.delimiter())
+            .withHeader(format.header())
+            .withIgnoreHeaderCase()
+            .withTrim()
+            .parse(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)));
+        return new ParsedRecords(parser, range.firstRow());
+    }
+
+    /**
+     * Delimiter of the file, guessed from its header: a comma, unless the header has
+     * no comma outside quotes but semicolons or tabs, as some spreadsheets export
+     */
+    public static char delimiter(FileChannel channel, long headerEnd) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(headerEnd, 64 * 1024));
+        channel.read(buffer, 0);
+        int semicolons = 0;
+        int tabs = 0;
+        boolean inQuotes = false;
+        for (int i = 0; i < buffer.position(); i++) {
+            byte b = buffer.get(i);
+            if (b == '"') {
+                inQuotes = !inQuotes;
+            } else if (!inQuotes) {
+                if (b == ',') {
+                    return ',';
+                } else if (b == ';') {
+                    semicolons++;
+                } else if (b == '\t') {
+                    tabs++;
+                }
+            }
+        }
+        if (semicolons == 0 && tabs == 0) {
+            return ',';
+        }
+        return semicolons >= tabs ? ';' : '\t';
+    }
+
+    /**
+     * Column names of the header record ending at headerEnd
+     */
+    public static String[] header(FileChannel channel, long headerEnd) throws IOException {
+        char delimiter = delimiter(channel, headerEnd);
+        try (Reader reader = new InputStreamReader(open(channel, 0, headerEnd), StandardCharsets.UTF_8);
+             CSVParser parser = CSVFormat.DEFAULT.withDelimiter(delimiter).withTrim().parse(reader)) {
+            var records = parser.getRecords();
+            if (records.isEmpty()) {
+                throw new IllegalArgumentException("CSV file has no header");
+            }
+            List<String> names = new ArrayList<>();
+            records.get(0).forEach(names::add);
+            // Spreadsheets often start UTF-8 files with a byte order mark
+            if (names.get(0).startsWith("\uFEFF")) {
+                names.set(0, names.get(0).substring(1).trim());
+            }
+            return names.toArray(new String[0]);
+        }
+    }
+
+    /**
+     * Records of a range parsed by commons-csv
+     */
+    private static class ParsedRecords implements ProvisioningSource {
+
+        private final CSVParser parser;
+        private final Iterator<CSVRecord> records;
+        private final long firstRow;
+
+        ParsedRecords(CSVParser parser, long firstRow) {
+            this.parser = parser;
+            this.records = parser.iterator();
+            this.firstRow = firstRow;
+        }
+
+        @Override
+        public SourceRecord next() {
+            if (!records.hasNext()) {
+                return null;
+            }
+            CSVRecord record = records.next();
+            return SourceRecord.of(firstRow + record.getRecordNumber() - 1, record);
+        }
+
+        @Override
+        public void close() throws IOException {
+            parser.close();
+        }
+    }
+
+    private static class RangeInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private final long end;
+        private long position;
+
+        RangeInputStream(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == 1 ? single[0] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            int toRead = (int) Math.min(len, end - position);
+            int n = channel.read(ByteBuffer.wrap(b, off, toRead), position);
+            if (n > 0) {
+                position += n;
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.iamdk.directory.service;
+
+import com.iamdk.directory.service.source.ProvisioningSource;
+import com.iamdk.directory.service.source.SourceRecord;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * CSV Tokenizer
+ * Reads CSV records straight from bytes, in the dialect the importer parses with
+ * commons-csv: comma separated, fields optionally double quoted with "" as an
+ * escaped quote, CRLF, LF or CR line breaks, empty lines skipped and values trimmed.
+ * <p>
+ * The input is scanned in a reused buffer and only the columns the mapping plan
+ * reads are decoded to strings; the others read as null. One record object is
+ * reused for every row, so a record must not be kept past the next call to next().
+ */
+final class CsvTokenizer implements ProvisioningSource {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // parseRecord results that are not a record end
+    private static final int NEED_MORE = -1;
+    private static final int END_OF_INPUT = -2;
+
+    private final InputStream in;
+    private final String[] header;
+    private final boolean[] decoded;
+    private final Map<String, Integer> columnIndex;
+    private final Row row;
+
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private byte[] scratch = new byte[256];
+    private int position;
+    private int limit;
+    private boolean eof;
+    private long nextRowNumber;
+
+    /**
+     * @param header   column names of the file
+     * @param decoded  header positions to decode; other columns read as null
+     * @param firstRow row number of the first record of the input
+     */
+    CsvTokenizer(InputStream in, String[] header, boolean[] decoded, long firstRow) {
+        this.in = in;
+        this.header = header;
+        this.decoded = decoded;
+        this.columnIndex = new HashMap<>(header.length * 2);
+        for (int i = 0; i < header.length; i++) {
+            columnIndex.putIfAbsent(header[i].trim().toLowerCase(Locale.ROOT), i);
+        }
+        this.row = new Row(new String[header.length]);
+        this.nextRowNumber = firstRow;
+    }
+
+    @Override
+    public SourceRecord next() throws IOException {
+        while (true) {
+            int end = parseRecord(position);
+            if (end == NEED_MORE) {
+                fill();
+                continue;
+            }
+            if (end == END_OF_INPUT) {
+                return null;
+            }
+            position = end;
+            row.rowNumber = nextRowNumber++;
+            return row;
+        }
+    }
+
+    @Override
+    public String[] header() {
+        return header;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Parse the record starting at p into the reused row
+     *
+     * @return the position after the record and its line break, NEED_MORE if the
+     *         buffer ends inside the record, or END_OF_INPUT if no record is left
+     */
+    private int parseRecord(int p) throws IOException {
+        while (true) {
+            if (p >= limit) {
+                return eof ? END_OF_INPUT : NEED_MORE;
+            }
+            if (buffer[p] != '\n' && buffer[p] != '\r') {
+                break;
+            }
+            p++;
+        }
+
+        String[] values = row.values;
+        int field = 0;
+        while (true) {
+            boolean wanted = field < decoded.length && decoded[field];
+            String value = null;
+
+            if (p < limit && buffer[p] == '"') {
+                int contentStart = p + 1;
+                int q = contentStart;
+                boolean escaped = false;
+                while (true) {
+                    if (q >= limit) {
+                        if (!eof) {
+                            return NEED_MORE;
+                        }
+                        throw new IOException("Row " + nextRowNumber + ": end of file inside a quoted field");
+                    }
+                    if (buffer[q] == '"') {
+                        if (q + 1 >= limit && !eof) {
+                            return NEED_MORE;
+                        }
+                        if (q + 1 < limit && buffer[q + 1] == '"') {
+                            escaped = true;
+                            q += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    q++;
+                }
+                int contentEnd = q++;
+                // Only whitespace may follow the closing quote
+                while (q < limit && isWhitespace(buffer[q])) {
+                    q++;
+                }
+                if (q >= limit && !eof) {
+                    return NEED_MORE;
+                }
+                if (q < limit && !isTerminator(buffer[q])) {
+                    throw new IOException("Row " + nextRowNumber + ": invalid character after a quoted field");
+                }
+                if (wanted) {
+                    value = escaped ? unescape(contentStart, contentEnd) : decode(buffer, contentStart, contentEnd);
+                }
+                p = q;
+            } else {
+                int q = p;
+                while (q < limit && !isTerminator(buffer[q])) {
+                    q++;
+                }
+                if (q >= limit && !eof) {
+                    return NEED_MORE;
+                }
+                if (wanted) {
+                    value = decode(buffer, p, q);
+                }
+                p = q;
+            }
+
+            if (field < values.length) {
+                values[field] = value;
+            }
+            field++;
+
+            if (p >= limit) {
+                row.fieldCount = field;
+                return p;
+            }
+            byte terminator = buffer[p];
+            if (terminator == ',') {
+                p++;
+                continue;
+            }
+            if (terminator == '\r') {
+                if (p + 1 >= limit && !eof) {
+                    return NEED_MORE;
+                }
+                p++;
+                if (p < limit && buffer[p] == '\n') {
+                    p++;
+                }
+            } else {
+                p++;
+            }
+            row.fieldCount = field;
+            return p;
+        }
+    }
+
+    /**
+     * Move the unparsed bytes to the start of the buffer, growing it if a single
+     * record fills it, and read more input after them
+     */
+    private void fill() throws IOException {
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+        if (limit == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        int n = in.read(buffer, limit, buffer.length - limit);
+        if (n < 0) {
+            eof = true;
+        } else {
+            limit += n;
+        }
+    }
+
+    private String unescape(int start, int end) {
+        if (scratch.length < end - start) {
+            scratch = new byte[Math.max(end - start, scratch.length * 2)];
+        }
+        int length = 0;
+        for (int i = start; i < end; i++) {
+            scratch[length++] = buffer[i];
+            if (buffer[i] == '"') {
+                // Skip the second quote of the pair
+                i++;
+            }
+        }
+        return decode(scratch, 0, length);
+    }
+
+    /**
+     * Decode a value trimmed like String.trim(); bytes of multi-byte UTF-8
+     * characters are never below 0x80, so trimming bytes is safe
+     */
+    private static String decode(byte[] bytes, int start, int end) {
+        while (start < end && (bytes[start] & 0xFF) <= ' ') {
+            start++;
+        }
+        while (end > start && (bytes[end - 1] & 0xFF) <= ' ') {
+            end--;
+        }
+        return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    private static boolean isTerminator(byte b) {
+        return b == ',' || b == '\n' || b == '\r';
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == 0x0B || b == 0x0C || (b >= 0x1C && b <= 0x1F);
+    }
+
+    /**
+     * The reused record
+     */
+    private final class Row implements SourceRecord {
+
+        private final String[] values;
+        private int fieldCount;
+        private long rowNumber;
+
+        Row(String[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public long rowNumber() {
+            return rowNumber;
+        }
+
+        @Override
+        public String get(String field) {
+            Integer index = columnIndex.get(field.toLowerCase(Locale.ROOT));
+            return index != null ? get(index) : null;
+        }
+
+        @Override
+        public String get(int index) {
+            return index < fieldCount && index < values.length ? values[index] : null;
+        }
+    }
+}
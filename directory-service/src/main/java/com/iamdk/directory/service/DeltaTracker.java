@@ -0,0 +1,33 @@
+package com.iamdk.directory.service;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Delta Tracker
+ * Per-job state of a delta provisioning run: the source being synchronized and
+ * every login name the current file delivered, including rows that failed
+ */
+public class DeltaTracker {
+
+    private final String sourceKey;
+    private final Set<String> seen = ConcurrentHashMap.newKeySet();
+
+    public DeltaTracker(String sourceKey) {
+        this.sourceKey = sourceKey;
+    }
+
+    public String getSourceKey() {
+        return sourceKey;
+    }
+
+    public void seen(String loginName) {
+        if (loginName != null && !loginName.isBlank()) {
+            seen.add(loginName);
+        }
+    }
+
+    public boolean wasSeen(String loginName) {
+        return seen.contains(loginName);
+    }
+}
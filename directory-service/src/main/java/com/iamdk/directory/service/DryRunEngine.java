@@ -0,0 +1,175 @@
+package com.iamdk.directory.service;
+
+import com.iamdk.directory.dto.provisioning.DryRunReport;
+import com.iamdk.directory.dto.provisioning.DryRunReport.Conflict;
+import com.iamdk.directory.dto.provisioning.DryRunReport.ConflictType;
+import com.iamdk.directory.dto.provisioning.ProvisioningRow;
+import com.iamdk.directory.dto.provisioning.RowError;
+import com.iamdk.directory.entity.ProvisioningJob.SourceType;
+import com.iamdk.directory.repository.GroupBatchRepository;
+import com.iamdk.directory.repository.UserBatchRepository;
+import com.iamdk.directory.repository.UserRepository;
+import com.iamdk.directory.service.source.ProvisioningSource;
+import com.iamdk.directory.service.source.SourceRecord;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dry Run Engine
+ * Validates a whole source against a snapshot of the directory's unique keys that is
+ * loaded with a single query, reporting in-file duplicates, email unique constraint
+ * violations, creates and updates. Rows naming a group that does not exist are
+ * invalid, as in a real run, unless missing groups are created.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DryRunEngine {
+
+    private final UserRepository userRepository;
+    private final UserBatchRepository userBatchRepository;
+    private final GroupBatchRepository groupBatchRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${provisioning.dry-run.max-conflicts:1000}")
+    private int maxConflicts;
+
+    @Value("${provisioning.groups.create-missing:false}")
+    private boolean createMissingGroups;
+
+    /**
+     * Validate the whole source with the given column mappings and return the full report
+     */
+    public DryRunReport run(ProvisioningSource source, SourceType sourceType, Map<String, String> mappings)
+            throws IOException {
+        UserKeySnapshot snapshot = loadSnapshot();
+        Evaluation evaluation = new Evaluation(snapshot);
+        // Only read: a dry run must not create the groups a real run would
+        GroupCache groups = createMissingGroups ? null : new GroupCache(groupBatchRepository, false);
+
+        try (source) {
+            ProvisioningMappingPlan plan = ProvisioningMappingPlan.compile(mappings, sourceType, source.header());
+            SourceRecord record;
+            while ((record = source.next()) != null) {
+                ProvisioningRowMapper.Result result = plan.map(record);
+                String unknownGroup = result.isValid() && groups != null ? unknownGroupOf(result.row(), groups) : null;
+                if (unknownGroup != null) {
+                    evaluation.invalid(new RowError(record.rowNumber(), "groups", "unknown group '" + unknownGroup + "'"),
+                        result.row().loginName());
+                } else if (result.isValid()) {
+                    evaluation.check(result.row());
+                } else {
+                    evaluation.invalid(result.error(), plan.loginNameOf(record));
+                }
+            }
+        }
+
+        return evaluation.report();
+    }
+
+    private UserKeySnapshot loadSnapshot() {
+        long started = System.currentTimeMillis();
+        UserKeySnapshot snapshot = new UserKeySnapshot((int) Math.min(Integer.MAX_VALUE / 4, userRepository.count()));
+        // Inside a transaction the driver honours the fetch size instead of buffering every row
+        transactionTemplate.executeWithoutResult(status -> userBatchRepository.forEachUserKey(snapshot::add));
+        log.debug("Loaded key snapshot of {} users ({} bytes) in {} ms", snapshot.size(), snapshot.memoryBytes(),
+            System.currentTimeMillis() - started);
+        return snapshot;
+    }
+
+    /**
+     * First group of the row that does not exist, as ProvisioningBatchWriter rejects it
+     */
+    private String unknownGroupOf(ProvisioningRow row, GroupCache groups) {
+        if (row.groups() == null) {
+            return null;
+        }
+        groups.resolve(List.of(row));
+        return groups.unknownGroupOf(row);
+    }
+
+    /**
+     * State of one dry run: the snapshot, keys seen so far in the file and the counters
+     */
+    private class Evaluation {
+
+        private final UserKeySnapshot snapshot;
+        private final UserKeySnapshot.LongTable fileLoginRows = new UserKeySnapshot.LongTable(1024);
+        private final UserKeySnapshot.LongTable fileEmailLogins = new UserKeySnapshot.LongTable(1024);
+        private final UserKeySnapshot.LongTable fileEmailRows = new UserKeySnapshot.LongTable(1024);
+        private final List<Conflict> conflicts = new ArrayList<>();
+        private boolean truncated;
+
+        private long toCreate;
+        private long toUpdate;
+        private long invalidRows;
+        private long duplicateLoginNames;
+        private long duplicateEmails;
+        private long emailsInUse;
+
+        Evaluation(UserKeySnapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        void check(ProvisioningRow row) {
+            long login = UserKeySnapshot.hash(row.loginName());
+            long email = UserKeySnapshot.hash(row.email());
+
+            long firstLoginRow = fileLoginRows.putIfAbsent(login, row.rowNumber());
+            long otherLogin = fileEmailLogins.putIfAbsent(email, login);
+            if (otherLogin == 0) {
+                fileEmailRows.put(email, row.rowNumber());
+            }
+
+            if (otherLogin != 0 && otherLogin != login) {
+                duplicateEmails++;
+                conflict(row, ConflictType.DUPLICATE_EMAIL,
+                    "Email '" + row.email() + "' is also used by another user in this file", fileEmailRows.get(email));
+            } else if (snapshot.isEmailTakenByOther(row.email(), row.loginName())) {
+                emailsInUse++;
+                conflict(row, ConflictType.EMAIL_IN_USE,
+                    "Email '" + row.email() + "' belongs to another existing user", null);
+            } else if (firstLoginRow != 0) {
+                // The real import applies rows in file order, so this row overrides the earlier one
+                duplicateLoginNames++;
+                conflict(row, ConflictType.DUPLICATE_LOGIN_NAME,
+                    "loginName '" + row.loginName() + "' appears more than once; this row wins", firstLoginRow);
+            } else if (snapshot.containsLoginName(row.loginName())) {
+                toUpdate++;
+            } else {
+                toCreate++;
+            }
+        }
+
+        void invalid(RowError error, String loginName) {
+            invalidRows++;
+            addConflict(new Conflict(error.rowNumber(), ConflictType.INVALID_ROW, loginName,
+                "Field '" + error.field() + "' is " + error.reason(), null));
+        }
+
+        private void conflict(ProvisioningRow row, ConflictType type, String message, Long firstRowNumber) {
+            addConflict(new Conflict(row.rowNumber(), type, row.loginName(), message, firstRowNumber));
+        }
+
+        private void addConflict(Conflict conflict) {
+            if (conflicts.size() < maxConflicts) {
+                conflicts.add(conflict);
+            } else {
+                truncated = true;
+            }
+        }
+
+        DryRunReport report() {
+            return new DryRunReport(toCreate, toUpdate, invalidRows, duplicateLoginNames,
+                duplicateEmails, emailsInUse, conflicts, truncated);
+        }
+    }
+}
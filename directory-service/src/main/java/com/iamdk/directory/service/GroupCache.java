@@ -0,0 +1,84 @@
+package com.iamdk.directory.service;
+
+import com.iamdk.directory.dto.provisioning.ProvisioningRow;
+import com.iamdk.directory.repository.GroupBatchRepository;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Group Cache
+ * Per-job map of group names to ids, so each group a source names is looked up once
+ * per job rather than once per row. Unknown names are remembered too; with
+ * createMissing they are created instead, outside the chunk transactions so a
+ * rolled back chunk never leaves a cached id behind.
+ */
+public class GroupCache {
+
+    private static final long UNKNOWN = 0;
+
+    private final GroupBatchRepository groupBatchRepository;
+    private final boolean createMissing;
+    private final Map<String, Long> ids = new ConcurrentHashMap<>();
+
+    public GroupCache(GroupBatchRepository groupBatchRepository, boolean createMissing) {
+        this.groupBatchRepository = groupBatchRepository;
+        this.createMissing = createMissing;
+    }
+
+    /**
+     * Look up every group named by the rows that is not cached yet, with one query
+     */
+    public void resolve(Collection<ProvisioningRow> rows) {
+        Set<String> missing = new HashSet<>();
+        for (ProvisioningRow row : rows) {
+            if (row.groups() != null) {
+                for (String group : row.groups()) {
+                    if (!ids.containsKey(group)) {
+                        missing.add(group);
+                    }
+                }
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        if (createMissing) {
+            groupBatchRepository.insertGroups(missing);
+        }
+        Map<String, Long> found = groupBatchRepository.findGroupIds(missing);
+        for (String group : missing) {
+            ids.put(group, found.getOrDefault(group, UNKNOWN));
+        }
+    }
+
+    /**
+     * First group of the row that does not exist, or null if all of them do.
+     * Only valid for rows passed to {@link #resolve}.
+     */
+    public String unknownGroupOf(ProvisioningRow row) {
+        if (row.groups() != null) {
+            for (String group : row.groups()) {
+                if (ids.getOrDefault(group, UNKNOWN) == UNKNOWN) {
+                    return group;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Ids of the row's groups. Only valid for rows passed to {@link #resolve}.
+     */
+    public Set<Long> idsOf(ProvisioningRow row) {
+        Set<Long> groupIds = new HashSet<>();
+        for (String group : row.groups()) {
+            groupIds.add(ids.get(group));
+        }
+        return groupIds;
+    }
+}
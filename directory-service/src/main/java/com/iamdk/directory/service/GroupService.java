@@ -1,18 +1,25 @@
 package com.iamdk.directory.service;
 
+import com.iamdk.directory.dto.CursorPage;
 import com.iamdk.directory.dto.scim.ScimGroup;
 import com.iamdk.directory.entity.Group;
 import com.iamdk.directory.entity.User;
 import com.iamdk.directory.repository.GroupRepository;
+import com.iamdk.directory.repository.ProvisioningFingerprintRepository;
 import com.iamdk.directory.repository.UserRepository;
+import com.iamdk.directory.repository.UserWriteLocks;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
@@ -28,6 +35,11 @@ public class GroupService {
 
     private final GroupRepository groupRepository;
     private final UserRepository userRepository;
+    private final ProvisioningFingerprintRepository fingerprintRepository;
+    private final UserWriteLocks userWriteLocks;
+
+    @Value("${paging.max-page-size:1000}")
+    private int maxPageSize;
 
     /**
      * Create a new group
@@ -63,6 +75,29 @@ public class GroupService {
         return groupRepository.save(existing);
     }
 
+    /**
+     * Create a group with its members in one transaction, so a failure leaves no
+     * group with only some of them
+     *
+     * @param userIds the members, or null to create the group without any
+     */
+    @Transactional
+    public Group createGroup(Group group, Set<Long> userIds) {
+        Group created = createGroup(group);
+        return userIds != null ? setGroupMembers(created.getId(), userIds) : created;
+    }
+
+    /**
+     * Update a group and replace its members in one transaction
+     *
+     * @param userIds the new members, or null to keep the current ones
+     */
+    @Transactional
+    public Group updateGroup(Long id, Group group, Set<Long> userIds) {
+        Group updated = updateGroup(id, group);
+        return userIds != null ? setGroupMembers(id, userIds) : updated;
+    }
+
     /**
      * Get group by ID
      */
@@ -79,13 +114,33 @@ public class GroupService {
     }
 
     /**
-     * Search groups
+     * Search groups by terms that must each occur in the name. Matches are ranked
+     * by similarity rather than the page's sort.
      */
     public Page<Group> searchGroups(String query, Pageable pageable) {
-        if (query == null || query.isBlank()) {
+        SearchTerms terms = SearchTerms.parse(query);
+        if (terms == null) {
             return groupRepository.findAll(pageable);
         }
-        return groupRepository.findByNameContainingIgnoreCase(query, pageable);
+        return groupRepository.search(terms.query(), terms.primary(), terms.patterns(),
+            PageRequest.of(pageable.getPageNumber(), pageable.getPageSize()));
+    }
+
+    /**
+     * One keyset page of all groups, by name
+     *
+     * @param cursor nextCursor of the previous page, or blank for the first page
+     * @param total  whether to count the groups as well; skipping the count saves a full scan
+     */
+    public CursorPage<Group> listGroupsByName(String cursor, int size, boolean total) {
+        int pageSize = Math.max(1, Math.min(maxPageSize, size));
+        Pageable limit = PageRequest.of(0, pageSize + 1);
+        SeekCursor after = SeekCursor.decode(cursor);
+        List<Group> groups = after == null
+            ? groupRepository.findOrderedByName(limit)
+            : groupRepository.findAfterName(after.value(), limit);
+        return SeekCursor.page(groups, pageSize, group -> new SeekCursor(group.getName(), group.getId()),
+            total ? groupRepository.count() : null);
     }
 
     /**
@@ -94,6 +149,7 @@ public class GroupService {
     @Transactional
     public void deleteGroup(Long id) {
         Group group = getGroupById(id);
+        membershipsChanging(userRepository.findLoginNamesByGroupId(id));
         groupRepository.delete(group);
     }
 
@@ -103,6 +159,7 @@ public class GroupService {
     @Transactional
     public Group addUsersToGroup(Long groupId, Set<Long> userIds) {
         Group group = getGroupById(groupId);
+        membershipsChanging(userRepository.findLoginNamesByIds(userIds));
 
         List<User> users = userRepository.findAllById(userIds);
         for (User user : users) {
@@ -119,6 +176,7 @@ public class GroupService {
     @Transactional
     public Group removeUsersFromGroup(Long groupId, Set<Long> userIds) {
         Group group = getGroupById(groupId);
+        membershipsChanging(userRepository.findLoginNamesByIds(userIds));
 
         List<User> users = userRepository.findAllById(userIds);
         for (User user : users) {
@@ -135,6 +193,9 @@ public class GroupService {
     @Transactional
     public Group setGroupMembers(Long groupId, Set<Long> userIds) {
         Group group = getGroupById(groupId);
+        Set<String> affected = new HashSet<>(userRepository.findLoginNamesByGroupId(groupId));
+        affected.addAll(userRepository.findLoginNamesByIds(userIds));
+        membershipsChanging(affected);
 
         // Remove all existing users
         for (User user : group.getUsers()) {
@@ -149,9 +210,25 @@ public class GroupService {
             userRepository.save(user);
         }
 
+        // Keep the group's side in step, as the group is returned from this persistence context
+        group.getUsers().clear();
+        group.getUsers().addAll(users);
+
         return groupRepository.findById(groupId).orElse(group);
     }
 
+    /**
+     * Lock the users whose memberships are edited by hand, before their groups are
+     * loaded, so a provisioning chunk applying memberships to them cannot interleave.
+     * Their delta fingerprints are forgotten too: fingerprints cover a row's groups,
+     * so a delta import would otherwise take the row for unchanged and never restore
+     * the memberships it delivers.
+     */
+    private void membershipsChanging(Collection<String> loginNames) {
+        userWriteLocks.lock(loginNames);
+        fingerprintRepository.deleteByLoginNames(loginNames);
+    }
+
     /**
      * Convert Group to ScimGroup
      */
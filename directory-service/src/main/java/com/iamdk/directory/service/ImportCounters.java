@@ -0,0 +1,77 @@
+package com.iamdk.directory.service;
+
+import com.iamdk.directory.entity.ProvisioningJob;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Import Counters
+ * Thread-safe job counters shared by concurrent import workers and
+ * merged into the {@link ProvisioningJob} when progress is flushed
+ */
+public class ImportCounters {
+
+    private final AtomicInteger processed = new AtomicInteger();
+    private final AtomicInteger created = new AtomicInteger();
+    private final AtomicInteger updated = new AtomicInteger();
+    private final AtomicInteger unchanged = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicLong bytesDone = new AtomicLong();
+
+    /**
+     * Counters continuing from the totals a job already committed, for resumed jobs
+     */
+    public static ImportCounters startingFrom(ProvisioningJob job) {
+        ImportCounters counters = new ImportCounters();
+        counters.processed.set(job.getTotalProcessed());
+        counters.created.set(job.getCreatedCount());
+        counters.updated.set(job.getUpdatedCount());
+        counters.unchanged.set(job.getUnchangedCount());
+        counters.failed.set(job.getFailedCount());
+        return counters;
+    }
+
+    public void rowFailed() {
+        processed.incrementAndGet();
+        failed.incrementAndGet();
+    }
+
+    public void chunkWritten(int rows, ProvisioningBatchWriter.ChunkResult result) {
+        processed.addAndGet(rows);
+        created.addAndGet(result.created());
+        updated.addAndGet(result.updated());
+        unchanged.addAndGet(result.unchanged());
+        failed.addAndGet(result.failed());
+    }
+
+    /**
+     * Add the row counts of other counters to these
+     */
+    public void add(ImportCounters other) {
+        processed.addAndGet(other.processed.get());
+        created.addAndGet(other.created.get());
+        updated.addAndGet(other.updated.get());
+        unchanged.addAndGet(other.unchanged.get());
+        failed.addAndGet(other.failed.get());
+    }
+
+    public void bytesDone(long bytes) {
+        bytesDone.addAndGet(bytes);
+    }
+
+    public double fractionDone(long totalBytes) {
+        return totalBytes > 0 ? (double) bytesDone.get() / totalBytes : 0;
+    }
+
+    /**
+     * Copy the current totals onto the job
+     */
+    public void applyTo(ProvisioningJob job) {
+        job.setTotalProcessed(processed.get());
+        job.setCreatedCount(created.get());
+        job.setUpdatedCount(updated.get());
+        job.setUnchangedCount(unchanged.get());
+        job.setFailedCount(failed.get());
+    }
+}
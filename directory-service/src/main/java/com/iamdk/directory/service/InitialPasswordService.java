@@ -0,0 +1,179 @@
+package com.iamdk.directory.service;
+
+import com.iamdk.directory.repository.UserBatchRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Initial Password Service
+ * Assigns the configured initial password to users that have no credential.
+ * Users are created without one, which is also what marks them for hashing:
+ * sweepers on a dedicated executor find them in the users table and hash their
+ * passwords in batches, so BCrypt cost stays off the provisioning and SCIM
+ * request paths, and users whose hashing was cut short by a restart are picked
+ * up by the next scheduled sweep. When no initial password is configured, new
+ * users simply keep the "credential not set" state.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class InitialPasswordService {
+
+    private final PasswordEncoder passwordEncoder;
+    private final UserBatchRepository userBatchRepository;
+    private final ThreadPoolTaskExecutor passwordHashingExecutor;
+    private final UserIdentityCache identityCache;
+
+    @Value("${provisioning.initial-password:}")
+    private String initialPassword;
+
+    @Value("${provisioning.hashing.batch-size:100}")
+    private int batchSize;
+
+    // One sweeper per hashing thread, each owning the users whose id falls in its share
+    private volatile Sweeper[] sweepers;
+
+    public boolean isEnabled() {
+        return initialPassword != null && !initialPassword.isBlank();
+    }
+
+    /**
+     * Have the initial password assigned to users that were just created without a
+     * credential. Only wakes the sweepers, which find the users themselves; inside a
+     * transaction they are woken after commit.
+     */
+    public void assign(Collection<String> loginNames) {
+        if (!isEnabled() || loginNames.isEmpty()) {
+            return;
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    sweep();
+                }
+            });
+        } else {
+            sweep();
+        }
+    }
+
+    /**
+     * Start every sweeper that is not running, and have running ones look again once
+     * they are done. Also runs on a schedule for users left without a credential by a
+     * restart.
+     */
+    @Scheduled(fixedDelayString = "${provisioning.hashing.sweep-interval-ms:60000}")
+    public void sweep() {
+        if (!isEnabled()) {
+            return;
+        }
+        for (Sweeper sweeper : sweepers()) {
+            sweeper.request();
+        }
+    }
+
+    private Sweeper[] sweepers() {
+        Sweeper[] current = sweepers;
+        if (current == null) {
+            synchronized (this) {
+                if (sweepers == null) {
+                    int shares = Math.max(1, passwordHashingExecutor.getMaxPoolSize());
+                    Sweeper[] created = new Sweeper[shares];
+                    for (int share = 0; share < shares; share++) {
+                        created[share] = new Sweeper(shares, share);
+                    }
+                    sweepers = created;
+                }
+                current = sweepers;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Hashes the passwords of the users in one share of the ids, a batch at a time
+     */
+    private class Sweeper {
+
+        private final int shares;
+        private final int share;
+        private final AtomicBoolean running = new AtomicBoolean();
+        private final AtomicBoolean requested = new AtomicBoolean();
+
+        Sweeper(int shares, int share) {
+            this.shares = shares;
+            this.share = share;
+        }
+
+        void request() {
+            requested.set(true);
+            if (!running.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                passwordHashingExecutor.execute(this::run);
+            } catch (TaskRejectedException e) {
+                // Shutting down; the next start sweeps these users
+                running.set(false);
+            }
+        }
+
+        private void run() {
+            try {
+                while (requested.getAndSet(false)) {
+                    sweepShare();
+                }
+            } finally {
+                running.set(false);
+            }
+            // A request made after the last check found this sweeper still running
+            if (requested.get()) {
+                request();
+            }
+        }
+
+        private void sweepShare() {
+            long afterId = 0;
+            while (true) {
+                Map<Long, String> users;
+                try {
+                    users = userBatchRepository.findWithoutCredential(afterId, shares, share, batchSize);
+                } catch (DataAccessException e) {
+                    log.warn("Failed to find users without a credential: {}", e.getMessage());
+                    return;
+                }
+                if (users.isEmpty()) {
+                    return;
+                }
+
+                Map<String, String> hashes = new LinkedHashMap<>();
+                for (Map.Entry<Long, String> user : users.entrySet()) {
+                    hashes.put(user.getValue(), passwordEncoder.encode(initialPassword));
+                    afterId = user.getKey();
+                }
+                try {
+                    userBatchRepository.setInitialPasswords(hashes);
+                    identityCache.invalidate(hashes.keySet());
+                } catch (DataAccessException e) {
+                    log.warn("Failed to set initial passwords for {} users: {}", hashes.size(), e.getMessage());
+                }
+            }
+        }
+    }
+}
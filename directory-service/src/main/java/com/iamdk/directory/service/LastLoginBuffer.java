@@ -0,0 +1,88 @@
+package com.iamdk.directory.service;
+
+import com.iamdk.directory.repository.UserLoginRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Last Login Buffer
+ * Collects login times in memory and writes them in batches, so a burst of logins
+ * costs one batched update per flush rather than a row update per login. The map is
+ * split into stripes with a lock each, so concurrent logins rarely wait for one
+ * another, and a flush swaps each stripe for an empty one. Times not flushed yet
+ * are lost if the node stops abruptly, which a last login time can afford.
+ */
+@Slf4j
+@Component
+public class LastLoginBuffer {
+
+    private final UserLoginRepository loginRepository;
+    private final Stripe[] stripes;
+
+    @Value("${users.last-login.batch-size:1000}")
+    private int batchSize;
+
+    public LastLoginBuffer(UserLoginRepository loginRepository,
+                           @Value("${users.last-login.stripes:16}") int stripeCount) {
+        this.loginRepository = loginRepository;
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Remember a login; of several logins of a user before a flush, the latest is written
+     */
+    public void record(String loginName, LocalDateTime time) {
+        Stripe stripe = stripes[Math.floorMod(loginName.hashCode(), stripes.length)];
+        synchronized (stripe) {
+            stripe.times.merge(loginName, time, (a, b) -> a.isAfter(b) ? a : b);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${users.last-login.flush-interval-ms:5000}")
+    @PreDestroy
+    public void flush() {
+        Map<String, LocalDateTime> pending = new HashMap<>();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                if (stripe.times.isEmpty()) {
+                    continue;
+                }
+                pending.putAll(stripe.times);
+                stripe.times = new HashMap<>();
+            }
+        }
+
+        Iterator<Map.Entry<String, LocalDateTime>> entries = pending.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map<String, LocalDateTime> batch = new LinkedHashMap<>();
+            while (entries.hasNext() && batch.size() < batchSize) {
+                Map.Entry<String, LocalDateTime> entry = entries.next();
+                batch.put(entry.getKey(), entry.getValue());
+            }
+            try {
+                loginRepository.updateLastLogins(batch);
+            } catch (DataAccessException e) {
+                // Keep them for the next flush
+                log.warn("Failed to write last login times of {} users: {}", batch.size(), e.getMessage());
+                batch.forEach(this::record);
+            }
+        }
+    }
+
+    private static class Stripe {
+        private Map<String, LocalDateTime> times = new HashMap<>();
+    }
+}
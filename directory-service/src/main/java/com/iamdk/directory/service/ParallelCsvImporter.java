@@ -0,0 +1,424 @@
+package com.iamdk.directory.service;
+
+import com.iamdk.directory.dto.provisioning.ProvisioningRow;
+import com.iamdk.directory.dto.provisioning.RowError;
+import com.iamdk.directory.entity.ProvisioningJob;
+import com.iamdk.directory.repository.UserWriteLocks;
+import com.iamdk.directory.service.source.ProvisioningSource;
+import com.iamdk.directory.service.source.SourceRecord;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Parallel CSV Importer
+ * Splits a spooled CSV file into record-aligned byte ranges that are parsed and
+ * validated concurrently. Valid rows are routed to writer lanes by a hash of
+ * loginName; each lane consumes ranges in file order, so rows for the same user
+ * are always written by the same lane in the order they appear in the file.
+ * A lane ends its chunk at the end of each range. Once every lane has committed
+ * all its rows of a further range, the next chunk commits a checkpoint there,
+ * together with the counters of exactly the rows up to it, so a resumed import
+ * neither skips an uncommitted row nor counts a row twice.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ParallelCsvImporter {
+
+    private static final long MIN_RANGE_SIZE = 64 * 1024;
+
+    private final ProvisioningBatchWriter batchWriter;
+    private final UserWriteLocks userWriteLocks;
+
+    @Value("${provisioning.batch.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${provisioning.parallel.range-size-bytes:8388608}")
+    private long rangeSizeBytes;
+
+    @Value("${provisioning.csv.tokenizer:true}")
+    private boolean tokenizer;
+
+    /**
+     * Receives rejected rows, checkpoints and chunk notifications from the worker threads
+     */
+    public interface Listener {
+
+        /**
+         * Called inside the transaction of a chunk once every row up to lastRow, which
+         * ends at the given byte offset, is committed or committed by that transaction
+         *
+         * @param committed the job counters of the rows up to lastRow
+         */
+        void checkpoint(long offset, long lastRow, ImportCounters committed);
+
+        /**
+         * Called after each committed chunk
+         */
+        void chunkWritten();
+
+        /**
+         * Called for each row rejected by validation or by the database
+         */
+        void rowFailed(RowError error);
+
+        /**
+         * Called before a chunk is written; may block to throttle the import, or throw
+         * to stop it. Each call that returns is followed by {@link #afterWrite()}.
+         */
+        default void beforeWrite(int rows) {
+        }
+
+        default void afterWrite() {
+        }
+    }
+
+    /**
+     * Import a CSV file with the given number of parse workers and writer lanes.
+     * At most two ranges per worker are held in memory at a time.
+     *
+     * @param startOffset record boundary to start from, or 0 to start after the header
+     * @param firstRow    row number of the record at startOffset
+     * @param delta       delta provisioning state, or null to write every row
+     * @param groups      the job's group cache
+     * @param mappings    the job's column mappings, compiled against the file's header
+     */
+    public void importFile(Path file, long startOffset, long firstRow, int workers, ImportCounters counters,
+                           DeltaTracker delta, GroupCache groups, Map<String, String> mappings,
+                           Listener listener) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long headerEnd = CsvRecordRanges.headerEnd(channel);
+            String[] header = CsvRecordRanges.header(channel, headerEnd);
+            ProvisioningMappingPlan plan = ProvisioningMappingPlan.compile(mappings, ProvisioningJob.SourceType.CSV, header);
+            CsvRecordRanges.Format format = CsvRecordRanges.Format.of(channel, headerEnd, header, plan, tokenizer);
+            long start = Math.max(startOffset, headerEnd);
+            long targetSize = Math.max(MIN_RANGE_SIZE, Math.min(rangeSizeBytes, (channel.size() - start) / workers + 1));
+            List<CsvRecordRanges.Range> ranges = CsvRecordRanges.split(channel, start, firstRow, targetSize, Long.MAX_VALUE);
+            counters.bytesDone(start);
+            log.debug("Importing {} from offset {} in {} ranges with {} workers", file, start, ranges.size(), workers);
+
+            List<CompletableFuture<ParsedRange>> parsed = new ArrayList<>(ranges.size());
+            for (int i = 0; i < ranges.size(); i++) {
+                parsed.add(new CompletableFuture<>());
+            }
+
+            Semaphore inFlight = new Semaphore(workers * 2);
+            AtomicBoolean aborted = new AtomicBoolean();
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            // The first failure stops every lane: lanes waiting for a range are woken by
+            // failing it, and the others stop before writing their next chunk
+            Consumer<Throwable> abort = e -> {
+                failure.compareAndSet(null, e);
+                aborted.set(true);
+                parsed.forEach(f -> f.completeExceptionally(new CancellationException("Import aborted")));
+            };
+            Watermark watermark = new Watermark(workers, ranges.size(), counters);
+            ExecutorService parsers = Executors.newFixedThreadPool(workers, new CustomizableThreadFactory("provisioning-parse-"));
+            ExecutorService lanes = Executors.newFixedThreadPool(workers, new CustomizableThreadFactory("provisioning-lane-"));
+
+            try {
+                List<CompletableFuture<Void>> laneFutures = new ArrayList<>(workers);
+                for (int lane = 0; lane < workers; lane++) {
+                    int laneIndex = lane;
+                    CompletableFuture<Void> future = CompletableFuture.runAsync(
+                        () -> runLane(laneIndex, ranges, parsed, inFlight, aborted, watermark, counters, delta, groups,
+                            listener), lanes);
+                    future.whenComplete((v, e) -> {
+                        if (e != null) {
+                            abort.accept(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                        }
+                    });
+                    laneFutures.add(future);
+                }
+
+                // Permits are taken in file order, so the range every lane is waiting for is always scheduled
+                for (int i = 0; i < ranges.size() && acquire(inFlight, aborted); i++) {
+                    int index = i;
+                    CompletableFuture<ParsedRange> target = parsed.get(i);
+                    parsers.execute(() -> {
+                        try {
+                            target.complete(parseRange(channel, ranges.get(index), index, format, plan, workers,
+                                counters, watermark, delta, listener));
+                        } catch (Throwable e) {
+                            target.completeExceptionally(e);
+                            abort.accept(e);
+                        }
+                    });
+                }
+
+                if (aborted.get()) {
+                    parsed.forEach(f -> f.completeExceptionally(new CancellationException("Import aborted")));
+                }
+                CompletableFuture.allOf(laneFutures.toArray(new CompletableFuture<?>[0])).join();
+
+            } catch (CompletionException e) {
+                // Report the failure that stopped the import, not a lane it aborted
+                Throwable cause = failure.get() != null ? failure.get() : e.getCause() != null ? e.getCause() : e;
+                throw new IllegalStateException("Parallel import failed: " + cause.getMessage(), cause);
+            } finally {
+                parsers.shutdownNow();
+                lanes.shutdownNow();
+            }
+        }
+    }
+
+    private boolean acquire(Semaphore inFlight, AtomicBoolean aborted) {
+        try {
+            while (!inFlight.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+                if (aborted.get()) {
+                    return false;
+                }
+            }
+            return !aborted.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            aborted.set(true);
+            return false;
+        }
+    }
+
+    private void runLane(int lane, List<CsvRecordRanges.Range> ranges, List<CompletableFuture<ParsedRange>> parsed,
+                         Semaphore inFlight, AtomicBoolean aborted, Watermark watermark, ImportCounters counters,
+                         DeltaTracker delta, GroupCache groups, Listener listener) {
+        List<ProvisioningRow> pending = new ArrayList<>(chunkSize);
+
+        for (int index = 0; index < parsed.size(); index++) {
+            ParsedRange range = parsed.get(index).join();
+            List<ProvisioningRow> rows = range.take(lane);
+            for (int i = 0; i < rows.size(); i++) {
+                pending.add(rows.get(i));
+                if (pending.size() >= chunkSize && i < rows.size() - 1) {
+                    stopIfAborted(aborted);
+                    // Ranges before this one are complete for the lane
+                    write(lane, index - 1, index, pending, ranges, watermark, counters, delta, groups, listener);
+                }
+            }
+            // A chunk never spans ranges, so its counts belong to the range it was read from
+            if (!pending.isEmpty()) {
+                stopIfAborted(aborted);
+                write(lane, index, index, pending, ranges, watermark, counters, delta, groups, listener);
+            }
+            watermark.laneCompleted(lane, index);
+            if (range.laneDone()) {
+                counters.bytesDone(range.length());
+                inFlight.release();
+            }
+        }
+    }
+
+    /**
+     * Stop a lane once another lane or a parser failed, so it writes no rows for a
+     * job that has already failed
+     */
+    private static void stopIfAborted(AtomicBoolean aborted) {
+        if (aborted.get()) {
+            throw new CancellationException("Import aborted");
+        }
+    }
+
+    /**
+     * Write a chunk of the rows of one range
+     *
+     * @param completedRange last range whose rows of the lane are all committed once
+     *                       this chunk is
+     * @param chunkRange     range the rows were read from
+     */
+    private void write(int lane, int completedRange, int chunkRange, List<ProvisioningRow> rows,
+                       List<CsvRecordRanges.Range> ranges, Watermark watermark, ImportCounters counters,
+                       DeltaTracker delta, GroupCache groups, Listener listener) {
+        listener.beforeWrite(rows.size());
+        ProvisioningBatchWriter.ChunkResult result;
+        try {
+            result = batchWriter.writeChunk(rows, delta, groups, written -> {
+                Checkpoint checkpoint = watermark.checkpoint(lane, completedRange, chunkRange, rows.size(), written);
+                if (checkpoint != null) {
+                    CsvRecordRanges.Range range = ranges.get(checkpoint.range());
+                    listener.checkpoint(range.end(), range.lastRow(), checkpoint.committed());
+                }
+            });
+        } finally {
+            listener.afterWrite();
+        }
+        // Only now is the chunk known to be committed
+        watermark.chunkCommitted(lane, completedRange, chunkRange, rows.size(), result);
+        counters.chunkWritten(rows.size(), result);
+        result.errors().forEach(listener::rowFailed);
+        rows.clear();
+        listener.chunkWritten();
+    }
+
+    private ParsedRange parseRange(FileChannel channel, CsvRecordRanges.Range range, int rangeIndex,
+                                   CsvRecordRanges.Format format, ProvisioningMappingPlan plan, int lanes,
+                                   ImportCounters counters, Watermark watermark, DeltaTracker delta,
+                                   Listener listener) throws IOException {
+        ParsedRange parsed = new ParsedRange(lanes, range.length());
+
+        try (ProvisioningSource records = CsvRecordRanges.records(channel, range, format)) {
+            SourceRecord source;
+            while ((source = records.next()) != null) {
+                ProvisioningRowMapper.Result result = plan.map(source);
+                if (result.isValid()) {
+                    // Lanes own whole lock stripes, so they never wait on each other's locks
+                    parsed.add(userWriteLocks.stripeOf(result.row().loginName()) % lanes, result.row());
+                } else {
+                    counters.rowFailed();
+                    watermark.rowFailed(rangeIndex);
+                    listener.rowFailed(result.error());
+                    if (delta != null) {
+                        delta.seen(plan.loginNameOf(source));
+                    }
+                }
+            }
+        }
+        return parsed;
+    }
+
+    /**
+     * Rows of one range bucketed by lane. The range is released once every lane has taken its rows.
+     */
+    private static class ParsedRange {
+
+        private final List<List<ProvisioningRow>> buckets;
+        private final AtomicInteger remainingLanes;
+        private final long length;
+
+        ParsedRange(int lanes, long length) {
+            this.buckets = new ArrayList<>(lanes);
+            for (int i = 0; i < lanes; i++) {
+                buckets.add(new ArrayList<>());
+            }
+            this.remainingLanes = new AtomicInteger(lanes);
+            this.length = length;
+        }
+
+        void add(int lane, ProvisioningRow row) {
+            buckets.get(lane).add(row);
+        }
+
+        List<ProvisioningRow> take(int lane) {
+            List<ProvisioningRow> rows = buckets.get(lane);
+            buckets.set(lane, List.of());
+            return rows;
+        }
+
+        boolean laneDone() {
+            return remainingLanes.decrementAndGet() == 0;
+        }
+
+        long length() {
+            return length;
+        }
+    }
+
+    /**
+     * A range to checkpoint and the job counters of the rows up to its end
+     */
+    private record Checkpoint(int range, ImportCounters committed) {}
+
+    /**
+     * Tracks, per lane, the last range whose rows the lane has all committed, and
+     * the counts of the committed rows of each range. The import is committed up to
+     * the lowest of the lanes' ranges.
+     */
+    private static class Watermark {
+
+        private final int[] completed;
+        private final ImportCounters base;
+        private final ImportCounters[] rangeCounters;
+        private int checkpointed = -1;
+
+        /**
+         * @param base counters of the rows before the first range
+         */
+        Watermark(int lanes, int ranges, ImportCounters base) {
+            this.completed = new int[lanes];
+            Arrays.fill(completed, -1);
+            this.base = new ImportCounters();
+            this.base.add(base);
+            this.rangeCounters = new ImportCounters[ranges];
+            for (int i = 0; i < ranges; i++) {
+                rangeCounters[i] = new ImportCounters();
+            }
+        }
+
+        /**
+         * Count a row of a range that failed validation. Its range is parsed before any
+         * lane completes it, so the count is in place before the range can be checkpointed.
+         */
+        void rowFailed(int range) {
+            rangeCounters[range].rowFailed();
+        }
+
+        /**
+         * Record that a lane committed every row up to the given range
+         */
+        synchronized void laneCompleted(int lane, int range) {
+            completed[lane] = Math.max(completed[lane], range);
+        }
+
+        /**
+         * Record a committed chunk of a lane
+         */
+        synchronized void chunkCommitted(int lane, int completedRange, int chunkRange, int rows,
+                                         ProvisioningBatchWriter.ChunkResult result) {
+            rangeCounters[chunkRange].chunkWritten(rows, result);
+            laneCompleted(lane, completedRange);
+        }
+
+        /**
+         * The checkpoint a chunk's transaction can commit. Other lanes only count
+         * with chunks they committed, and the lane itself with this chunk, so every
+         * row up to the checkpoint is committed once the transaction is.
+         *
+         * @return the checkpoint, or null if nothing is committed yet. The last
+         *         checkpoint is returned again when the range did not advance, since the
+         *         transaction that carried it may have been rolled back and retried.
+         */
+        synchronized Checkpoint checkpoint(int lane, int completedRange, int chunkRange, int rows,
+                                           ProvisioningBatchWriter.ChunkResult result) {
+            int low = completedRange;
+            for (int other = 0; other < completed.length; other++) {
+                if (other != lane) {
+                    low = Math.min(low, completed[other]);
+                }
+            }
+            if (low < 0 || low < checkpointed) {
+                return null;
+            }
+            checkpointed = low;
+
+            ImportCounters committed = new ImportCounters();
+            committed.add(base);
+            for (int range = 0; range <= low; range++) {
+                committed.add(rangeCounters[range]);
+            }
+            if (chunkRange <= low) {
+                committed.chunkWritten(rows, result);
+            }
+            return new Checkpoint(low, committed);
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package com.iamdk.directory.service;
+
+import com.iamdk.directory.dto.provisioning.ProvisioningRow;
+import com.iamdk.directory.dto.provisioning.RowError;
+import com.iamdk.directory.repository.GroupBatchRepository;
+import com.iamdk.directory.repository.ProvisioningFingerprintRepository;
+import com.iamdk.directory.repository.UserBatchRepository;
+import com.iamdk.directory.repository.UserRepository;
+import com.iamdk.directory.repository.UserWriteLocks;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Provisioning Batch Writer
+ * Writes a chunk of provisioning rows in one transaction using
+ * one lookup query and one JDBC batch upsert, plus batched inserts and
+ * deletes on user_groups when the rows carry group memberships
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ProvisioningBatchWriter {
+
+    private final UserRepository userRepository;
+    private final UserBatchRepository userBatchRepository;
+    private final ProvisioningFingerprintRepository fingerprintRepository;
+    private final GroupBatchRepository groupBatchRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final InitialPasswordService initialPasswordService;
+    private final UserWriteLocks userWriteLocks;
+    private final UserIdentityCache identityCache;
+    private final UserSuggestIndex suggestIndex;
+
+    @Value("${provisioning.batch.max-retries:3}")
+    private int maxRetries;
+
+    @Value("${provisioning.batch.retry-backoff-ms:100}")
+    private long retryBackoffMs;
+
+    /**
+     * Write a chunk and commit it
+     */
+    public ChunkResult writeChunk(List<ProvisioningRow> rows) {
+        return writeChunk(rows, null);
+    }
+
+    /**
+     * Write a chunk and commit it.
+     * With a delta tracker, rows whose fingerprint matches the one stored for the
+     * source are skipped without any write.
+     * If the batch is rejected (e.g. an email unique constraint violation) the chunk
+     * is retried row by row so that only the offending rows are reported as failed.
+     */
+    public ChunkResult writeChunk(List<ProvisioningRow> rows, DeltaTracker delta) {
+        return writeChunk(rows, delta, null, null);
+    }
+
+    /**
+     * Write a chunk and commit it together with whatever inTransaction writes,
+     * typically the job checkpoint, so both are committed or neither is.
+     * With a group cache, rows that carry groups have the user's memberships set to
+     * exactly those groups; rows naming a group that does not exist are rejected.
+     * A batch that loses a lock conflict with another writer is retried as a whole
+     * before it is split into rows. The rows of a split batch are written in
+     * savepoints of one transaction, which commits inTransaction with them.
+     *
+     * @param groups        the job's group cache, or null to ignore groups
+     * @param inTransaction called with the chunk result before commit, or null
+     */
+    public ChunkResult writeChunk(List<ProvisioningRow> rows, DeltaTracker delta, GroupCache groups,
+                                  Consumer<ChunkResult> inTransaction) {
+        if (delta != null) {
+            rows.forEach(row -> delta.seen(row.loginName()));
+        }
+        if (groups != null) {
+            groups.resolve(rows);
+        }
+
+        ChunkResult result;
+        try {
+            result = writeBatchWithRetry(rows, delta, groups, inTransaction);
+        } catch (DataAccessException e) {
+            log.warn("Batch upsert of {} rows failed, retrying row by row: {}", rows.size(), e.getMessage());
+            result = transactionTemplate.execute(status -> {
+                ChunkResult written = writeRowByRow(rows, delta, groups);
+                if (inTransaction != null) {
+                    inTransaction.accept(written);
+                }
+                return written;
+            });
+        }
+        initialPasswordService.assign(result.createdLoginNames());
+        return result;
+    }
+
+    /**
+     * Deactivate users the source provisioned earlier but did not deliver in this run,
+     * and forget their fingerprints so they are written again if they reappear
+     *
+     * @return number of users deactivated
+     */
+    public int deactivateAbsent(DeltaTracker delta) {
+        List<String> absent = new ArrayList<>();
+        Integer deactivated = transactionTemplate.execute(status -> {
+            fingerprintRepository.forEachLoginName(delta.getSourceKey(), loginName -> {
+                if (!delta.wasSeen(loginName)) {
+                    absent.add(loginName);
+                }
+            });
+            int count = userBatchRepository.deactivateUsers(absent);
+            identityCache.invalidate(absent);
+            suggestIndex.update(absent);
+            fingerprintRepository.deleteFingerprints(delta.getSourceKey(), absent);
+            return count;
+        });
+        log.info("Delta provisioning for source '{}': {} users absent, {} deactivated",
+            delta.getSourceKey(), absent.size(), deactivated);
+        return deactivated != null ? deactivated : 0;
+    }
+
+    /**
+     * Write the batch in one transaction, retrying it after deadlocks, lock timeouts
+     * and serialization failures, which another transaction caused and which a
+     * later attempt usually does not meet again
+     */
+    private ChunkResult writeBatchWithRetry(List<ProvisioningRow> rows, DeltaTracker delta, GroupCache groups,
+                                            Consumer<ChunkResult> inTransaction) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> {
+                    ChunkResult written = writeBatch(rows, delta, groups);
+                    if (inTransaction != null) {
+                        inTransaction.accept(written);
+                    }
+                    return written;
+                });
+            } catch (TransientDataAccessException e) {
+                if (attempt > maxRetries) {
+                    throw e;
+                }
+                log.debug("Batch of {} rows conflicted with another writer (attempt {}): {}",
+                    rows.size(), attempt, e.getMessage());
+                backOff(attempt);
+            }
+        }
+    }
+
+    private void backOff(int attempt) {
+        try {
+            Thread.sleep(retryBackoffMs * attempt);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while retrying a batch", e);
+        }
+    }
+
+    private ChunkResult writeBatch(List<ProvisioningRow> rows, DeltaTracker delta, GroupCache groups) {
+        List<RowError> errors = new ArrayList<>();
+        if (groups != null) {
+            rows = rejectUnknownGroups(rows, groups, errors);
+        }
+
+        // A later row for the same loginName wins, as it would when applied sequentially
+        Map<String, ProvisioningRow> latest = new LinkedHashMap<>();
+        for (ProvisioningRow row : rows) {
+            latest.put(row.loginName(), row);
+        }
+        // Other jobs and SCIM edits of these users wait until this chunk commits
+        userWriteLocks.lock(latest.keySet());
+        identityCache.invalidate(latest.keySet());
+
+        Map<String, Long> changed = new LinkedHashMap<>();
+        if (delta != null) {
+            Map<String, Long> stored = fingerprintRepository.findFingerprints(delta.getSourceKey(), latest.keySet());
+            for (ProvisioningRow row : latest.values()) {
+                long fingerprint = row.fingerprint();
+                if (!Long.valueOf(fingerprint).equals(stored.get(row.loginName()))) {
+                    changed.put(row.loginName(), fingerprint);
+                }
+            }
+            latest.keySet().retainAll(changed.keySet());
+        }
+
+        Set<String> existing = latest.isEmpty() ? Set.of() : userRepository.findExistingLoginNames(latest.keySet());
+        userBatchRepository.upsertUsers(latest.values());
+        if (groups != null) {
+            applyMemberships(latest.values(), groups);
+        }
+        if (delta != null) {
+            fingerprintRepository.upsertFingerprints(delta.getSourceKey(), changed);
+        }
+        suggestIndex.update(latest.keySet());
+
+        List<String> created = new ArrayList<>();
+        int updated = 0;
+        int unchanged = 0;
+        Set<String> seen = new HashSet<>();
+        for (ProvisioningRow row : rows) {
+            boolean first = seen.add(row.loginName());
+            if (!latest.containsKey(row.loginName())) {
+                unchanged++;
+            } else if (first && !existing.contains(row.loginName())) {
+                created.add(row.loginName());
+            } else {
+                updated++;
+            }
+        }
+        return new ChunkResult(created.size(), updated, unchanged, errors, created);
+    }
+
+    private List<ProvisioningRow> rejectUnknownGroups(List<ProvisioningRow> rows, GroupCache groups,
+                                                      List<RowError> errors) {
+        List<ProvisioningRow> accepted = new ArrayList<>(rows.size());
+        for (ProvisioningRow row : rows) {
+            String unknown = groups.unknownGroupOf(row);
+            if (unknown == null) {
+                accepted.add(row);
+            } else {
+                errors.add(new RowError(row.rowNumber(), "groups", "unknown group '" + unknown + "'"));
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * Set the memberships of every row that carries groups to exactly those groups,
+     * with one query for the user ids, one for their current memberships and a batch
+     * each of inserts and deletes on user_groups
+     */
+    private void applyMemberships(Collection<ProvisioningRow> rows, GroupCache groups) {
+        List<ProvisioningRow> withGroups = rows.stream().filter(row -> row.groups() != null).toList();
+        if (withGroups.isEmpty()) {
+            return;
+        }
+
+        Map<String, Long> userIds = userBatchRepository.findUserIds(
+            withGroups.stream().map(ProvisioningRow::loginName).toList());
+        Map<Long, Set<Long>> current = groupBatchRepository.findMemberships(userIds.values());
+
+        List<long[]> added = new ArrayList<>();
+        List<long[]> removed = new ArrayList<>();
+        for (ProvisioningRow row : withGroups) {
+            long userId = userIds.get(row.loginName());
+            Set<Long> wanted = groups.idsOf(row);
+            Set<Long> existing = current.getOrDefault(userId, Set.of());
+            for (Long groupId : wanted) {
+                if (!existing.contains(groupId)) {
+                    added.add(new long[]{userId, groupId});
+                }
+            }
+            for (Long groupId : existing) {
+                if (!wanted.contains(groupId)) {
+                    removed.add(new long[]{userId, groupId});
+                }
+            }
+        }
+        groupBatchRepository.removeMemberships(removed);
+        groupBatchRepository.addMemberships(added);
+    }
+
+    /**
+     * Write each row in a savepoint of the current transaction, so a row the database
+     * rejects is rolled back alone and the others commit with the rest of it
+     */
+    private ChunkResult writeRowByRow(List<ProvisioningRow> rows, DeltaTracker delta, GroupCache groups) {
+        TransactionTemplate savepoint = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        savepoint.setPropagationBehavior(TransactionDefinition.PROPAGATION_NESTED);
+        List<String> created = new ArrayList<>();
+        int updated = 0;
+        int unchanged = 0;
+        List<RowError> errors = new ArrayList<>();
+        for (ProvisioningRow row : rows) {
+            try {
+                ChunkResult result = savepoint.execute(status -> writeBatch(List.of(row), delta, groups));
+                created.addAll(result.createdLoginNames());
+                updated += result.updated();
+                unchanged += result.unchanged();
+                errors.addAll(result.errors());
+            } catch (DataAccessException e) {
+                errors.add(new RowError(row.rowNumber(), null, e.getMostSpecificCause().getMessage()));
+            }
+        }
+        return new ChunkResult(created.size(), updated, unchanged, errors, created);
+    }
+
+    /**
+     * Counters for one written chunk, with the rows the database rejected and
+     * the login names of the users it created
+     */
+    public record ChunkResult(int created, int updated, int unchanged, List<RowError> errors,
+                              List<String> createdLoginNames) {
+
+        public int failed() {
+            return errors.size();
+        }
+    }
+}
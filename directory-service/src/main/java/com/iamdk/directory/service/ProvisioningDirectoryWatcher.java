@@ -0,0 +1,311 @@
+package com.iamdk.directory.service;
+
+import com.iamdk.directory.entity.ProvisioningJob;
+import com.iamdk.directory.entity.ProvisioningWatchedFile;
+import com.iamdk.directory.repository.ProvisioningJobRepository;
+import com.iamdk.directory.repository.ProvisioningWatchedFileRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Provisioning Directory Watcher
+ * Imports CSV, JSON and NDJSON files dropped into a watched directory, on file
+ * events and on an optional cron schedule. In full mode a file is imported once
+ * per version; in tail mode only the complete records appended since the last
+ * import are, so a feed can keep appending to one file.
+ * <p>
+ * Several nodes may watch the same shared directory. A node acts on a file only
+ * while it holds the file's lease in the database, and records the job it started,
+ * so each version or appended range is imported by exactly one job. A failed job
+ * is resumed from its checkpoint rather than started again.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ProvisioningDirectoryWatcher {
+
+    private final ProvisioningService provisioningService;
+    private final ProvisioningJobRepository jobRepository;
+    private final ProvisioningWatchedFileRepository watchedFileRepository;
+    private final ProvisioningJobControls jobControls;
+
+    @Value("${provisioning.watch.directory:}")
+    private String directory;
+
+    @Value("${provisioning.watch.tail:false}")
+    private boolean tail;
+
+    @Value("${provisioning.watch.settle-ms:2000}")
+    private long settleMs;
+
+    @Value("${provisioning.watch.lease-seconds:300}")
+    private long leaseSeconds;
+
+    @Value("${provisioning.watch.source-key:}")
+    private String sourceKey;
+
+    @Value("${provisioning.watch.delta:false}")
+    private boolean delta;
+
+    @Value("${provisioning.watch.workers:1}")
+    private int workers;
+
+    private String nodeId;
+
+    private volatile WatchService watchService;
+
+    /**
+     * Import files dropped while the service was down, then watch for new ones
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() throws IOException {
+        if (directory.isBlank()) {
+            return;
+        }
+        nodeId = jobControls.nodeId();
+        Path dir = Files.createDirectories(Paths.get(directory));
+        watchService = dir.getFileSystem().newWatchService();
+        dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+        Thread thread = new Thread(this::watch, "provisioning-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        log.info("Watching {} for provisioning files ({} mode) as node {}", dir, tail ? "tail" : "full", nodeId);
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    @Scheduled(cron = "${provisioning.watch.cron:-}")
+    public void scheduledScan() {
+        if (watchService != null) {
+            scan();
+        }
+    }
+
+    private void watch() {
+        scan();
+        try {
+            while (true) {
+                drain(watchService.take());
+                // Wait until the directory has been quiet for a while, so files are complete
+                WatchKey key;
+                while ((key = watchService.poll(settleMs, TimeUnit.MILLISECONDS)) != null) {
+                    drain(key);
+                }
+                scan();
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            log.debug("Stopped watching {}", directory);
+        }
+    }
+
+    private static void drain(WatchKey key) {
+        key.pollEvents();
+        key.reset();
+    }
+
+    /**
+     * Import every settled file of the watched directory that has something new
+     */
+    public synchronized void scan() {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(Paths.get(directory))) {
+            long settledBefore = System.currentTimeMillis() - settleMs;
+            files = listing
+                .filter(file -> sourceTypeOf(file) != null && isSettled(file, settledBefore))
+                .sorted()
+                .toList();
+        } catch (IOException e) {
+            log.warn("Failed to list provisioning directory {}: {}", directory, e.getMessage());
+            return;
+        }
+        for (Path file : files) {
+            try {
+                importFile(file);
+            } catch (Exception e) {
+                log.warn("Failed to import watched file {}: {}", file, e.getMessage());
+            }
+        }
+    }
+
+    private void importFile(Path file) throws IOException {
+        String path = file.toAbsolutePath().normalize().toString();
+        Optional<ProvisioningWatchedFile> leased = watchedFileRepository.tryLease(path, nodeId,
+            Duration.ofSeconds(leaseSeconds));
+        if (leased.isEmpty()) {
+            // Another node is looking at it
+            return;
+        }
+        ProvisioningWatchedFile state = leased.get();
+        try {
+            if (!settlePreviousJob(state)) {
+                watchedFileRepository.update(state, nodeId);
+                return;
+            }
+            ProvisioningJob.SourceType type = sourceTypeOf(file);
+            // Milliseconds survive the round trip through the database unchanged
+            LocalDateTime modified = LocalDateTime.ofInstant(
+                Instant.ofEpochMilli(Files.getLastModifiedTime(file).toMillis()), ZoneId.systemDefault());
+            if (tail && type != ProvisioningJob.SourceType.JSON) {
+                submitAppended(file, type, state, modified);
+            } else {
+                submitWhole(file, type, state, modified);
+            }
+            if (!watchedFileRepository.update(state, nodeId)) {
+                log.warn("Lease of {} expired while its job {} was being queued", path, state.getJobId());
+            }
+        } finally {
+            watchedFileRepository.release(path, nodeId);
+        }
+    }
+
+    /**
+     * Account for the job started for the file by an earlier scan
+     *
+     * @return true if no job of the file is pending any more, so a new one may start
+     */
+    private boolean settlePreviousJob(ProvisioningWatchedFile state) {
+        if (state.getJobId() == null) {
+            return true;
+        }
+        ProvisioningJob job = jobRepository.findById(state.getJobId()).orElse(null);
+        ProvisioningJob.JobStatus status = job != null ? job.getStatus() : null;
+        if (status == ProvisioningJob.JobStatus.QUEUED || status == ProvisioningJob.JobStatus.RUNNING) {
+            return false;
+        }
+        if (status == ProvisioningJob.JobStatus.FAILED) {
+            try {
+                provisioningService.resumeJob(job.getId(), null);
+                return false;
+            } catch (IllegalStateException e) {
+                log.warn("Job {} of {} cannot be resumed, importing it again: {}",
+                    job.getId(), state.getPath(), e.getMessage());
+            }
+        } else if (status == ProvisioningJob.JobStatus.COMPLETED || status == ProvisioningJob.JobStatus.CANCELLED) {
+            // A cancelled job was stopped on purpose; its range is not imported again
+            state.setCommittedOffset(state.getJobEndOffset());
+            state.setCommittedModified(state.getJobModified());
+        }
+        state.setJobId(null);
+        state.setJobEndOffset(null);
+        state.setJobModified(null);
+        return true;
+    }
+
+    private void submitWhole(Path file, ProvisioningJob.SourceType type, ProvisioningWatchedFile state,
+                             LocalDateTime modified) throws IOException {
+        long size = Files.size(file);
+        if (size == state.getCommittedOffset() && modified.equals(state.getCommittedModified())) {
+            return;
+        }
+        ProvisioningJob job = provisioningService.submitFile(file, type, sourceKeyOf(file), delta, workers,
+            target -> Files.copy(file, target, StandardCopyOption.REPLACE_EXISTING));
+        log.info("Queued provisioning job {} for {}", job.getId(), file);
+        recordJob(state, job, size, modified);
+    }
+
+    /**
+     * Queue a job for the complete records appended since the last import. CSV jobs
+     * get the file's header followed by the new records; a file that shrank was
+     * replaced and is read again from the start.
+     */
+    private void submitAppended(Path file, ProvisioningJob.SourceType type, ProvisioningWatchedFile state,
+                                LocalDateTime modified) throws IOException {
+        boolean csv = type == ProvisioningJob.SourceType.CSV;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long start = state.getCommittedOffset();
+            if (channel.size() < start) {
+                log.info("{} was truncated or replaced, tailing it from the start", file);
+                start = 0;
+                state.setCommittedOffset(0L);
+            }
+            long headerEnd = csv ? CsvRecordRanges.headerEnd(channel) : 0;
+            long from = Math.max(start, headerEnd);
+            long end = CsvRecordRanges.completeRecordsEnd(channel, from, csv);
+            if (end <= from) {
+                return;
+            }
+            ProvisioningJob job = provisioningService.submitFile(file, type, sourceKeyOf(file), false, workers,
+                target -> {
+                    try (OutputStream out = Files.newOutputStream(target);
+                         InputStream header = CsvRecordRanges.open(channel, 0, headerEnd);
+                         InputStream appended = CsvRecordRanges.open(channel, from, end)) {
+                        header.transferTo(out);
+                        appended.transferTo(out);
+                    }
+                });
+            log.info("Queued provisioning job {} for bytes {}..{} of {}", job.getId(), from, end, file);
+            recordJob(state, job, end, modified);
+        }
+    }
+
+    private static void recordJob(ProvisioningWatchedFile state, ProvisioningJob job, long endOffset,
+                                  LocalDateTime modified) {
+        state.setJobId(job.getId());
+        state.setJobEndOffset(endOffset);
+        state.setJobModified(modified);
+    }
+
+    private String sourceKeyOf(Path file) {
+        return sourceKey.isBlank() ? file.getFileName().toString() : sourceKey;
+    }
+
+    private static boolean isSettled(Path file, long settledBefore) {
+        try {
+            return Files.isRegularFile(file) && Files.getLastModifiedTime(file).toMillis() < settledBefore;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static ProvisioningJob.SourceType sourceTypeOf(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (name.startsWith(".")) {
+            return null;
+        }
+        if (name.endsWith(".csv")) {
+            return ProvisioningJob.SourceType.CSV;
+        }
+        if (name.endsWith(".ndjson") || name.endsWith(".jsonl")) {
+            return ProvisioningJob.SourceType.NDJSON;
+        }
+        if (name.endsWith(".json")) {
+            return ProvisioningJob.SourceType.JSON;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,85 @@
+package com.iamdk.directory.service;
+
+import com.iamdk.directory.dto.provisioning.RowError;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Provisioning Error Ledger
+ * Streams the rejected rows of a job to a CSV file (rowNumber, field, reason) and
+ * keeps the first few in memory as a sample. Safe for concurrent import workers.
+ */
+public class ProvisioningErrorLedger implements Closeable {
+
+    private static final String[] HEADER = {"rowNumber", "field", "reason"};
+
+    private final Path file;
+    private final CSVPrinter printer;
+    private final int sampleSize;
+    private final List<RowError> sample;
+    private long count;
+
+    private ProvisioningErrorLedger(Path file, CSVPrinter printer, int sampleSize, List<RowError> sample) {
+        this.file = file;
+        this.printer = printer;
+        this.sampleSize = sampleSize;
+        this.sample = sample;
+    }
+
+    /**
+     * Open a ledger, appending to the file if a resumed job already wrote one
+     *
+     * @param sample the sample kept so far, or null to start a new one
+     */
+    public static ProvisioningErrorLedger open(Path file, int sampleSize, List<RowError> sample) throws IOException {
+        boolean exists = Files.exists(file);
+        CSVFormat format = exists ? CSVFormat.DEFAULT : CSVFormat.DEFAULT.withHeader(HEADER);
+        CSVPrinter printer = new CSVPrinter(Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND), format);
+        return new ProvisioningErrorLedger(file, printer, sampleSize,
+            sample != null ? new ArrayList<>(sample) : new ArrayList<>());
+    }
+
+    public synchronized void record(RowError error) {
+        try {
+            printer.printRecord(error.rowNumber(), error.field(), error.reason());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write error ledger " + file, e);
+        }
+        count++;
+        if (sample.size() < sampleSize) {
+            sample.add(error);
+        }
+    }
+
+    public void recordAll(List<RowError> errors) {
+        errors.forEach(this::record);
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized List<RowError> getSample() {
+        return List.copyOf(sample);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        printer.close();
+    }
+}
@@ -0,0 +1,151 @@
+package com.iamdk.directory.service;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Provisioning Job Control
+ * Live controls of one queued or running job: cooperative cancellation, a
+ * rows-per-second ceiling and a cap on chunks being written at once. All of them
+ * can be changed while the job runs and take effect at the next chunk boundary.
+ */
+public class ProvisioningJobControl {
+
+    private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+
+    private final DoubleSupplier defaultRowsPerSecond;
+    private final int defaultMaxInFlight;
+
+    private volatile boolean cancelled;
+    private volatile Double rowsPerSecond;
+    private volatile Integer maxInFlight;
+
+    private int inFlight;
+    private long nextFreeNanos = System.nanoTime();
+
+    /**
+     * @param defaultRowsPerSecond ceiling used while the job has none of its own, 0 for none
+     * @param rowsPerSecond        the job's own ceiling, 0 for none, or null to use the default
+     * @param defaultMaxInFlight   cap used while the job has none of its own, 0 for none
+     * @param maxInFlight          the job's own cap on chunks written at once, 0 for none,
+     *                             or null to use the default
+     */
+    public ProvisioningJobControl(DoubleSupplier defaultRowsPerSecond, Double rowsPerSecond,
+                                  int defaultMaxInFlight, Integer maxInFlight) {
+        this.defaultRowsPerSecond = defaultRowsPerSecond;
+        this.rowsPerSecond = rowsPerSecond;
+        this.defaultMaxInFlight = defaultMaxInFlight;
+        this.maxInFlight = maxInFlight;
+    }
+
+    public void cancel() {
+        cancelled = true;
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public Double getRowsPerSecond() {
+        return rowsPerSecond;
+    }
+
+    public Integer getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public void setRowsPerSecond(Double rowsPerSecond) {
+        this.rowsPerSecond = rowsPerSecond;
+    }
+
+    public synchronized void setMaxInFlight(Integer maxInFlight) {
+        this.maxInFlight = maxInFlight;
+        notifyAll();
+    }
+
+    /**
+     * Rows-per-second ceiling in effect now, or 0 if there is none
+     */
+    public double effectiveRowsPerSecond() {
+        Double own = rowsPerSecond;
+        return own != null ? own : defaultRowsPerSecond.getAsDouble();
+    }
+
+    /**
+     * Cap on chunks written at once in effect now, or 0 if there is none
+     */
+    public int effectiveMaxInFlight() {
+        Integer own = maxInFlight;
+        return own != null ? own : defaultMaxInFlight;
+    }
+
+    /**
+     * Wait until a chunk of the given size may be written under the ceiling and the
+     * in-flight cap, then take an in-flight slot that {@link #afterChunk()} releases
+     *
+     * @throws CancellationException if the job is cancelled before or while waiting
+     */
+    public void beforeChunk(int rows) {
+        checkCancelled();
+        awaitRate(rows);
+        awaitSlot();
+    }
+
+    public synchronized void afterChunk() {
+        inFlight--;
+        notifyAll();
+    }
+
+    public void checkCancelled() {
+        if (cancelled) {
+            throw new CancellationException("Job cancelled");
+        }
+    }
+
+    private void awaitRate(int rows) {
+        double rate = effectiveRowsPerSecond();
+        if (rate <= 0) {
+            return;
+        }
+        long start;
+        synchronized (this) {
+            // Reserve the chunk's share of the ceiling; concurrent lanes queue behind each other
+            long now = System.nanoTime();
+            start = Math.max(now, nextFreeNanos);
+            nextFreeNanos = start + (long) (rows * 1_000_000_000L / rate);
+        }
+        long wait;
+        while ((wait = start - System.nanoTime()) > 0) {
+            checkCancelled();
+            sleep(Math.min(wait, POLL_NANOS));
+        }
+    }
+
+    private synchronized void awaitSlot() {
+        int cap;
+        while ((cap = effectiveMaxInFlight()) > 0 && inFlight >= cap) {
+            checkCancelled();
+            try {
+                TimeUnit.NANOSECONDS.timedWait(this, POLL_NANOS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting to write");
+            }
+        }
+        checkCancelled();
+        inFlight++;
+    }
+
+    private static void sleep(long nanos) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while throttled");
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.iamdk.directory.service;
+
+import com.iamdk.directory.entity.ProvisioningJob;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Provisioning Job Controls
+ * Registry of the live controls of the jobs this node has queued or is running,
+ * the name the node claims them under, and the default rows-per-second ceiling:
+ * one during business hours, when imports share the database with logins and
+ * SCIM traffic, and another outside them
+ */
+@Component
+public class ProvisioningJobControls {
+
+    private final Map<Long, ProvisioningJobControl> controls = new ConcurrentHashMap<>();
+
+    @Value("${provisioning.node-id:${provisioning.watch.node-id:}}")
+    private String nodeId;
+
+    @Value("${provisioning.throttle.rows-per-second:0}")
+    private double rowsPerSecond;
+
+    @Value("${provisioning.throttle.max-in-flight:0}")
+    private int maxInFlight;
+
+    @Value("${provisioning.throttle.business-hours.rows-per-second:0}")
+    private double businessHoursRowsPerSecond;
+
+    @Value("${provisioning.throttle.business-hours.start:08:00}")
+    private String businessHoursStart;
+
+    @Value("${provisioning.throttle.business-hours.end:18:00}")
+    private String businessHoursEnd;
+
+    @Value("${provisioning.throttle.business-hours.days:MONDAY,TUESDAY,WEDNESDAY,THURSDAY,FRIDAY}")
+    private Set<DayOfWeek> businessDays;
+
+    /**
+     * Create the control of a job about to be queued, from the limits stored on the job
+     */
+    public ProvisioningJobControl register(ProvisioningJob job) {
+        ProvisioningJobControl control = new ProvisioningJobControl(this::defaultRowsPerSecond,
+            job.getRowsPerSecondLimit(), maxInFlight, job.getMaxInFlightChunks());
+        controls.put(job.getId(), control);
+        return control;
+    }
+
+    /**
+     * Name of this node as owner of jobs and of watched file leases; pid@host unless
+     * configured. A configured name stays the same across restarts, so the jobs a
+     * restart interrupted are failed at once rather than when their heartbeat expires.
+     */
+    public String nodeId() {
+        if (nodeId.isBlank()) {
+            nodeId = ManagementFactory.getRuntimeMXBean().getName();
+        }
+        return nodeId;
+    }
+
+    /**
+     * Ids of the jobs this node has queued or is running
+     */
+    public Set<Long> jobIds() {
+        return Set.copyOf(controls.keySet());
+    }
+
+    public Optional<ProvisioningJobControl> get(Long jobId) {
+        return Optional.ofNullable(controls.get(jobId));
+    }
+
+    public void remove(Long jobId) {
+        controls.remove(jobId);
+    }
+
+    /**
+     * Ceiling for jobs without their own: the business hours ceiling if one is set
+     * and it is business hours now, otherwise the general one. 0 means none.
+     */
+    public double defaultRowsPerSecond() {
+        if (businessHoursRowsPerSecond > 0 && isBusinessHours(LocalDateTime.now())) {
+            return businessHoursRowsPerSecond;
+        }
+        return rowsPerSecond;
+    }
+
+    private boolean isBusinessHours(LocalDateTime now) {
+        LocalTime time = now.toLocalTime();
+        return businessDays.contains(now.getDayOfWeek())
+            && !time.isBefore(LocalTime.parse(businessHoursStart)) && time.isBefore(LocalTime.parse(businessHoursEnd));
+    }
+}
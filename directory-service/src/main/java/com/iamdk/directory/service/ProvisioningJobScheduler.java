@@ -0,0 +1,79 @@
+package com.iamdk.directory.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Provisioning Job Scheduler
+ * Runs jobs of different sources in parallel on the provisioning executor and
+ * jobs of the same source one after another, in the order they were submitted.
+ * Two feeds of one source would otherwise race to write the same users, and the
+ * older file could win. A job waiting for its source takes no executor slot; it
+ * runs on the thread of the job before it once that one finishes.
+ */
+@Slf4j
+@Component
+public class ProvisioningJobScheduler {
+
+    private final ThreadPoolTaskExecutor provisioningJobExecutor;
+
+    // Jobs waiting per source; a source is present while one of its jobs is queued or running
+    private final Map<String, ArrayDeque<Runnable>> waiting = new HashMap<>();
+
+    @Value("${provisioning.executor.queue-capacity:20}")
+    private int queueCapacity;
+
+    public ProvisioningJobScheduler(ThreadPoolTaskExecutor provisioningJobExecutor) {
+        this.provisioningJobExecutor = provisioningJobExecutor;
+    }
+
+    /**
+     * Submit a job of a source
+     *
+     * @param sourceKey source of the job, or null if it shares users with no other job
+     * @throws TaskRejectedException if the executor or the source's queue is full
+     */
+    public void submit(String sourceKey, Runnable job) {
+        if (sourceKey == null) {
+            provisioningJobExecutor.execute(job);
+            return;
+        }
+        synchronized (waiting) {
+            ArrayDeque<Runnable> queue = waiting.get(sourceKey);
+            if (queue != null) {
+                if (queue.size() >= queueCapacity) {
+                    throw new TaskRejectedException("Too many jobs queued for source " + sourceKey);
+                }
+                queue.add(job);
+                return;
+            }
+            // Execute while holding the lock, so no job joins a source whose first job is rejected
+            provisioningJobExecutor.execute(() -> runInOrder(sourceKey, job));
+            waiting.put(sourceKey, new ArrayDeque<>());
+        }
+    }
+
+    private void runInOrder(String sourceKey, Runnable first) {
+        Runnable next = first;
+        while (next != null) {
+            try {
+                next.run();
+            } catch (RuntimeException e) {
+                log.error("Provisioning job of source {} failed unexpectedly", sourceKey, e);
+            }
+            synchronized (waiting) {
+                next = waiting.get(sourceKey).poll();
+                if (next == null) {
+                    waiting.remove(sourceKey);
+                }
+            }
+        }
+    }
+}
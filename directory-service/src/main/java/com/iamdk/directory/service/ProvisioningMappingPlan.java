@@ -0,0 +1,268 @@
+package com.iamdk.directory.service;
+
+import com.iamdk.directory.dto.provisioning.ProvisioningRow;
+import com.iamdk.directory.dto.provisioning.RowError;
+import com.iamdk.directory.entity.ProvisioningJob.SourceType;
+import com.iamdk.directory.service.source.SourceRecord;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Provisioning Mapping Plan
+ * Column mappings compiled once per source into one accessor per target field.
+ * Compiled against a CSV header, each accessor reads its column by index, so
+ * mapping a row costs array lookups and the configured transforms instead of a
+ * header name lookup per field.
+ *
+ * <p>A mapping is {@code target: column|transform|...}, e.g. {@code email: mail|trim|lower}.
+ * Targets are loginName, email, firstName, lastName, active, groups and
+ * {@code attributes.<name>} for entries of the user's attribute map.
+ */
+public class ProvisioningMappingPlan {
+
+    public static final String ATTRIBUTE_PREFIX = "attributes.";
+
+    private static final int MAX_GROUP_NAME_LENGTH = 100;
+
+    public enum Transform {
+        TRIM,
+        LOWER,
+        UPPER;
+
+        String apply(String value) {
+            return switch (this) {
+                case TRIM -> value.trim();
+                case LOWER -> value.toLowerCase(Locale.ROOT);
+                case UPPER -> value.toUpperCase(Locale.ROOT);
+            };
+        }
+    }
+
+    private final Accessor loginName;
+    private final Accessor email;
+    private final Accessor firstName;
+    private final Accessor lastName;
+    private final Accessor active;
+    private final Accessor groups;
+    private final String[] attributeNames;
+    private final Accessor[] attributes;
+
+    private ProvisioningMappingPlan(Map<String, Accessor> targets, Map<String, Accessor> attributeTargets) {
+        this.loginName = targets.getOrDefault("loginName", Accessor.ABSENT);
+        this.email = targets.getOrDefault("email", Accessor.ABSENT);
+        this.firstName = targets.getOrDefault("firstName", Accessor.ABSENT);
+        this.lastName = targets.getOrDefault("lastName", Accessor.ABSENT);
+        this.active = targets.getOrDefault("active", Accessor.ABSENT);
+        this.groups = targets.getOrDefault("groups", Accessor.ABSENT);
+        this.attributeNames = attributeTargets.keySet().toArray(new String[0]);
+        this.attributes = attributeTargets.values().toArray(new Accessor[0]);
+    }
+
+    /**
+     * Compile mappings against a source's header
+     *
+     * @param header column names of a CSV source, or null for sources whose records
+     *               are read by field name
+     * @throws IllegalArgumentException if a target or transform is unknown, or if a
+     *                                  header is given for a source of named fields
+     */
+    public static ProvisioningMappingPlan compile(Map<String, String> mappings, SourceType sourceType,
+                                                  String[] header) {
+        if (header != null && !sourceType.hasFieldPositions()) {
+            throw new IllegalArgumentException("Source type " + sourceType
+                + " has named fields; its mappings cannot be compiled against a header");
+        }
+        Map<String, Accessor> targets = new HashMap<>();
+        Map<String, Accessor> attributeTargets = new LinkedHashMap<>();
+
+        for (Map.Entry<String, String> mapping : mappings.entrySet()) {
+            String spec = mapping.getValue();
+            if (spec == null || spec.isBlank()) {
+                continue;
+            }
+            Accessor accessor = Accessor.compile(spec, header);
+            String target = mapping.getKey();
+            if (target.regionMatches(true, 0, ATTRIBUTE_PREFIX, 0, ATTRIBUTE_PREFIX.length())
+                    && target.length() > ATTRIBUTE_PREFIX.length()) {
+                attributeTargets.put(target.substring(ATTRIBUTE_PREFIX.length()), accessor);
+            } else {
+                targets.put(canonicalTarget(target), accessor);
+            }
+        }
+        return new ProvisioningMappingPlan(targets, attributeTargets);
+    }
+
+    /**
+     * Validate a record and map it to a row, reporting an unreadable record or the
+     * first invalid field as an error
+     */
+    public ProvisioningRowMapper.Result map(SourceRecord record) {
+        if (record.error() != null) {
+            return invalid(record, null, record.error());
+        }
+
+        String loginNameValue = loginName.get(record);
+        if (isBlank(loginNameValue)) {
+            return invalid(record, "loginName", "required");
+        }
+        String emailValue = email.get(record);
+        if (isBlank(emailValue)) {
+            return invalid(record, "email", "required");
+        }
+        String firstNameValue = firstName.get(record);
+        if (isBlank(firstNameValue)) {
+            return invalid(record, "firstName", "required");
+        }
+        String lastNameValue = lastName.get(record);
+        if (isBlank(lastNameValue)) {
+            return invalid(record, "lastName", "required");
+        }
+
+        String activeValue = active.get(record);
+        boolean activeFlag = isBlank(activeValue) || parseBoolean(activeValue);
+
+        String groupsValue = groups.get(record);
+        Set<String> groupNames = groupsValue != null ? parseGroups(groupsValue) : null;
+        if (groupNames != null && groupNames.stream().anyMatch(group -> group.length() > MAX_GROUP_NAME_LENGTH)) {
+            return invalid(record, "groups", "too long");
+        }
+
+        Map<String, String> attributeValues = null;
+        if (attributes.length > 0) {
+            attributeValues = new HashMap<>(attributes.length * 2);
+            for (int i = 0; i < attributes.length; i++) {
+                String value = attributes[i].get(record);
+                if (value != null) {
+                    attributeValues.put(attributeNames[i], value);
+                }
+            }
+        }
+
+        return new ProvisioningRowMapper.Result(new ProvisioningRow(record.rowNumber(), loginNameValue, emailValue,
+            firstNameValue, lastNameValue, activeFlag, groupNames, attributeValues), null);
+    }
+
+    /**
+     * Login name of a record, or null if the record has none. Used to account for
+     * rows that fail validation in delta mode so their users are not deactivated.
+     */
+    public String loginNameOf(SourceRecord record) {
+        return loginName.get(record);
+    }
+
+    /**
+     * Header positions the plan reads, so a tokenizer can leave the other columns undecoded
+     */
+    public boolean[] columnsRead(int columns) {
+        boolean[] read = new boolean[columns];
+        for (Accessor accessor : List.of(loginName, email, firstName, lastName, active, groups)) {
+            accessor.markRead(read);
+        }
+        for (Accessor accessor : attributes) {
+            accessor.markRead(read);
+        }
+        return read;
+    }
+
+    private static ProvisioningRowMapper.Result invalid(SourceRecord record, String field, String reason) {
+        return new ProvisioningRowMapper.Result(null, new RowError(record.rowNumber(), field, reason));
+    }
+
+    private static String canonicalTarget(String target) {
+        for (String known : List.of("loginName", "email", "firstName", "lastName", "active", "groups")) {
+            if (known.equalsIgnoreCase(target)) {
+                return known;
+            }
+        }
+        throw new IllegalArgumentException("Unknown mapping target '" + target + "'");
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+
+    private static boolean parseBoolean(String value) {
+        String lower = value.trim().toLowerCase(Locale.ROOT);
+        return "true".equals(lower) || "yes".equals(lower) || "1".equals(lower) || "y".equals(lower);
+    }
+
+    /**
+     * Group names of a groups field. A blank field is an empty set, which removes
+     * the user from every group.
+     */
+    private static Set<String> parseGroups(String value) {
+        Set<String> names = new LinkedHashSet<>();
+        for (String group : value.split(SourceRecord.MULTI_VALUE_SEPARATOR)) {
+            if (!group.isBlank()) {
+                names.add(group.trim());
+            }
+        }
+        return Set.copyOf(names);
+    }
+
+    /**
+     * Reads one column of a record and applies the transforms in order
+     *
+     * @param index column position, BY_NAME to look the column up by name, or
+     *              MISSING if the source has no such column
+     */
+    private record Accessor(int index, String column, Transform[] transforms) {
+
+        static final int BY_NAME = -1;
+        static final int MISSING = -2;
+        static final Accessor ABSENT = new Accessor(MISSING, null, new Transform[0]);
+
+        static Accessor compile(String spec, String[] header) {
+            String[] parts = spec.split("\\|");
+            String column = parts[0].trim();
+            List<Transform> transforms = new ArrayList<>(parts.length - 1);
+            for (int i = 1; i < parts.length; i++) {
+                String name = parts[i].trim();
+                try {
+                    transforms.add(Transform.valueOf(name.toUpperCase(Locale.ROOT)));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Unknown transform '" + name + "' in mapping '" + spec + "'");
+                }
+            }
+            Transform[] compiled = transforms.toArray(new Transform[0]);
+
+            if (header == null) {
+                return new Accessor(BY_NAME, column, compiled);
+            }
+            for (int i = 0; i < header.length; i++) {
+                // CSV headers are matched case-insensitively, as by the parser
+                if (header[i] != null && header[i].trim().equalsIgnoreCase(column)) {
+                    return new Accessor(i, column, compiled);
+                }
+            }
+            return ABSENT;
+        }
+
+        void markRead(boolean[] read) {
+            if (index >= 0 && index < read.length) {
+                read[index] = true;
+            }
+        }
+
+        String get(SourceRecord record) {
+            if (index == MISSING) {
+                return null;
+            }
+            String value = index == BY_NAME ? record.get(column) : record.get(index);
+            if (value == null) {
+                return null;
+            }
+            for (Transform transform : transforms) {
+                value = transform.apply(value);
+            }
+            return value;
+        }
+    }
+}
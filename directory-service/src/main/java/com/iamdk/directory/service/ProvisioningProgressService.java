@@ -0,0 +1,118 @@
+package com.iamdk.directory.service;
+
+import com.iamdk.directory.dto.provisioning.ProvisioningProgress;
+import com.iamdk.directory.entity.ProvisioningJob;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+/**
+ * Provisioning Progress Service
+ * Pushes job progress to Server-Sent Events subscribers
+ */
+@Slf4j
+@Service
+public class ProvisioningProgressService {
+
+    private static final String EVENT_NAME = "progress";
+
+    private final Map<Long, List<SseEmitter>> subscribers = new ConcurrentHashMap<>();
+
+    @Value("${provisioning.progress.sse-timeout-ms:1800000}")
+    private long sseTimeoutMs;
+
+    /**
+     * Subscribe to progress of a job. The current state is sent immediately;
+     * the stream is closed once the job reaches a terminal state.
+     *
+     * @param currentState loads the job; called once the subscriber is registered, so
+     *                     no state published after the one sent first is missed
+     */
+    public SseEmitter subscribe(Long jobId, Supplier<ProvisioningJob> currentState) {
+        SseEmitter emitter = new SseEmitter(sseTimeoutMs);
+
+        List<SseEmitter> emitters = subscribers.computeIfAbsent(jobId, id -> new CopyOnWriteArrayList<>());
+        emitters.add(emitter);
+        emitter.onCompletion(() -> emitters.remove(emitter));
+        emitter.onTimeout(() -> emitters.remove(emitter));
+        emitter.onError(e -> emitters.remove(emitter));
+
+        ProvisioningJob job;
+        try {
+            job = currentState.get();
+        } catch (RuntimeException e) {
+            emitters.remove(emitter);
+            throw e;
+        }
+
+        if (isTerminal(job)) {
+            emitters.remove(emitter);
+            send(emitter, ProvisioningProgress.of(job, 0L));
+            emitter.complete();
+            return emitter;
+        }
+
+        send(emitter, ProvisioningProgress.of(job, null));
+        return emitter;
+    }
+
+    /**
+     * Publish the job state to all subscribers.
+     *
+     * @param fractionDone share of the source consumed so far (0..1), used to estimate time remaining
+     */
+    public void publish(ProvisioningJob job, double fractionDone) {
+        List<SseEmitter> emitters = subscribers.get(job.getId());
+        boolean terminal = isTerminal(job);
+
+        if (emitters != null && !emitters.isEmpty()) {
+            ProvisioningProgress progress = ProvisioningProgress.of(job,
+                terminal ? 0L : estimateSecondsRemaining(job, fractionDone));
+            for (SseEmitter emitter : emitters) {
+                if (send(emitter, progress) && terminal) {
+                    emitter.complete();
+                }
+            }
+        }
+
+        if (terminal) {
+            subscribers.remove(job.getId());
+        }
+    }
+
+    private boolean send(SseEmitter emitter, ProvisioningProgress progress) {
+        try {
+            emitter.send(SseEmitter.event().name(EVENT_NAME).data(progress));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            log.debug("Dropping progress subscriber for job {}: {}", progress.jobId(), e.getMessage());
+            emitter.completeWithError(e);
+            return false;
+        }
+    }
+
+    private Long estimateSecondsRemaining(ProvisioningJob job, double fractionDone) {
+        if (job.getStartedAt() == null || fractionDone <= 0) {
+            return null;
+        }
+        long elapsedMillis = Duration.between(job.getStartedAt(), LocalDateTime.now()).toMillis();
+        double remaining = Math.max(0, 1 - fractionDone);
+        return Math.round(elapsedMillis * remaining / fractionDone / 1000);
+    }
+
+    private boolean isTerminal(ProvisioningJob job) {
+        return job.getStatus() == ProvisioningJob.JobStatus.COMPLETED
+            || job.getStatus() == ProvisioningJob.JobStatus.FAILED
+            || job.getStatus() == ProvisioningJob.JobStatus.CANCELLED;
+    }
+}
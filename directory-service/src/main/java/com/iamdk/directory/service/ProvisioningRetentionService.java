@@ -0,0 +1,66 @@
+package com.iamdk.directory.service;
+
+import com.iamdk.directory.entity.ProvisioningJobDailyStats;
+import com.iamdk.directory.repository.ProvisioningJobDailyStatsRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Provisioning Retention Service
+ * Compacts finished provisioning jobs older than the retention period into daily
+ * totals, so the job table only grows with the retention period
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ProvisioningRetentionService {
+
+    private final ProvisioningJobDailyStatsRepository dailyStatsRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${provisioning.retention.days:90}")
+    private int retentionDays;
+
+    /**
+     * Compact the jobs that fell out of the retention period, then delete their
+     * spool and error files. Every node runs it; each job is compacted by exactly one.
+     */
+    @Scheduled(cron = "${provisioning.retention.cron:0 30 3 * * *}")
+    public void compact() {
+        LocalDateTime cutoff = LocalDate.now().minusDays(retentionDays).atStartOfDay();
+        ProvisioningJobDailyStatsRepository.Compaction compacted =
+            transactionTemplate.execute(status -> dailyStatsRepository.compactJobsBefore(cutoff));
+        if (compacted == null) {
+            return;
+        }
+
+        for (String file : compacted.files()) {
+            try {
+                Files.deleteIfExists(Paths.get(file));
+            } catch (IOException e) {
+                log.warn("Failed to delete provisioning file {}: {}", file, e.getMessage());
+            }
+        }
+        if (compacted.jobs() > 0) {
+            log.info("Compacted {} provisioning jobs created before {} into daily totals", compacted.jobs(), cutoff);
+        }
+    }
+
+    /**
+     * Daily totals of compacted jobs between two days, inclusive
+     */
+    public List<ProvisioningJobDailyStats> getDailyStats(LocalDate from, LocalDate to) {
+        return dailyStatsRepository.findBetween(from, to);
+    }
+}
@@ -0,0 +1,86 @@
+package com.iamdk.directory.service;
+
+import com.iamdk.directory.dto.provisioning.ProvisioningRow;
+import com.iamdk.directory.dto.provisioning.RowError;
+import com.iamdk.directory.entity.ProvisioningJob;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.ConfigurationPropertyName;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Provisioning Row Mapper
+ * Resolves the column mappings of a job and compiles them into a
+ * {@link ProvisioningMappingPlan} that validates records and maps them to rows.
+ * Invalid records are reported as a {@link RowError} rather than an exception,
+ * so a file with many bad rows costs no more to process than a clean one.
+ */
+@Component
+public class ProvisioningRowMapper {
+
+    private static final Map<String, String> BUILT_IN_MAPPINGS = Map.of(
+        "loginName", "loginName",
+        "email", "email",
+        "firstName", "firstName",
+        "lastName", "lastName",
+        "active", "active",
+        "groups", "groups"
+    );
+
+    private static final Bindable<Map<String, String>> MAPPINGS = Bindable.mapOf(String.class, String.class);
+
+    private final Map<String, String> defaultMappings;
+    private final Binder binder;
+
+    public ProvisioningRowMapper(Environment environment) {
+        this.binder = Binder.get(environment);
+        Map<String, String> mappings = new LinkedHashMap<>(BUILT_IN_MAPPINGS);
+        mappings.putAll(binder.bind("provisioning.csv.default-mappings", MAPPINGS).orElse(Map.of()));
+        this.defaultMappings = Map.copyOf(mappings);
+        // Fail at startup rather than on the first job
+        ProvisioningMappingPlan.compile(defaultMappings, ProvisioningJob.SourceType.CSV, null);
+    }
+
+    /**
+     * Outcome of mapping one record: either a row or the reason it was rejected
+     */
+    public record Result(ProvisioningRow row, RowError error) {
+
+        public boolean isValid() {
+            return row != null;
+        }
+    }
+
+    /**
+     * Mappings of a job: the defaults, overridden by those configured for its source
+     * under provisioning.source-mappings, overridden by the job's own. A target mapped
+     * to an empty value is dropped.
+     */
+    public Map<String, String> mappingsFor(ProvisioningJob job) {
+        Map<String, String> mappings = new LinkedHashMap<>(defaultMappings);
+        String sourceProperty = "provisioning.source-mappings[" + job.getSourceKey() + "]";
+        if (job.getSourceKey() != null && ConfigurationPropertyName.isValid(sourceProperty)) {
+            mappings.putAll(binder.bind(sourceProperty, MAPPINGS).orElse(Map.of()));
+        }
+        if (job.getColumnMappings() != null) {
+            mappings.putAll(job.getColumnMappings());
+        }
+        return mappings;
+    }
+
+    /**
+     * Compile a job's mappings for a source
+     *
+     * @param header column names of a CSV source, or null for sources whose records
+     *               are read by field name
+     * @throws IllegalArgumentException if a target or transform is unknown, or if a
+     *                                  header is given for a source of named fields
+     */
+    public ProvisioningMappingPlan plan(ProvisioningJob job, String[] header) {
+        return ProvisioningMappingPlan.compile(mappingsFor(job), job.getSourceType(), header);
+    }
+}
@@ -1,23 +1,44 @@
 package com.iamdk.directory.service;
 
+import com.iamdk.directory.dto.CursorPage;
+import com.iamdk.directory.dto.provisioning.DryRunReport;
+import com.iamdk.directory.dto.provisioning.JobHistoryPage;
+import com.iamdk.directory.dto.provisioning.ProvisioningRow;
+import com.iamdk.directory.dto.provisioning.RowError;
 import com.iamdk.directory.entity.ProvisioningJob;
+import com.iamdk.directory.repository.GroupBatchRepository;
 import com.iamdk.directory.repository.ProvisioningJobRepository;
+import com.iamdk.directory.service.source.ProvisioningSource;
+import com.iamdk.directory.service.source.ProvisioningSourceFactory;
+import com.iamdk.directory.service.source.SourceRecord;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.function.Function;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Provisioning Service
@@ -29,176 +50,773 @@ import java.util.function.Function;
 public class ProvisioningService {
 
     private final ProvisioningJobRepository jobRepository;
-    private final UserService userService;
     private final GroupService groupService;
+    private final GroupBatchRepository groupBatchRepository;
+    private final ProvisioningBatchWriter batchWriter;
+    private final ProvisioningRowMapper rowMapper;
+    private final ParallelCsvImporter parallelImporter;
+    private final DryRunEngine dryRunEngine;
+    private final ProvisioningSourceFactory sourceFactory;
+    private final ProvisioningProgressService progressService;
+    private final ProvisioningJobControls jobControls;
+    private final ProvisioningJobScheduler jobScheduler;
 
-    private static final Map<String, Function<CSVRecord, String>> DEFAULT_MAPPINGS = new HashMap<>();
+    @Value("${provisioning.batch.chunk-size:1000}")
+    private int chunkSize;
 
-    static {
-        DEFAULT_MAPPINGS.put("loginName", record -> record.get("loginName"));
-        DEFAULT_MAPPINGS.put("email", record -> record.get("email"));
-        DEFAULT_MAPPINGS.put("firstName", record -> record.get("firstName"));
-        DEFAULT_MAPPINGS.put("lastName", record -> record.get("lastName"));
-        DEFAULT_MAPPINGS.put("active", record -> {
-            String value = record.get("active").toLowerCase();
-            return String.valueOf("true".equals(value) || "yes".equals(value) || "1".equals(value));
-        });
-    }
+    @Value("${provisioning.progress.flush-interval:5000}")
+    private int progressFlushInterval;
+
+    @Value("${provisioning.spool-dir:${java.io.tmpdir}/iamdk-provisioning}")
+    private String spoolDir;
+
+    @Value("${provisioning.errors.sample-size:100}")
+    private int errorSampleSize;
+
+    @Value("${provisioning.parallel.workers:1}")
+    private int defaultWorkers;
+
+    @Value("${provisioning.parallel.max-workers:#{T(java.lang.Runtime).getRuntime().availableProcessors()}}")
+    private int maxWorkers;
+
+    @Value("${provisioning.history.max-page-size:200}")
+    private int maxHistoryPageSize;
+
+    @Value("${provisioning.groups.create-missing:false}")
+    private boolean createMissingGroups;
+
+    @Value("${provisioning.csv.tokenizer:true}")
+    private boolean tokenizer;
+
+    @Value("${provisioning.jobs.lease-seconds:300}")
+    private double jobLeaseSeconds;
 
     /**
      * Create a provisioning job
+     *
+     * @param columnMappings mappings overriding those of the source and the defaults, or null
      */
     @Transactional
-    public ProvisioningJob createJob(String jobName, String sourceLocation, String triggeredBy) {
+    public ProvisioningJob createJob(String jobName, ProvisioningJob.SourceType sourceType, String sourceLocation,
+                                     String sourceKey, Map<String, String> columnMappings, String triggeredBy) {
+        if (sourceType == ProvisioningJob.SourceType.REST && (sourceLocation == null || sourceLocation.isBlank())) {
+            throw new IllegalArgumentException("A REST job needs the source URL as sourceLocation");
+        }
         ProvisioningJob job = ProvisioningJob.builder()
             .jobName(jobName)
-            .sourceType(ProvisioningJob.SourceType.CSV)
+            .sourceType(sourceType != null ? sourceType : ProvisioningJob.SourceType.CSV)
             .sourceLocation(sourceLocation)
+            .sourceKey(sourceKey != null && !sourceKey.isBlank() ? sourceKey : sourceLocation)
             .dryRun(false)
             .status(ProvisioningJob.JobStatus.PENDING)
             .totalProcessed(0)
             .createdCount(0)
             .updatedCount(0)
+            .unchangedCount(0)
             .deactivatedCount(0)
             .failedCount(0)
+            .columnMappings(columnMappings)
             .triggeredBy(triggeredBy)
             .build();
+        // Reject unknown targets and transforms now rather than when the job runs
+        rowMapper.plan(job, null);
 
         return jobRepository.save(job);
     }
 
     /**
-     * Execute provisioning job from CSV file
+     * Queue a provisioning job for execution.
+     * The upload is spooled to disk and the job runs on the provisioning executor;
+     * progress is available through {@link #subscribeToProgress(Long)}.
+     *
+     * @param workers number of parallel import workers, or null for the configured default
+     * @param delta   only write rows that changed since the last run of the same source,
+     *                and deactivate users the source no longer delivers
      */
-    @Transactional
-    public ProvisioningJob executeJob(Long jobId, MultipartFile file, boolean dryRun) {
-        ProvisioningJob job = jobRepository.findById(jobId)
-            .orElseThrow(() -> new IllegalArgumentException("Job not found with id: " + jobId));
+    public ProvisioningJob executeJob(Long jobId, MultipartFile file, boolean dryRun, Integer workers, boolean delta) {
+        ProvisioningJob job = claimPendingJob(jobId, delta, true);
+        return queue(job, spoolClaimed(job, file::transferTo), dryRun, workers, delta);
+    }
 
+    /**
+     * Queue a provisioning job whose file is streamed as the raw request body.
+     * The stream is copied straight to the spool file, so its size is only
+     * limited by the spool directory.
+     */
+    public ProvisioningJob executeJob(Long jobId, InputStream body, boolean dryRun, Integer workers, boolean delta) {
+        ProvisioningJob job = claimPendingJob(jobId, delta, true);
+        return queue(job, spoolClaimed(job, target -> Files.copy(body, target, StandardCopyOption.REPLACE_EXISTING)),
+            dryRun, workers, delta);
+    }
+
+    /**
+     * Create and queue a job for a file picked up from the watched provisioning directory
+     *
+     * @param writer copies the file, or the part of it to import, to the job's spool file
+     */
+    ProvisioningJob submitFile(Path file, ProvisioningJob.SourceType sourceType, String sourceKey,
+                               boolean delta, Integer workers, SpoolWriter writer) {
+        ProvisioningJob job = createJob(file.getFileName().toString(), sourceType, file.toString(), sourceKey,
+            null, "directory-watcher");
+        Path spoolFile = spool(job, writer);
+        jobRepository.claim(job.getId(), List.of(ProvisioningJob.JobStatus.PENDING.name()), jobControls.nodeId());
+        return queue(job, spoolFile, false, workers, delta);
+    }
+
+    /**
+     * Queue a REST job, which pulls its records from sourceLocation page by page
+     */
+    public ProvisioningJob pullJob(Long jobId, boolean dryRun, boolean delta) {
+        ProvisioningJob job = claimPendingJob(jobId, delta, false);
+        return queue(job, null, dryRun, 1, delta);
+    }
+
+    /**
+     * Continue a failed or cancelled job from its last committed checkpoint
+     *
+     * @param workers number of parallel import workers, or null to keep the job's setting
+     */
+    public ProvisioningJob resumeJob(Long jobId, Integer workers) {
+        ProvisioningJob job = getJobById(jobId);
+        if (!job.isResumable()) {
+            throw new IllegalStateException("Job " + jobId + " is " + job.getStatus() + " and cannot be resumed");
+        }
+        if (job.getSourceType().isUploaded()
+            && (job.getSpoolFile() == null || !Files.exists(Paths.get(job.getSpoolFile())))) {
+            throw new IllegalStateException("The spooled file of job " + jobId + " is no longer available");
+        }
+        if (jobRepository.claim(jobId, List.of(job.getStatus().name()), jobControls.nodeId()) == 0) {
+            throw new IllegalStateException("Job " + jobId + " is already being resumed");
+        }
+
+        if (workers != null) {
+            job.setWorkerCount(clampWorkers(workers));
+        }
+        job.setStatus(ProvisioningJob.JobStatus.QUEUED);
+        job.setErrorMessage(null);
+        job.setCompletedAt(null);
+        job = jobRepository.save(job);
+        log.info("Resuming provisioning job {} after row {}", jobId, job.getCommittedRows());
+
+        submit(job, null);
+        return job;
+    }
+
+    /**
+     * Cancel a job. A pending job is cancelled at once; a queued or running job stops
+     * at its next chunk boundary, keeping every chunk committed so far, and can be
+     * resumed later.
+     */
+    public ProvisioningJob cancelJob(Long jobId) {
+        ProvisioningJob job = getJobById(jobId);
+        Optional<ProvisioningJobControl> control = jobControls.get(jobId);
+        if (control.isPresent()) {
+            control.get().cancel();
+            log.info("Cancellation of provisioning job {} requested", jobId);
+            return job;
+        }
+        if (job.getStatus() != ProvisioningJob.JobStatus.PENDING || jobRepository.updateStatus(jobId,
+                List.of(ProvisioningJob.JobStatus.PENDING), ProvisioningJob.JobStatus.CANCELLED) == 0) {
+            throw new IllegalStateException("Job " + jobId + " is " + job.getStatus() + " and cannot be cancelled");
+        }
+        job.cancel();
+        return jobRepository.save(job);
+    }
+
+    /**
+     * Set the throttle of a job. A running job applies it from its next chunk.
+     *
+     * @param rowsPerSecond     rows-per-second ceiling, 0 for none, or null for the configured one
+     * @param maxInFlightChunks chunks written at once, 0 for no cap, or null for the configured cap
+     */
+    public ProvisioningJob throttleJob(Long jobId, Double rowsPerSecond, Integer maxInFlightChunks) {
+        if ((rowsPerSecond != null && rowsPerSecond < 0) || (maxInFlightChunks != null && maxInFlightChunks < 0)) {
+            throw new IllegalArgumentException("Throttle limits cannot be negative");
+        }
+        Optional<ProvisioningJobControl> control = jobControls.get(jobId);
+        if (control.isPresent()) {
+            // The running job saves the limits with its final state
+            control.get().setRowsPerSecond(rowsPerSecond);
+            control.get().setMaxInFlight(maxInFlightChunks);
+            ProvisioningJob job = getJobById(jobId);
+            job.setRowsPerSecondLimit(rowsPerSecond);
+            job.setMaxInFlightChunks(maxInFlightChunks);
+            return job;
+        }
+        ProvisioningJob job = getJobById(jobId);
+        job.setRowsPerSecondLimit(rowsPerSecond);
+        job.setMaxInFlightChunks(maxInFlightChunks);
+        return jobRepository.save(job);
+    }
+
+    /**
+     * Jobs that were queued or running when this node stopped can no longer finish;
+     * mark them failed so they can be resumed from their checkpoint
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void failInterruptedJobs() {
+        failInterruptedJobs(true);
+    }
+
+    /**
+     * Refresh the heartbeats of this node's jobs, and fail the jobs of nodes that
+     * stopped sending theirs. A job this node lost, because it missed its heartbeats
+     * for longer than the lease, is cancelled at its next chunk so it does not run
+     * alongside a resumed copy.
+     */
+    @Scheduled(fixedDelayString = "${provisioning.jobs.heartbeat-ms:30000}")
+    public void heartbeat() {
+        String node = jobControls.nodeId();
+        for (Long jobId : jobControls.jobIds()) {
+            if (jobRepository.heartbeat(jobId, node) == 0) {
+                jobControls.get(jobId).ifPresent(control -> {
+                    log.warn("Provisioning job {} is no longer owned by node {}, stopping it", jobId, node);
+                    control.cancel();
+                });
+            }
+        }
+        failInterruptedJobs(false);
+    }
+
+    /**
+     * Fail the queued and running jobs whose node stopped sending heartbeats. Jobs of
+     * other nodes are left alone while those nodes keep their heartbeats fresh.
+     *
+     * @param restarted also fail the jobs this node owned before it started
+     */
+    private void failInterruptedJobs(boolean restarted) {
+        String node = jobControls.nodeId();
+        for (ProvisioningJob job : jobRepository.findInterrupted(node, restarted, jobLeaseSeconds)) {
+            String reason = node.equals(job.getOwnerNode()) ? "Interrupted by a service restart"
+                : "Interrupted: node " + job.getOwnerNode() + " stopped sending heartbeats";
+            if (jobRepository.failInterrupted(job.getId(), node, restarted, jobLeaseSeconds, reason) == 1) {
+                log.warn("Provisioning job {} of node {} was interrupted after row {}",
+                    job.getId(), job.getOwnerNode(), job.getCommittedRows());
+            }
+        }
+    }
+
+    /**
+     * Subscribe to live progress of a job
+     */
+    public SseEmitter subscribeToProgress(Long jobId) {
+        return progressService.subscribe(jobId, () -> getJobById(jobId));
+    }
+
+    /**
+     * Check that a pending job can run as requested and move it to QUEUED. The move is
+     * a conditional update, so when the same job is executed twice at once only one
+     * request gets it.
+     */
+    private ProvisioningJob claimPendingJob(Long jobId, boolean delta, boolean upload) {
+        ProvisioningJob job = getJobById(jobId);
+        if (job.getStatus() != ProvisioningJob.JobStatus.PENDING) {
+            throw new IllegalStateException("Job " + jobId + " has already been executed");
+        }
+        if (job.getSourceType().isUploaded() != upload) {
+            throw new IllegalStateException(upload
+                ? "Job " + jobId + " pulls from " + job.getSourceLocation() + " and takes no upload"
+                : "Job " + jobId + " reads an uploaded " + job.getSourceType() + " file");
+        }
+        if (delta && (job.getSourceKey() == null || job.getSourceKey().isBlank())) {
+            throw new IllegalStateException("Delta provisioning requires a source key");
+        }
+        if (jobRepository.claim(jobId, List.of(ProvisioningJob.JobStatus.PENDING.name()), jobControls.nodeId()) == 0) {
+            throw new IllegalStateException("Job " + jobId + " has already been executed");
+        }
+        job.setStatus(ProvisioningJob.JobStatus.QUEUED);
+        // Registered before the upload is spooled, so its heartbeat is kept fresh meanwhile
+        jobControls.register(job);
+        return job;
+    }
+
+    /**
+     * Spool the upload of a claimed job, returning the job to PENDING if that fails so
+     * the upload can be retried
+     */
+    private Path spoolClaimed(ProvisioningJob job, SpoolWriter writer) {
+        try {
+            return spool(job, writer);
+        } catch (RuntimeException e) {
+            jobControls.remove(job.getId());
+            jobRepository.updateStatus(job.getId(), List.of(ProvisioningJob.JobStatus.QUEUED),
+                ProvisioningJob.JobStatus.PENDING);
+            throw e;
+        }
+    }
+
+    private ProvisioningJob queue(ProvisioningJob job, Path spoolFile, boolean dryRun, Integer workers, boolean delta) {
         job.setDryRun(dryRun);
+        job.setDeltaMode(delta);
+        job.setWorkerCount(clampWorkers(workers != null ? workers : defaultWorkers));
+        job.setSpoolFile(spoolFile != null ? spoolFile.toString() : null);
+        job.setStatus(ProvisioningJob.JobStatus.QUEUED);
+        job = jobRepository.save(job);
+
+        submit(job, spoolFile);
+        return job;
+    }
+
+    /**
+     * Submit a job to the executor, behind any queued or running job of the same source
+     *
+     * @param newSpoolFile spool file to delete if the job is rejected, or null to keep it
+     */
+    private void submit(ProvisioningJob queued, Path newSpoolFile) {
+        Long jobId = queued.getId();
+        // A claimed upload was registered before it was spooled, and may have been cancelled since
+        if (jobControls.get(jobId).isEmpty()) {
+            jobControls.register(queued);
+        }
+        try {
+            jobScheduler.submit(queued.getSourceKey(), () -> runJob(jobId));
+        } catch (TaskRejectedException e) {
+            jobControls.remove(jobId);
+            if (newSpoolFile != null) {
+                deleteSpoolFile(newSpoolFile);
+            }
+            ProvisioningJob job = getJobById(jobId);
+            job.fail("Rejected: too many provisioning jobs are queued");
+            jobRepository.save(job);
+            throw new IllegalStateException("Too many provisioning jobs are queued, try again later");
+        }
+    }
+
+    private int clampWorkers(int workers) {
+        return Math.max(1, Math.min(maxWorkers, workers));
+    }
+
+    private void runJob(Long jobId) {
+        ProvisioningJob job = getJobById(jobId);
+        Path file = job.getSpoolFile() != null ? Paths.get(job.getSpoolFile()) : null;
+        boolean dryRun = Boolean.TRUE.equals(job.getDryRun());
+        ProvisioningJobControl control = jobControls.get(jobId).orElse(null);
+        if (control == null) {
+            control = jobControls.register(job);
+        }
+        ProvisioningErrorLedger ledger = null;
 
         try {
+            control.checkCancelled();
             job.start();
             jobRepository.save(job);
+            progressService.publish(job, 0);
+
+            DeltaTracker delta = Boolean.TRUE.equals(job.getDeltaMode()) ? new DeltaTracker(job.getSourceKey()) : null;
+            GroupCache groups = new GroupCache(groupBatchRepository, createMissingGroups);
+            boolean csv = job.getSourceType() == ProvisioningJob.SourceType.CSV;
+            if (csv && delta != null && job.getCommittedOffset() != null) {
+                markCommittedRowsSeen(job, file, delta);
+            }
 
             // If not dry run, we'll commit changes
             if (!dryRun) {
-                processCsvFile(job, file);
+                ledger = openErrorLedger(job);
+            }
+            if (dryRun) {
+                processDryRun(job, file);
+            } else if (csv && job.getWorkerCount() != null && job.getWorkerCount() > 1) {
+                processCsvFileParallel(job, file, delta, groups, ledger);
+            } else if (csv) {
+                processCsvFile(job, file, delta, groups, ledger);
             } else {
-                processCsvFileDryRun(job, file);
+                processSource(job, sourceFactory.open(job, file), delta, groups, ledger);
+            }
+
+            // Only a fully read file tells which users the source no longer delivers
+            if (!dryRun && delta != null) {
+                job.setDeactivatedCount(job.getDeactivatedCount() + batchWriter.deactivateAbsent(delta));
             }
 
             job.complete();
-            log.info("Provisioning job {} completed: created={}, updated={}, deactivated={}, failed={}",
-                jobId, job.getCreatedCount(), job.getUpdatedCount(),
-                job.getDeactivatedCount(), job.getFailedCount());
+            job.setSpoolFile(null);
+            if (file != null) {
+                deleteSpoolFile(file);
+            }
+            log.info("Provisioning job {} completed: created={}, updated={}, unchanged={}, deactivated={}, failed={}, rows/s={}",
+                jobId, job.getCreatedCount(), job.getUpdatedCount(), job.getUnchangedCount(),
+                job.getDeactivatedCount(), job.getFailedCount(), job.getRowsPerSecond());
 
         } catch (Exception e) {
-            log.error("Provisioning job {} failed", jobId, e);
-            job.fail(e.getMessage());
+            // Reload so the saved counters and checkpoint are the committed ones, and keep
+            // the spool file so the job can be resumed from there
+            job = getJobById(jobId);
+            if (control.isCancelled()) {
+                log.info("Provisioning job {} cancelled after row {}", jobId, job.getCommittedRows());
+                job.cancel();
+            } else {
+                log.error("Provisioning job {} failed after row {}", jobId, job.getCommittedRows(), e);
+                job.fail(e.getMessage());
+            }
         }
 
-        return jobRepository.save(job);
+        if (ledger != null) {
+            closeErrorLedger(job, ledger);
+        }
+        // Limits may have been adjusted while the job ran
+        job.setRowsPerSecondLimit(control.getRowsPerSecond());
+        job.setMaxInFlightChunks(control.getMaxInFlight());
+        jobControls.remove(jobId);
+        jobRepository.save(job);
+        progressService.publish(job, 1);
     }
 
     /**
-     * Process CSV file with actual changes
+     * Open the job's error ledger, appending to it when the job is resumed
      */
-    private void processCsvFile(ProvisioningJob job, MultipartFile file) throws IOException {
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(file.getInputStream()));
-             CSVParser parser = CSVFormat.DEFAULT
-                 .withHeader()
-                 .withIgnoreHeaderCase()
-                 .withTrim()
-                 .parse(reader)) {
+    private ProvisioningErrorLedger openErrorLedger(ProvisioningJob job) throws IOException {
+        Path errorFile = job.getErrorFile() != null
+            ? Paths.get(job.getErrorFile())
+            : Files.createDirectories(Paths.get(spoolDir)).resolve("job-" + job.getId() + "-errors.csv");
+        job.setErrorFile(errorFile.toString());
+        return ProvisioningErrorLedger.open(errorFile, errorSampleSize, job.getErrorSample());
+    }
 
-            for (CSVRecord record : parser) {
-                job.setTotalProcessed(job.getTotalProcessed() + 1);
+    private void closeErrorLedger(ProvisioningJob job, ProvisioningErrorLedger ledger) {
+        try {
+            ledger.close();
+        } catch (IOException e) {
+            log.warn("Failed to close error ledger {}: {}", ledger.getFile(), e.getMessage());
+        }
+        job.setErrorFile(ledger.getFile().toString());
+        job.setErrorSample(ledger.getSample());
+        if (ledger.getCount() > 0) {
+            log.info("Provisioning job {} rejected {} rows, see {}", job.getId(), ledger.getCount(), ledger.getFile());
+        }
+    }
 
-                try {
-                    String loginName = getRequiredField(record, "loginName");
-                    String email = getRequiredField(record, "email");
-                    String firstName = getRequiredField(record, "firstName");
-                    String lastName = getRequiredField(record, "lastName");
+    /**
+     * Process CSV file with actual changes, one transaction per chunk.
+     * Chunks are record-aligned byte ranges, so the checkpoint committed with each
+     * chunk is an exact byte offset and row number to resume from.
+     */
+    private void processCsvFile(ProvisioningJob job, Path file, DeltaTracker delta, GroupCache groups,
+                                ProvisioningErrorLedger ledger) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long headerEnd = CsvRecordRanges.headerEnd(channel);
+            String[] header = CsvRecordRanges.header(channel, headerEnd);
+            ProvisioningMappingPlan plan = rowMapper.plan(job, header);
+            CsvRecordRanges.Format format = CsvRecordRanges.Format.of(channel, headerEnd, header, plan, tokenizer);
+            long fileSize = Math.max(1, channel.size());
+            int lastFlushed = job.getTotalProcessed();
 
-                    String activeStr = record.get("active");
-                    Boolean active = activeStr != null && !activeStr.isBlank() ?
-                        parseBoolean(activeStr) : true;
+            for (CsvRecordRanges.Range range : CsvRecordRanges.split(channel, resumeOffset(job, headerEnd),
+                     resumeRow(job), Long.MAX_VALUE, chunkSize)) {
+                List<ProvisioningRow> chunk = new ArrayList<>(chunkSize);
+                int records = 0;
+                int invalid = 0;
 
-                    var existing = userService.getUserByLoginName(loginName);
-                    if (existing.isPresent()) {
-                        userService.upsertUser(loginName, email, firstName, lastName, active);
-                        job.setUpdatedCount(job.getUpdatedCount() + 1);
-                    } else {
-                        userService.upsertUser(loginName, email, firstName, lastName, active);
-                        job.setCreatedCount(job.getCreatedCount() + 1);
+                try (ProvisioningSource rangeRecords = CsvRecordRanges.records(channel, range, format)) {
+                    SourceRecord source;
+                    while ((source = rangeRecords.next()) != null) {
+                        records++;
+                        ProvisioningRowMapper.Result result = plan.map(source);
+                        if (result.isValid()) {
+                            chunk.add(result.row());
+                        } else {
+                            invalid++;
+                            ledger.record(result.error());
+                            if (delta != null) {
+                                delta.seen(plan.loginNameOf(source));
+                            }
+                        }
                     }
+                }
 
-                } catch (Exception e) {
-                    log.warn("Failed to process record {}: {}", record.getRecordNumber(), e.getMessage());
-                    job.setFailedCount(job.getFailedCount() + 1);
+                ledger.recordAll(writeChunk(job, chunk, delta, groups, records, invalid, range.end(), range.lastRow()).errors());
+
+                if (job.getTotalProcessed() - lastFlushed >= progressFlushInterval) {
+                    lastFlushed = job.getTotalProcessed();
+                    flushProgress(job, (double) range.end() / fileSize);
                 }
             }
         }
     }
 
     /**
-     * Process CSV file for dry run (no actual changes)
+     * Process CSV file with parallel parse workers and writer lanes. The job is saved
+     * with each checkpoint and the counters of exactly the rows it covers, so a
+     * resumed job continues from counters that match its checkpoint; progress in
+     * between is only published.
+     */
+    private void processCsvFileParallel(ProvisioningJob job, Path file, DeltaTracker delta, GroupCache groups,
+                                        ProvisioningErrorLedger ledger) throws IOException {
+        long fileSize = Math.max(1, Files.size(file));
+        ImportCounters counters = ImportCounters.startingFrom(job);
+        AtomicInteger lastFlushed = new AtomicInteger(job.getTotalProcessed());
+
+        parallelImporter.importFile(file, resumeOffset(job, 0), resumeRow(job), job.getWorkerCount(), counters, delta,
+            groups, rowMapper.mappingsFor(job), new ParallelCsvImporter.Listener() {
+
+                @Override
+                public void checkpoint(long offset, long lastRow, ImportCounters committed) {
+                    synchronized (job) {
+                        committed.applyTo(job);
+                        saveCheckpoint(job, offset, lastRow);
+                    }
+                }
+
+                @Override
+                public void chunkWritten() {
+                    synchronized (job) {
+                        counters.applyTo(job);
+                        if (job.getTotalProcessed() - lastFlushed.get() >= progressFlushInterval) {
+                            lastFlushed.set(job.getTotalProcessed());
+                            job.updateThroughput(LocalDateTime.now());
+                            progressService.publish(job, counters.fractionDone(fileSize));
+                        }
+                    }
+                }
+
+                @Override
+                public void rowFailed(RowError error) {
+                    ledger.record(error);
+                }
+
+                @Override
+                public void beforeWrite(int rows) {
+                    control(job).beforeChunk(rows);
+                }
+
+                @Override
+                public void afterWrite() {
+                    control(job).afterChunk();
+                }
+            });
+
+        counters.applyTo(job);
+    }
+
+    /**
+     * Process a streamed source (JSON, NDJSON or REST) in chunks. Each chunk commits the
+     * last row it covered; a resumed job reads the source again and skips those rows.
      */
-    private void processCsvFileDryRun(ProvisioningJob job, MultipartFile file) throws IOException {
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(file.getInputStream()));
-             CSVParser parser = CSVFormat.DEFAULT
-                 .withHeader()
-                 .withIgnoreHeaderCase()
-                 .withTrim()
-                 .parse(reader)) {
+    private void processSource(ProvisioningJob job, ProvisioningSource source, DeltaTracker delta,
+                               GroupCache groups, ProvisioningErrorLedger ledger) throws IOException {
+        long skip = job.getCommittedRows() != null ? job.getCommittedRows() : 0;
+        int lastFlushed = job.getTotalProcessed();
+
+        try (source) {
+            ProvisioningMappingPlan plan = rowMapper.plan(job, source.header());
+            List<ProvisioningRow> chunk = new ArrayList<>(chunkSize);
+            int records = 0;
+            int invalid = 0;
+            long lastRow = skip;
+            SourceRecord record;
 
-            for (CSVRecord record : parser) {
-                job.setTotalProcessed(job.getTotalProcessed() + 1);
+            while ((record = source.next()) != null) {
+                if (record.rowNumber() <= skip) {
+                    if (delta != null) {
+                        delta.seen(plan.loginNameOf(record));
+                    }
+                    continue;
+                }
 
-                try {
-                    String loginName = getRequiredField(record, "loginName");
-                    String email = getRequiredField(record, "email");
-                    String firstName = getRequiredField(record, "firstName");
-                    String lastName = getRequiredField(record, "lastName");
+                records++;
+                lastRow = record.rowNumber();
+                ProvisioningRowMapper.Result result = plan.map(record);
+                if (result.isValid()) {
+                    chunk.add(result.row());
+                } else {
+                    invalid++;
+                    ledger.record(result.error());
+                    if (delta != null) {
+                        delta.seen(plan.loginNameOf(record));
+                    }
+                }
 
-                    String activeStr = record.get("active");
-                    Boolean active = activeStr != null && !activeStr.isBlank() ?
-                        parseBoolean(activeStr) : true;
+                if (records >= chunkSize) {
+                    ledger.recordAll(writeChunk(job, chunk, delta, groups, records, invalid, null, lastRow).errors());
+                    chunk.clear();
+                    records = 0;
+                    invalid = 0;
 
-                    var existing = userService.getUserByLoginName(loginName);
-                    if (existing.isPresent()) {
-                        job.setUpdatedCount(job.getUpdatedCount() + 1);
-                    } else {
-                        job.setCreatedCount(job.getCreatedCount() + 1);
+                    if (job.getTotalProcessed() - lastFlushed >= progressFlushInterval) {
+                        lastFlushed = job.getTotalProcessed();
+                        flushProgress(job, source.fractionDone());
                     }
+                }
+            }
+
+            if (records > 0) {
+                ledger.recordAll(writeChunk(job, chunk, delta, groups, records, invalid, null, lastRow).errors());
+            }
+        }
+    }
 
-                } catch (Exception e) {
-                    log.warn("Failed to process record {}: {}", record.getRecordNumber(), e.getMessage());
-                    job.setFailedCount(job.getFailedCount() + 1);
+    private long resumeOffset(ProvisioningJob job, long headerEnd) {
+        return job.getCommittedOffset() != null ? Math.max(job.getCommittedOffset(), headerEnd) : headerEnd;
+    }
+
+    private long resumeRow(ProvisioningJob job) {
+        return job.getCommittedRows() != null ? job.getCommittedRows() + 1 : 1;
+    }
+
+    /**
+     * A resumed delta job must still count the rows committed before it stopped as
+     * delivered, or their users would be deactivated
+     */
+    private void markCommittedRowsSeen(ProvisioningJob job, Path file, DeltaTracker delta) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long headerEnd = CsvRecordRanges.headerEnd(channel);
+            String[] header = CsvRecordRanges.header(channel, headerEnd);
+            ProvisioningMappingPlan plan = rowMapper.plan(job, header);
+            CsvRecordRanges.Range committed = new CsvRecordRanges.Range(headerEnd,
+                Math.max(headerEnd, job.getCommittedOffset()), 1, job.getCommittedRows() != null ? job.getCommittedRows() : 0);
+            CsvRecordRanges.Format format = CsvRecordRanges.Format.of(channel, headerEnd, header, plan, tokenizer);
+            try (ProvisioningSource records = CsvRecordRanges.records(channel, committed, format)) {
+                SourceRecord source;
+                while ((source = records.next()) != null) {
+                    delta.seen(plan.loginNameOf(source));
                 }
             }
         }
     }
 
-    private String getRequiredField(CSVRecord record, String fieldName) {
-        String value = record.get(fieldName);
-        if (value == null || value.isBlank()) {
-            throw new IllegalArgumentException("Field '" + fieldName + "' is required");
+    /**
+     * Persist the job counters and push them to progress subscribers
+     */
+    private void flushProgress(ProvisioningJob job, double fractionDone) {
+        job.updateThroughput(LocalDateTime.now());
+        jobRepository.save(job);
+        progressService.publish(job, fractionDone);
+    }
+
+    /**
+     * Write a chunk and commit the job counters and checkpoint in the same transaction.
+     * Counters are computed from the values before the chunk so a retried commit
+     * does not count the chunk twice. Waits first for the job's throttle, and stops
+     * the job here if it was cancelled.
+     */
+    private ProvisioningBatchWriter.ChunkResult writeChunk(ProvisioningJob job, List<ProvisioningRow> chunk,
+                                                           DeltaTracker delta, GroupCache groups,
+                                                           int records, int invalid,
+                                                           Long offset, long lastRow) {
+        int processed = job.getTotalProcessed() + records;
+        int created = job.getCreatedCount();
+        int updated = job.getUpdatedCount();
+        int unchanged = job.getUnchangedCount();
+        int failed = job.getFailedCount() + invalid;
+
+        ProvisioningJobControl control = control(job);
+        control.beforeChunk(records);
+        try {
+            return batchWriter.writeChunk(chunk, delta, groups, result -> {
+                job.setTotalProcessed(processed);
+                job.setCreatedCount(created + result.created());
+                job.setUpdatedCount(updated + result.updated());
+                job.setUnchangedCount(unchanged + result.unchanged());
+                job.setFailedCount(failed + result.failed());
+                saveCheckpoint(job, offset, lastRow);
+            });
+        } finally {
+            control.afterChunk();
+        }
+    }
+
+    private ProvisioningJobControl control(ProvisioningJob job) {
+        return jobControls.get(job.getId())
+            .orElseThrow(() -> new IllegalStateException("Job " + job.getId() + " is not running"));
+    }
+
+    /**
+     * @param offset byte offset for file sources read by range, or null for sources
+     *               that are resumed by skipping the committed rows
+     */
+    private void saveCheckpoint(ProvisioningJob job, Long offset, long lastRow) {
+        job.setCommittedOffset(offset);
+        job.setCommittedRows(lastRow);
+        jobRepository.save(job);
+    }
+
+    /**
+     * Validate the whole file against a key snapshot without writing anything
+     */
+    private void processDryRun(ProvisioningJob job, Path file) throws IOException {
+        DryRunReport report = dryRunEngine.run(sourceFactory.open(job, file), job.getSourceType(),
+            rowMapper.mappingsFor(job));
+        job.setDryRunReport(report);
+        job.setCreatedCount((int) report.toCreate());
+        // Rows for the same loginName are applied in order, so repeats are updates
+        job.setUpdatedCount((int) (report.toUpdate() + report.duplicateLoginNames()));
+        job.setFailedCount((int) (report.invalidRows() + report.duplicateEmails() + report.emailsInUse()));
+        job.setTotalProcessed(job.getCreatedCount() + job.getUpdatedCount() + job.getFailedCount());
+    }
+
+    private Path spool(ProvisioningJob job, SpoolWriter writer) {
+        Long jobId = job.getId();
+        try {
+            Path dir = Files.createDirectories(Paths.get(spoolDir));
+            Path spoolFile = Files.createTempFile(dir, "job-" + jobId + "-",
+                "." + job.getSourceType().name().toLowerCase());
+            try {
+                writer.writeTo(spoolFile);
+            } catch (IOException | RuntimeException e) {
+                deleteSpoolFile(spoolFile);
+                throw e;
+            }
+            return spoolFile;
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to spool upload for job " + jobId, e);
+        }
+    }
+
+    private void deleteSpoolFile(Path spoolFile) {
+        try {
+            Files.deleteIfExists(spoolFile);
+        } catch (IOException e) {
+            log.warn("Failed to delete spool file {}: {}", spoolFile, e.getMessage());
         }
-        return value;
     }
 
-    private Boolean parseBoolean(String value) {
-        String lower = value.toLowerCase();
-        return "true".equals(lower) || "yes".equals(lower) || "1".equals(lower) || "y".equals(lower);
+    /**
+     * Get the dry run report of a job, if it has one
+     */
+    public Optional<DryRunReport> getDryRunReport(Long jobId) {
+        return Optional.ofNullable(getJobById(jobId).getDryRunReport());
+    }
+
+    /**
+     * Get the error ledger file of a job, if it rejected any rows
+     */
+    public Optional<Path> getErrorFile(Long jobId) {
+        return Optional.ofNullable(getJobById(jobId).getErrorFile())
+            .map(Paths::get)
+            .filter(Files::exists);
+    }
+
+    /**
+     * Get the in-memory sample of a job's rejected rows
+     */
+    public List<RowError> getErrorSample(Long jobId) {
+        List<RowError> sample = getJobById(jobId).getErrorSample();
+        return sample != null ? sample : List.of();
     }
 
     /**
-     * Get job history
+     * Get one page of job history, newest first
+     *
+     * @param status only jobs with this status, or null for all
+     * @param cursor nextCursor of the previous page, or null for the latest page
      */
-    public java.util.List<ProvisioningJob> getJobHistory() {
-        return jobRepository.findByOrderByCreatedAtDesc();
+    public JobHistoryPage getJobHistory(ProvisioningJob.JobStatus status, String cursor, int size) {
+        int pageSize = Math.max(1, Math.min(maxHistoryPageSize, size));
+        // One extra row tells whether there is a next page
+        Pageable limit = PageRequest.of(0, pageSize + 1);
+
+        SeekCursor after = SeekCursor.decode(cursor);
+        List<ProvisioningJob> jobs;
+        if (after == null) {
+            jobs = status != null ? jobRepository.findLatestByStatus(status, limit) : jobRepository.findLatest(limit);
+        } else {
+            jobs = status != null
+                ? jobRepository.findOlderThanByStatus(status, after.timeValue(), after.id(), limit)
+                : jobRepository.findOlderThan(after.timeValue(), after.id(), limit);
+        }
+
+        CursorPage<ProvisioningJob> page = SeekCursor.page(jobs, pageSize,
+            job -> new SeekCursor(job.getCreatedAt().toString(), job.getId()), null);
+        return new JobHistoryPage(page.items(), page.nextCursor());
     }
 
     /**
@@ -208,4 +826,9 @@ public class ProvisioningService {
         return jobRepository.findById(id)
             .orElseThrow(() -> new IllegalArgumentException("Job not found with id: " + id));
     }
+
+    @FunctionalInterface
+    interface SpoolWriter {
+        void writeTo(Path target) throws IOException;
+    }
 }
@@ -0,0 +1,38 @@
+package com.iamdk.directory.service;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+/**
+ * Search Terms
+ * A free-text query split into whitespace separated terms, each of which must
+ * occur somewhere in a match, as bound to the trigram-indexed search queries
+ *
+ * @param query    the lower-cased query, used to rank matches by similarity
+ * @param primary  LIKE pattern of the longest term, the most selective one, which
+ *                 the query matches against each indexed column
+ * @param patterns LIKE patterns of all terms, separated by spaces
+ */
+public record SearchTerms(String query, String primary, String patterns) {
+
+    /**
+     * @return the terms of the query, or null if it has none
+     */
+    public static SearchTerms parse(String query) {
+        if (query == null || query.isBlank()) {
+            return null;
+        }
+        String normalized = query.trim().toLowerCase(Locale.ROOT);
+        String[] terms = normalized.split("\\s+");
+        String longest = Arrays.stream(terms).max(Comparator.comparingInt(String::length)).orElseThrow();
+        String patterns = Arrays.stream(terms).map(SearchTerms::pattern).collect(Collectors.joining(" "));
+        return new SearchTerms(String.join(" ", terms), pattern(longest), patterns);
+    }
+
+    private static String pattern(String term) {
+        String escaped = term.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+        return "%" + escaped + "%";
+    }
+}
@@ -0,0 +1,68 @@
+package com.iamdk.directory.service;
+
+import com.iamdk.directory.dto.CursorPage;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Seek Cursor
+ * Position in a list ordered by a sort column and then id: the sort value and id of
+ * the last item of a page. The next page starts right after it, so reading deep into
+ * a list costs the same as reading its first page, and rows written in between never
+ * shift the page boundaries the way offsets do.
+ */
+public record SeekCursor(String value, long id) {
+
+    /**
+     * The opaque, URL safe form of the cursor handed to clients
+     */
+    public String encode() {
+        return Base64.getUrlEncoder().withoutPadding()
+            .encodeToString((id + "|" + value).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The sort value as a timestamp, for lists ordered by one
+     */
+    public LocalDateTime timeValue() {
+        try {
+            return LocalDateTime.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid cursor position: " + value);
+        }
+    }
+
+    /**
+     * @return the decoded cursor, or null for a blank one, which starts at the first page
+     */
+    public static SeekCursor decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            // The id comes first, as the sort value may itself contain the separator
+            int separator = decoded.indexOf('|');
+            return new SeekCursor(decoded.substring(separator + 1), Long.parseLong(decoded.substring(0, separator)));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+    }
+
+    /**
+     * Build a page from rows read with a limit of pageSize + 1; the extra row only
+     * tells whether there is a next page
+     */
+    public static <T> CursorPage<T> page(List<T> rows, int pageSize, Function<T, SeekCursor> positionOf, Long total) {
+        if (rows.size() <= pageSize) {
+            return new CursorPage<>(rows, null, total);
+        }
+        List<T> page = rows.subList(0, pageSize);
+        return new CursorPage<>(page, positionOf.apply(page.get(pageSize - 1)).encode(), total);
+    }
+}
@@ -0,0 +1,143 @@
+package com.iamdk.directory.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.iamdk.directory.dto.admin.BulkUserResult;
+import com.iamdk.directory.repository.ProvisioningFingerprintRepository;
+import com.iamdk.directory.repository.UserBulkRepository;
+import com.iamdk.directory.repository.UserWriteLocks;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * User Bulk Service
+ * Applies one operation to many users, selected by id or by department and
+ * attributes. Users are processed in chunks, each written with set-based
+ * statements in a transaction of its own while holding the users' write locks,
+ * so a large operation never holds locks on all of its users at once.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class UserBulkService {
+
+    public enum Operation {
+        ACTIVATE, DEACTIVATE, UNLOCK, DELETE, SET_ATTRIBUTE
+    }
+
+    /**
+     * Users to apply an operation to: the given ids, or else every user in the
+     * department (if given) whose attributes match (if given)
+     */
+    public record Selection(List<Long> ids, String department, AttributeFilter attributes) {
+
+        public Selection {
+            if ((ids == null || ids.isEmpty()) && department == null && attributes == null) {
+                throw new IllegalArgumentException("Select users by ids, department or attributes");
+            }
+        }
+    }
+
+    private final UserBulkRepository bulkRepository;
+    private final ProvisioningFingerprintRepository fingerprintRepository;
+    private final UserWriteLocks userWriteLocks;
+    private final UserIdentityCache identityCache;
+    private final UserSuggestIndex suggestIndex;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+
+    @Value("${users.bulk.chunk-size:1000}")
+    private int chunkSize;
+
+    /**
+     * @param attributeName  attribute to set, for SET_ATTRIBUTE
+     * @param attributeValue its new value, or null to remove it
+     */
+    public BulkUserResult apply(Operation operation, Selection selection, String attributeName,
+                                Object attributeValue) {
+        String jsonValue = null;
+        if (operation == Operation.SET_ATTRIBUTE) {
+            if (attributeName == null) {
+                throw new IllegalArgumentException("SET_ATTRIBUTE needs an attribute name");
+            }
+            AttributeFilter.checkName(attributeName);
+            jsonValue = toJson(attributeValue);
+        }
+
+        int matched = 0;
+        int affected = 0;
+        if (selection.ids() != null && !selection.ids().isEmpty()) {
+            List<Long> ids = List.copyOf(new TreeSet<>(selection.ids()));
+            for (int i = 0; i < ids.size(); i += chunkSize) {
+                ChunkCounts counts = applyToChunk(operation, ids.subList(i, Math.min(ids.size(), i + chunkSize)),
+                    attributeName, jsonValue);
+                matched += counts.matched();
+                affected += counts.affected();
+            }
+        } else {
+            long afterId = 0;
+            List<Long> ids;
+            // Seek by id, so rows the operation changed or deleted never shift the next chunk
+            while (!(ids = bulkRepository.findIdsAfter(selection.department(), selection.attributes(), afterId,
+                    chunkSize)).isEmpty()) {
+                ChunkCounts counts = applyToChunk(operation, ids, attributeName, jsonValue);
+                matched += counts.matched();
+                affected += counts.affected();
+                afterId = ids.get(ids.size() - 1);
+            }
+        }
+
+        log.info("Bulk {} of {} users changed {}", operation, matched, affected);
+        return new BulkUserResult(operation.name(), matched, affected);
+    }
+
+    private record ChunkCounts(int matched, int affected) {
+    }
+
+    private ChunkCounts applyToChunk(Operation operation, List<Long> chunk, String attributeName, String jsonValue) {
+        return transactionTemplate.execute(status -> {
+            Map<Long, String> users = bulkRepository.findLoginNames(chunk);
+            if (users.isEmpty()) {
+                return new ChunkCounts(0, 0);
+            }
+            userWriteLocks.lock(users.values());
+            List<Long> ids = List.copyOf(users.keySet());
+            int changed = switch (operation) {
+                case ACTIVATE -> bulkRepository.setActive(ids, true);
+                case DEACTIVATE -> bulkRepository.setActive(ids, false);
+                case UNLOCK -> bulkRepository.unlock(ids);
+                case SET_ATTRIBUTE -> bulkRepository.setAttribute(ids, attributeName, jsonValue);
+                case DELETE -> bulkRepository.delete(ids);
+            };
+            if (operation != Operation.UNLOCK) {
+                // A manual change makes the users differ from what any feed last delivered
+                fingerprintRepository.deleteByLoginNames(users.values());
+            }
+            if (operation == Operation.DELETE) {
+                ids.forEach(suggestIndex::remove);
+            } else if (operation == Operation.ACTIVATE || operation == Operation.DEACTIVATE) {
+                suggestIndex.update(users.values());
+            }
+            identityCache.invalidate(users.values());
+            return new ChunkCounts(users.size(), changed);
+        });
+    }
+
+    private String toJson(Object value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Invalid attribute value: " + e.getMessage());
+        }
+    }
+}
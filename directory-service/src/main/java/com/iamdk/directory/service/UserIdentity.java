@@ -0,0 +1,40 @@
+package com.iamdk.directory.service;
+
+import com.iamdk.directory.entity.User;
+
+import java.time.LocalDateTime;
+
+/**
+ * User Identity
+ * The fields of a user that authentication reads, as held by {@link UserIdentityCache}
+ */
+public record UserIdentity(
+    Long id,
+    String loginName,
+    String passwordHash,
+    boolean passwordResetRequired,
+    boolean active,
+    LocalDateTime lockedUntil
+) {
+
+    /**
+     * @see User#isLocked()
+     */
+    public boolean isLocked() {
+        return lockedUntil != null && LocalDateTime.now().isBefore(lockedUntil);
+    }
+
+    /**
+     * @see User#hasCredential()
+     */
+    public boolean hasCredential() {
+        return passwordHash != null && !passwordHash.isEmpty();
+    }
+
+    /**
+     * The same identity with the given active flag and lock
+     */
+    public UserIdentity withStatus(boolean active, LocalDateTime lockedUntil) {
+        return new UserIdentity(id, loginName, passwordHash, passwordResetRequired, active, lockedUntil);
+    }
+}
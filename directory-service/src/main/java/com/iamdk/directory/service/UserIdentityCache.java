@@ -0,0 +1,160 @@
+package com.iamdk.directory.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.iamdk.directory.dto.admin.IdentityCacheStats;
+import com.iamdk.directory.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * User Identity Cache
+ * Read-through cache of the identity records logins look up, by login name, with
+ * an index from id to login name for lookups by id, so a login does not query the
+ * database while its user is cached. Entries are bounded in number and expire
+ * after a short time, which limits how long a password change, lockout or
+ * deactivation made on another node can go unseen.
+ * <p>
+ * Writers invalidate the users they change by key once their transaction
+ * completes. Loads are versioned: every invalidation bumps the version of its key,
+ * and a load that finds the version changed while it ran drops what it cached, so
+ * a row read before the commit is never served after it.
+ */
+@Component
+public class UserIdentityCache {
+
+    private static final int VERSION_STRIPES = 4096;
+
+    private final UserRepository userRepository;
+    private final Cache<String, UserIdentity> byLoginName;
+    private final Cache<Long, String> loginNameById;
+    // Versions of the keys, striped so memory stays fixed; a shared stripe only costs a reload
+    private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+
+    public UserIdentityCache(UserRepository userRepository,
+                             @Value("${users.identity-cache.max-size:10000}") long maxSize,
+                             @Value("${users.identity-cache.ttl-seconds:30}") long ttlSeconds) {
+        this.userRepository = userRepository;
+        this.byLoginName = Caffeine.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+            .recordStats()
+            .build();
+        this.loginNameById = Caffeine.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+            .build();
+    }
+
+    /**
+     * @return the user's identity; users that do not exist are not cached
+     */
+    public Optional<UserIdentity> findByLoginName(String loginName) {
+        UserIdentity cached = byLoginName.getIfPresent(loginName);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        long version = version(loginName);
+        Optional<UserIdentity> loaded = userRepository.findIdentityByLoginName(loginName);
+        loaded.ifPresent(identity -> cache(byLoginName, loginName, identity, version));
+        return loaded;
+    }
+
+    public Optional<UserIdentity> findById(Long id) {
+        String loginName = loginNameById.getIfPresent(id);
+        if (loginName != null) {
+            Optional<UserIdentity> identity = findByLoginName(loginName);
+            // The login name may have moved to another user since it was indexed
+            if (identity.isPresent() && identity.get().id().equals(id)) {
+                return identity;
+            }
+            loginNameById.asMap().remove(id, loginName);
+        }
+
+        long idVersion = version(id);
+        Optional<UserIdentity> loaded = userRepository.findIdentityById(id);
+        loaded.ifPresent(identity -> cache(loginNameById, id, identity.loginName(), idVersion));
+        return loaded;
+    }
+
+    /**
+     * Drop a user once the current transaction completes, or now outside of one.
+     * Used by writes that may change the login name, so the id is invalidated too.
+     */
+    public void invalidate(Long id, String loginName) {
+        afterCompletion(() -> {
+            invalidate(loginNameById, id);
+            invalidate(byLoginName, loginName);
+        });
+    }
+
+    /**
+     * Drop users by login name once the current transaction completes, or now
+     * outside of one. Their ids still index the same login names, so they stay.
+     */
+    public void invalidate(Collection<String> loginNames) {
+        if (loginNames.isEmpty()) {
+            return;
+        }
+        List<String> names = List.copyOf(loginNames);
+        afterCompletion(() -> names.forEach(loginName -> invalidate(byLoginName, loginName)));
+    }
+
+    public IdentityCacheStats stats() {
+        CacheStats stats = byLoginName.stats();
+        return new IdentityCacheStats(byLoginName.estimatedSize(),
+            stats.hitCount(), stats.missCount(), stats.hitRate(), stats.evictionCount());
+    }
+
+    /**
+     * Cache a loaded value unless its key was invalidated since the load started.
+     * The version is checked after the put: an invalidation either removes the
+     * value itself or bumped the version before this check.
+     */
+    private <K, V> void cache(Cache<K, V> cache, K key, V value, long version) {
+        cache.put(key, value);
+        if (version(key) != version) {
+            cache.asMap().remove(key, value);
+        }
+    }
+
+    private <K> void invalidate(Cache<K, ?> cache, K key) {
+        versions.incrementAndGet(stripe(key));
+        cache.invalidate(key);
+    }
+
+    private long version(Object key) {
+        return versions.get(stripe(key));
+    }
+
+    private static int stripe(Object key) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (VERSION_STRIPES - 1);
+    }
+
+    /**
+     * Rollbacks invalidate too: the entry may have been loaded from rows the
+     * transaction had already written
+     */
+    private static void afterCompletion(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                action.run();
+            }
+        });
+    }
+}
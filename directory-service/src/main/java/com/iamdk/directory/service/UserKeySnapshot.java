@@ -0,0 +1,160 @@
+package com.iamdk.directory.service;
+
+/**
+ * User Key Snapshot
+ * Compact in-memory copy of the directory's unique keys, used to validate a whole
+ * file without further queries. Keys are stored as 64-bit hashes in open-addressing
+ * tables of primitive longs rather than as strings. A table has 2 to 4 slots of 16
+ * bytes per entry, depending on where the user count falls between powers of two,
+ * so with the login name and email tables each user costs 64 to 128 bytes.
+ */
+public class UserKeySnapshot {
+
+    private final LongTable loginNames;
+    private final LongTable emailOwners;
+
+    public UserKeySnapshot(int expectedUsers) {
+        this.loginNames = new LongTable(expectedUsers);
+        this.emailOwners = new LongTable(expectedUsers);
+    }
+
+    public void add(String loginName, String email) {
+        long login = hash(loginName);
+        loginNames.put(login, 1);
+        if (email != null) {
+            emailOwners.put(hash(email), login);
+        }
+    }
+
+    public boolean containsLoginName(String loginName) {
+        return loginNames.get(hash(loginName)) != 0;
+    }
+
+    /**
+     * Whether the email belongs to an existing user other than loginName
+     */
+    public boolean isEmailTakenByOther(String email, String loginName) {
+        long owner = emailOwners.get(hash(email));
+        return owner != 0 && owner != hash(loginName);
+    }
+
+    public int size() {
+        return loginNames.size();
+    }
+
+    /**
+     * Bytes held by the tables
+     */
+    public long memoryBytes() {
+        return loginNames.memoryBytes() + emailOwners.memoryBytes();
+    }
+
+    /**
+     * 64-bit FNV-1a hash of the string's chars with a final avalanche step.
+     * Never returns 0, which marks empty table slots.
+     */
+    static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h != 0 ? h : 1;
+    }
+
+    /**
+     * Open-addressing hash table from non-zero long keys to non-zero long values
+     */
+    static class LongTable {
+
+        private long[] keys;
+        private long[] values;
+        private int size;
+
+        LongTable(int expectedSize) {
+            int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2 - 1)) << 1;
+            this.keys = new long[capacity];
+            this.values = new long[capacity];
+        }
+
+        /**
+         * Value stored for the key, or 0 if absent
+         */
+        long get(long key) {
+            int mask = keys.length - 1;
+            for (int i = (int) key & mask; keys[i] != 0; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return values[i];
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * Store the value unless the key is already present
+         *
+         * @return the value already stored for the key, or 0 if it was inserted
+         */
+        long putIfAbsent(long key, long value) {
+            int mask = keys.length - 1;
+            int i = (int) key & mask;
+            while (keys[i] != 0) {
+                if (keys[i] == key) {
+                    return values[i];
+                }
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = value;
+            if (++size * 4 > keys.length * 3) {
+                resize();
+            }
+            return 0;
+        }
+
+        void put(long key, long value) {
+            int mask = keys.length - 1;
+            int i = (int) key & mask;
+            while (keys[i] != 0 && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            if (keys[i] == 0) {
+                keys[i] = key;
+                size++;
+            }
+            values[i] = value;
+            if (size * 4 > keys.length * 3) {
+                resize();
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        long memoryBytes() {
+            return (long) keys.length * Long.BYTES * 2;
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            long[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new long[oldValues.length * 2];
+            int mask = keys.length - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldKeys[j] != 0) {
+                    int i = (int) oldKeys[j] & mask;
+                    while (keys[i] != 0) {
+                        i = (i + 1) & mask;
+                    }
+                    keys[i] = oldKeys[j];
+                    values[i] = oldValues[j];
+                }
+            }
+        }
+    }
+}
@@ -1,11 +1,20 @@
 package com.iamdk.directory.service;
 
+import com.iamdk.directory.dto.CursorPage;
+import com.iamdk.directory.dto.admin.UserSummary;
 import com.iamdk.directory.dto.scim.ScimUser;
 import com.iamdk.directory.entity.User;
+import com.iamdk.directory.repository.ProvisioningFingerprintRepository;
+import com.iamdk.directory.repository.UserAttributeRepository;
+import com.iamdk.directory.repository.UserLoginRepository;
 import com.iamdk.directory.repository.UserRepository;
+import com.iamdk.directory.repository.UserWriteLocks;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
@@ -25,12 +34,25 @@ public class UserService {
 
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final InitialPasswordService initialPasswordService;
+    private final ProvisioningFingerprintRepository fingerprintRepository;
+    private final UserWriteLocks userWriteLocks;
+    private final UserSuggestIndex suggestIndex;
+    private final UserIdentityCache identityCache;
+    private final UserLoginRepository loginRepository;
+    private final LastLoginBuffer lastLoginBuffer;
+    private final UserAttributeRepository attributeRepository;
+
+    @Value("${paging.max-page-size:1000}")
+    private int maxPageSize;
 
     /**
-     * Create a new user
+     * Create a new user.
+     * Without a password the user is created without a credential and must reset it.
      */
     @Transactional
     public User createUser(User user) {
+        userWriteLocks.lock(List.of(user.getLoginName()));
         if (userRepository.findByLoginName(user.getLoginName()).isPresent()) {
             throw new IllegalArgumentException("User with loginName '" + user.getLoginName() + "' already exists");
         }
@@ -38,11 +60,23 @@ public class UserService {
             throw new IllegalArgumentException("User with email '" + user.getEmail() + "' already exists");
         }
 
-        user.setPassword(passwordEncoder.encode(user.getPassword()));
+        boolean credentialProvided = user.getPassword() != null && !user.getPassword().isBlank();
+        if (credentialProvided) {
+            user.setPassword(passwordEncoder.encode(user.getPassword()));
+            user.setPasswordResetRequired(false);
+        } else {
+            user.setPassword(User.CREDENTIAL_NOT_SET);
+            user.setPasswordResetRequired(true);
+        }
         user.setCreatedAt(LocalDateTime.now());
         user.setUpdatedAt(LocalDateTime.now());
 
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        if (!credentialProvided) {
+            initialPasswordService.assign(List.of(saved.getLoginName()));
+        }
+        suggestIndex.put(saved);
+        return saved;
     }
 
     /**
@@ -50,6 +84,9 @@ public class UserService {
      */
     @Transactional
     public User updateUser(Long id, User user) {
+        // Lock before loading, so a provisioning chunk writing this user cannot commit in between
+        userRepository.findLoginNameById(id)
+            .ifPresent(loginName -> userWriteLocks.lock(List.of(loginName, user.getLoginName())));
         User existing = getUserById(id);
 
         if (!existing.getLoginName().equals(user.getLoginName()) &&
@@ -62,6 +99,10 @@ public class UserService {
             throw new IllegalArgumentException("User with email '" + user.getEmail() + "' already exists");
         }
 
+        // A manual edit makes the user differ from what any feed last delivered
+        fingerprintRepository.deleteByLoginName(existing.getLoginName());
+        identityCache.invalidate(existing.getId(), existing.getLoginName());
+
         existing.setLoginName(user.getLoginName());
         existing.setEmail(user.getEmail());
         existing.setFirstName(user.getFirstName());
@@ -72,7 +113,9 @@ public class UserService {
         existing.setActive(user.getActive());
         existing.setAttributes(user.getAttributes());
 
-        return userRepository.save(existing);
+        User saved = userRepository.save(existing);
+        suggestIndex.put(saved);
+        return saved;
     }
 
     /**
@@ -91,13 +134,87 @@ public class UserService {
     }
 
     /**
-     * Search users
+     * Search users by terms that must each occur in the login name, email, first or
+     * last name. Matches are ranked by similarity rather than the page's sort.
      */
     public Page<User> searchUsers(String query, Pageable pageable) {
-        if (query == null || query.isBlank()) {
+        SearchTerms terms = SearchTerms.parse(query);
+        if (terms == null) {
             return userRepository.findAll(pageable);
         }
-        return userRepository.findByLoginNameOrEmailContainingIgnoreCase(query, pageable);
+        return userRepository.search(terms.query(), terms.primary(), terms.patterns(),
+            PageRequest.of(pageable.getPageNumber(), pageable.getPageSize()));
+    }
+
+    /**
+     * Search users like {@link #searchUsers}, reading only the columns of the summary
+     */
+    public Page<UserSummary> searchUserSummaries(String query, Pageable pageable) {
+        SearchTerms terms = SearchTerms.parse(query);
+        if (terms == null) {
+            return userRepository.findSummaries(pageable);
+        }
+        return userRepository.searchSummaries(terms.query(), terms.primary(), terms.patterns(),
+            PageRequest.of(pageable.getPageNumber(), pageable.getPageSize()));
+    }
+
+    /**
+     * One keyset page of the users matching an attribute filter, in id order
+     *
+     * @param cursor nextCursor of the previous page, or blank for the first page
+     * @param total  whether to count the matches as well
+     */
+    public CursorPage<UserSummary> findUsersByAttributes(AttributeFilter filter, String cursor, int size,
+                                                         boolean total) {
+        int pageSize = Math.max(1, Math.min(maxPageSize, size));
+        SeekCursor after = SeekCursor.decode(cursor);
+        List<Long> ids = attributeRepository.findIdsAfter(filter, after != null ? after.id() : 0, pageSize + 1);
+        List<UserSummary> users = ids.isEmpty() ? List.of() : userRepository.findSummariesByIds(ids);
+        return SeekCursor.page(users, pageSize, user -> new SeekCursor("", user.getId()),
+            total ? attributeRepository.count(filter) : null);
+    }
+
+    /**
+     * One offset page of the users matching an attribute filter, in id order
+     */
+    public Page<User> searchUsersByAttributes(AttributeFilter filter, Pageable pageable) {
+        List<Long> ids = attributeRepository.findIds(filter, pageable.getOffset(), pageable.getPageSize());
+        List<User> users = ids.isEmpty() ? List.of() : userRepository.findByIdInOrderById(ids);
+        return new PageImpl<>(users, pageable, attributeRepository.count(filter));
+    }
+
+    /**
+     * One keyset page of all users, newest first
+     *
+     * @param cursor nextCursor of the previous page, or blank for the first page
+     * @param total  whether to count the users as well; skipping the count saves a full scan
+     */
+    public CursorPage<UserSummary> listUsersNewestFirst(String cursor, int size, boolean total) {
+        int pageSize = Math.max(1, Math.min(maxPageSize, size));
+        Pageable limit = PageRequest.of(0, pageSize + 1);
+        SeekCursor after = SeekCursor.decode(cursor);
+        List<UserSummary> users = after == null
+            ? userRepository.findNewest(limit)
+            : userRepository.findOlderThan(after.timeValue(), after.id(), limit);
+        return SeekCursor.page(users, pageSize,
+            user -> new SeekCursor(user.getCreatedAt().toString(), user.getId()),
+            total ? userRepository.count() : null);
+    }
+
+    /**
+     * One keyset page of all users, by login name
+     *
+     * @see #listUsersNewestFirst(String, int, boolean)
+     */
+    public CursorPage<User> listUsersByLoginName(String cursor, int size, boolean total) {
+        int pageSize = Math.max(1, Math.min(maxPageSize, size));
+        Pageable limit = PageRequest.of(0, pageSize + 1);
+        SeekCursor after = SeekCursor.decode(cursor);
+        List<User> users = after == null
+            ? userRepository.findOrderedByLoginName(limit)
+            : userRepository.findAfterLoginName(after.value(), limit);
+        return SeekCursor.page(users, pageSize, user -> new SeekCursor(user.getLoginName(), user.getId()),
+            total ? userRepository.count() : null);
     }
 
     /**
@@ -105,8 +222,12 @@ public class UserService {
      */
     @Transactional
     public void deleteUser(Long id) {
+        userRepository.findLoginNameById(id).ifPresent(loginName -> userWriteLocks.lock(List.of(loginName)));
         User user = getUserById(id);
+        fingerprintRepository.deleteByLoginName(user.getLoginName());
         userRepository.delete(user);
+        identityCache.invalidate(id, user.getLoginName());
+        suggestIndex.remove(id);
     }
 
     /**
@@ -116,53 +237,50 @@ public class UserService {
     public void changePassword(Long userId, String newPassword) {
         User user = getUserById(userId);
         user.setPassword(passwordEncoder.encode(newPassword));
+        user.setPasswordResetRequired(false);
         user.setUpdatedAt(LocalDateTime.now());
         userRepository.save(user);
+        identityCache.invalidate(user.getId(), user.getLoginName());
     }
 
     /**
-     * Record failed login attempt
+     * Record failed login attempt.
+     * The count is incremented and the lock decided in one statement, so concurrent
+     * failures all count and the user is locked as soon as the count reaches maxAttempts.
      */
     @Transactional
     public void recordFailedLogin(String loginName, int maxAttempts, int lockoutMinutes) {
-        Optional<User> userOpt = userRepository.findByLoginName(loginName);
-        if (userOpt.isEmpty()) {
+        Optional<Integer> attempts = loginRepository.recordFailedLogin(loginName, maxAttempts,
+            LocalDateTime.now().plusMinutes(lockoutMinutes));
+        if (attempts.isEmpty()) {
             return;
         }
-
-        User user = userOpt.get();
-        user.setFailedLoginAttempts(user.getFailedLoginAttempts() + 1);
-
-        if (user.getFailedLoginAttempts() >= maxAttempts) {
-            user.setLockedUntil(LocalDateTime.now().plusMinutes(lockoutMinutes));
+        if (attempts.get() >= maxAttempts) {
             log.warn("User {} locked due to too many failed attempts", loginName);
         }
-
-        userRepository.save(user);
+        identityCache.invalidate(List.of(loginName));
     }
 
     /**
-     * Record successful login
+     * Record successful login.
+     * Failed attempts are cleared at once; the login time is buffered and written
+     * in batches by {@link LastLoginBuffer}.
      */
     @Transactional
     public void recordSuccessfulLogin(String loginName) {
-        Optional<User> userOpt = userRepository.findByLoginName(loginName);
-        if (userOpt.isEmpty()) {
-            return;
+        if (loginRepository.resetFailedLogins(loginName)) {
+            identityCache.invalidate(List.of(loginName));
         }
-
-        User user = userOpt.get();
-        user.setFailedLoginAttempts(0);
-        user.setLockedUntil(null);
-        user.setLastLoginAt(LocalDateTime.now());
-        userRepository.save(user);
+        lastLoginBuffer.record(loginName, LocalDateTime.now());
     }
 
     /**
-     * Upsert user from provisioning source
+     * Upsert user from provisioning source.
+     * New users are created without a credential; no password is hashed here.
      */
     @Transactional
     public User upsertUser(String loginName, String email, String firstName, String lastName, Boolean active) {
+        userWriteLocks.lock(List.of(loginName));
         Optional<User> userOpt = userRepository.findByLoginName(loginName);
 
         if (userOpt.isPresent()) {
@@ -172,18 +290,25 @@ public class UserService {
             user.setLastName(lastName);
             user.setActive(active != null ? active : true);
             user.setUpdatedAt(LocalDateTime.now());
-            return userRepository.save(user);
+            User saved = userRepository.save(user);
+            identityCache.invalidate(saved.getId(), loginName);
+            suggestIndex.put(saved);
+            return saved;
         } else {
             User newUser = User.builder()
                 .loginName(loginName)
                 .email(email)
-                .password(passwordEncoder.encode("ChangeMe123!"))
+                .password(User.CREDENTIAL_NOT_SET)
+                .passwordResetRequired(true)
                 .firstName(firstName)
                 .lastName(lastName)
                 .active(active != null ? active : true)
                 .failedLoginAttempts(0)
                 .build();
-            return userRepository.save(newUser);
+            User saved = userRepository.save(newUser);
+            initialPasswordService.assign(List.of(loginName));
+            suggestIndex.put(saved);
+            return saved;
         }
     }
 
@@ -209,6 +334,7 @@ public class UserService {
                 .department(user.getDepartment())
                 .title(user.getTitle())
                 .build())
+            .attributes(user.getAttributes())
             .meta(ScimUser.Meta.builder()
                 .resourceType("User")
                 .created(user.getCreatedAt().toString())
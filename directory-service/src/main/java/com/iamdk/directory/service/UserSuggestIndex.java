@@ -0,0 +1,280 @@
+package com.iamdk.directory.service;
+
+import com.iamdk.directory.dto.admin.UserSuggestion;
+import com.iamdk.directory.entity.User;
+import com.iamdk.directory.repository.UserBatchRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * User Suggest Index
+ * In-memory prefix index for typeahead on login name, email and each word of
+ * the display name. Keys live in one sorted array searched by binary search; users
+ * changed since the array was built are added to a small sorted overlay, and
+ * stale entries are skipped by checking them against the user's current values.
+ * Set-based writes, such as provisioning chunks and bulk operations, pass the login
+ * names they wrote, which are read back and added to the overlay. The array is
+ * rebuilt from memory once the overlay grows, and from the database on startup and
+ * periodically, which also picks up writes made by other nodes.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class UserSuggestIndex {
+
+    // Separates a key from the user id in overlay keys, which must be unique
+    private static final char ID_SEPARATOR = '\u0000';
+
+    private final UserBatchRepository userBatchRepository;
+
+    private final Map<Long, UserSuggestion> users = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<String, Long> overlay = new ConcurrentSkipListMap<>();
+    private final AtomicBoolean loading = new AtomicBoolean();
+    private volatile Snapshot snapshot = new Snapshot(new String[0], new long[0]);
+
+    // Changes made while the database is read, replayed on the loaded users
+    private List<Runnable> journal;
+
+    @Value("${users.suggest.max-results:20}")
+    private int maxResults;
+
+    @Value("${users.suggest.max-overlay:10000}")
+    private int maxOverlay;
+
+    /**
+     * Keys sorted with the id of the user each belongs to
+     */
+    private record Snapshot(String[] keys, long[] ids) {
+    }
+
+    /**
+     * Users with a login name, email, display name or last name starting with the
+     * prefix, ignoring case, in key order
+     */
+    public List<UserSuggestion> suggest(String prefix, int limit) {
+        if (prefix == null || prefix.isBlank()) {
+            return List.of();
+        }
+        String key = normalize(prefix.trim());
+        int max = Math.max(1, Math.min(limit, maxResults));
+        Snapshot current = snapshot;
+        Map<Long, UserSuggestion> found = new LinkedHashMap<>();
+
+        int i = lowerBound(current.keys(), key);
+        Iterator<Map.Entry<String, Long>> recent = overlay.tailMap(key).entrySet().iterator();
+        Map.Entry<String, Long> next = recent.hasNext() ? recent.next() : null;
+
+        // Merge both sorted sources in key order until enough users are found
+        while (found.size() < max) {
+            boolean fromSnapshot = i < current.keys().length && current.keys()[i].startsWith(key);
+            boolean fromOverlay = next != null && next.getKey().startsWith(key);
+            if (!fromSnapshot && !fromOverlay) {
+                break;
+            }
+            if (fromSnapshot && (!fromOverlay || current.keys()[i].compareTo(next.getKey()) <= 0)) {
+                collect(current.keys()[i], current.ids()[i], found);
+                i++;
+            } else {
+                String overlayKey = next.getKey();
+                collect(overlayKey.substring(0, overlayKey.lastIndexOf(ID_SEPARATOR)), next.getValue(), found);
+                next = recent.hasNext() ? recent.next() : null;
+            }
+        }
+        return new ArrayList<>(found.values());
+    }
+
+    /**
+     * Add or replace a user once the current transaction commits
+     */
+    public void put(User user) {
+        UserSuggestion suggestion = new UserSuggestion(user.getId(), user.getLoginName(), user.getEmail(),
+            user.getFirstName() + " " + user.getLastName(), Boolean.TRUE.equals(user.getActive()));
+        afterCommit(() -> apply(() -> putNow(suggestion)));
+    }
+
+    /**
+     * Read the users with the given login names in the current transaction, which
+     * wrote them with set-based statements, and add or replace them once it commits
+     */
+    public void update(Collection<String> loginNames) {
+        List<UserSuggestion> changed = userBatchRepository.findSuggestions(loginNames);
+        if (!changed.isEmpty()) {
+            afterCommit(() -> apply(() -> changed.forEach(this::putNow)));
+        }
+    }
+
+    /**
+     * Remove a user once the current transaction commits
+     */
+    public void remove(Long userId) {
+        afterCommit(() -> apply(() -> users.remove(userId)));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        refresh();
+    }
+
+    /**
+     * Rebuild the index from the database, unless a rebuild is already running
+     */
+    @Scheduled(fixedDelayString = "${users.suggest.refresh-interval-ms:600000}",
+               initialDelayString = "${users.suggest.refresh-interval-ms:600000}")
+    public void refresh() {
+        if (!loading.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            synchronized (this) {
+                journal = new ArrayList<>();
+            }
+            Map<Long, UserSuggestion> loaded = new HashMap<>();
+            userBatchRepository.forEachSuggestion(user -> loaded.put(user.id(), user));
+            synchronized (this) {
+                users.keySet().retainAll(loaded.keySet());
+                users.putAll(loaded);
+                journal.forEach(Runnable::run);
+                journal = null;
+                rebuild();
+            }
+            log.debug("Suggest index holds {} users", loaded.size());
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                journal = null;
+            }
+            log.warn("Failed to load the suggest index: {}", e.getMessage());
+        } finally {
+            loading.set(false);
+        }
+    }
+
+    /**
+     * Apply a change now, and again once a running load has read the database,
+     * so the load does not revert it
+     */
+    private synchronized void apply(Runnable change) {
+        change.run();
+        if (journal != null) {
+            journal.add(change);
+        }
+    }
+
+    private void putNow(UserSuggestion suggestion) {
+        users.put(suggestion.id(), suggestion);
+        for (String key : keysOf(suggestion)) {
+            overlay.put(key + ID_SEPARATOR + suggestion.id(), suggestion.id());
+        }
+        // Rebuilding only once the overlay is a fraction of the array keeps large
+        // imports from sorting every key again every few chunks
+        if (overlay.size() > Math.max(maxOverlay, snapshot.keys().length / 4)) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Sort the keys of all users into a new array and clear the overlay
+     */
+    private synchronized void rebuild() {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(users.size() * 4);
+        for (UserSuggestion user : users.values()) {
+            for (String key : keysOf(user)) {
+                entries.add(Map.entry(key, user.id()));
+            }
+        }
+        entries.sort(Map.Entry.comparingByKey());
+        String[] keys = new String[entries.size()];
+        long[] ids = new long[entries.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = entries.get(i).getKey();
+            ids[i] = entries.get(i).getValue();
+        }
+        snapshot = new Snapshot(keys, ids);
+        overlay.clear();
+    }
+
+    /**
+     * Add the user of a key to the results if the key is still one of its current keys
+     */
+    private void collect(String key, long userId, Map<Long, UserSuggestion> found) {
+        if (found.containsKey(userId)) {
+            return;
+        }
+        UserSuggestion user = users.get(userId);
+        if (user != null && keysOf(user).contains(key)) {
+            found.put(userId, user);
+        }
+    }
+
+    /**
+     * Login name, email, and the display name from each of its words on, so
+     * "Anna van Dijk" is found by "anna", "van" and "dijk"
+     */
+    private static List<String> keysOf(UserSuggestion user) {
+        List<String> keys = new ArrayList<>(4);
+        keys.add(normalize(user.loginName()));
+        keys.add(normalize(user.email()));
+        String displayName = normalize(user.displayName());
+        int start = 0;
+        while (start < displayName.length()) {
+            int space = displayName.indexOf(' ', start);
+            if (space != start) {
+                keys.add(displayName.substring(start));
+            }
+            if (space < 0) {
+                break;
+            }
+            start = space + 1;
+        }
+        return keys;
+    }
+
+    private static String normalize(String value) {
+        return value != null ? value.toLowerCase(Locale.ROOT) : "";
+    }
+
+    private static int lowerBound(String[] keys, String key) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
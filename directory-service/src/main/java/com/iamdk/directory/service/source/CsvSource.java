@@ -0,0 +1,52 @@
+package com.iamdk.directory.service.source;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+/**
+ * CSV Source
+ * Reads a CSV file with a header record sequentially
+ */
+public class CsvSource extends FileSource {
+
+    private final CSVParser parser;
+    private final Iterator<CSVRecord> records;
+
+    public CsvSource(Path file) throws IOException {
+        super(file);
+        this.parser = CSVFormat.DEFAULT
+            .withHeader()
+            .withIgnoreHeaderCase()
+            .withTrim()
+            .parse(new BufferedReader(new InputStreamReader(inputStream(), StandardCharsets.UTF_8)));
+        this.records = parser.iterator();
+    }
+
+    @Override
+    public SourceRecord next() {
+        if (!records.hasNext()) {
+            return null;
+        }
+        CSVRecord record = records.next();
+        return SourceRecord.of(record.getRecordNumber(), record);
+    }
+
+    @Override
+    public String[] header() {
+        return parser.getHeaderNames().toArray(new String[0]);
+    }
+
+    @Override
+    public void close() throws IOException {
+        parser.close();
+        super.close();
+    }
+}
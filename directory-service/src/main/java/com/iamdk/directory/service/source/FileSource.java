@@ -0,0 +1,45 @@
+package com.iamdk.directory.service.source;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * File Source
+ * Base for sources read sequentially from a spooled file, reporting progress
+ * from the channel position
+ */
+abstract class FileSource implements ProvisioningSource {
+
+    private final FileChannel channel;
+    private final long size;
+
+    protected FileSource(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.size = Math.max(1, channel.size());
+    }
+
+    /**
+     * Stream over the file. Closing it closes the channel.
+     */
+    protected InputStream inputStream() {
+        return Channels.newInputStream(channel);
+    }
+
+    @Override
+    public double fractionDone() {
+        try {
+            return (double) channel.position() / size;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
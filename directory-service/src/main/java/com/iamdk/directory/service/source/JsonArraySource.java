@@ -0,0 +1,45 @@
+package com.iamdk.directory.service.source;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * JSON Array Source
+ * Streams the objects of a JSON array, either the whole document or the first
+ * array-valued field of a top-level object, with Jackson's token parser
+ */
+public class JsonArraySource extends FileSource {
+
+    private final JsonParser parser;
+    private long rowNumber;
+
+    public JsonArraySource(Path file, JsonFactory jsonFactory) throws IOException {
+        super(file);
+        this.parser = jsonFactory.createParser(inputStream());
+        JsonRecords.enterRecordArray(parser);
+    }
+
+    @Override
+    public SourceRecord next() throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == null || token == JsonToken.END_ARRAY) {
+            return null;
+        }
+        rowNumber++;
+        if (token != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return SourceRecord.malformed(rowNumber, "not a JSON object");
+        }
+        return SourceRecord.of(rowNumber, JsonRecords.readObject(parser));
+    }
+
+    @Override
+    public void close() throws IOException {
+        parser.close();
+        super.close();
+    }
+}
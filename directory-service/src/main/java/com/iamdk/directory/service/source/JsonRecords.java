@@ -0,0 +1,73 @@
+package com.iamdk.directory.service.source;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+ * JSON Records
+ * Reads a JSON object from a token stream into a flat field map
+ */
+final class JsonRecords {
+
+    private JsonRecords() {
+    }
+
+    /**
+     * Read the object the parser is positioned on (at START_OBJECT).
+     * Scalar values are kept as text and arrays of scalars are joined into one
+     * multi-valued field; nested objects are skipped.
+     */
+    static Map<String, String> readObject(JsonParser parser) throws IOException {
+        Map<String, String> fields = new HashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (value == JsonToken.START_OBJECT) {
+                parser.skipChildren();
+            } else if (value == JsonToken.START_ARRAY) {
+                fields.put(name, readScalarArray(parser));
+            } else if (value != JsonToken.VALUE_NULL) {
+                fields.put(name, parser.getValueAsString());
+            }
+        }
+        return fields;
+    }
+
+    private static String readScalarArray(JsonParser parser) throws IOException {
+        StringJoiner values = new StringJoiner(SourceRecord.MULTI_VALUE_SEPARATOR);
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+            if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                parser.skipChildren();
+            } else if (token != JsonToken.VALUE_NULL) {
+                values.add(parser.getValueAsString());
+            }
+        }
+        return values.toString();
+    }
+
+    /**
+     * Advance from the start of a document to the first element of its record array:
+     * either the document itself or the first array-valued field of a top-level object
+     */
+    static void enterRecordArray(JsonParser parser) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == JsonToken.START_ARRAY) {
+            return;
+        }
+        if (token == JsonToken.START_OBJECT) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                if (parser.nextToken() == JsonToken.START_ARRAY) {
+                    return;
+                }
+                parser.skipChildren();
+            }
+        }
+        throw new IllegalArgumentException("JSON document has no array of records");
+    }
+}
@@ -0,0 +1,57 @@
+package com.iamdk.directory.service.source;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * NDJSON Source
+ * Reads one JSON object per line. Lines are parsed separately so a malformed
+ * line rejects only its own record; row numbers are line numbers.
+ */
+public class NdjsonSource extends FileSource {
+
+    private final JsonFactory jsonFactory;
+    private final BufferedReader reader;
+    private long lineNumber;
+
+    public NdjsonSource(Path file, JsonFactory jsonFactory) throws IOException {
+        super(file);
+        this.jsonFactory = jsonFactory;
+        this.reader = new BufferedReader(new InputStreamReader(inputStream(), StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public SourceRecord next() throws IOException {
+        String line;
+        do {
+            line = reader.readLine();
+            if (line == null) {
+                return null;
+            }
+            lineNumber++;
+        } while (line.isBlank());
+
+        try (JsonParser parser = jsonFactory.createParser(line)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return SourceRecord.malformed(lineNumber, "not a JSON object");
+            }
+            return SourceRecord.of(lineNumber, JsonRecords.readObject(parser));
+        } catch (JsonProcessingException e) {
+            return SourceRecord.malformed(lineNumber, "malformed JSON: " + e.getOriginalMessage());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+        super.close();
+    }
+}
@@ -0,0 +1,30 @@
+package com.iamdk.directory.service.source;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Provisioning Source
+ * A stream of user records read one at a time, so a source never has to fit in memory
+ */
+public interface ProvisioningSource extends Closeable {
+
+    /**
+     * Next record, or null at the end of the source
+     */
+    SourceRecord next() throws IOException;
+
+    /**
+     * Column names if the records have field positions, or null if they are read by name
+     */
+    default String[] header() {
+        return null;
+    }
+
+    /**
+     * Share of the source consumed so far (0..1), or 0 if it is unknown
+     */
+    default double fractionDone() {
+        return 0;
+    }
+}
@@ -0,0 +1,73 @@
+package com.iamdk.directory.service.source;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.iamdk.directory.entity.ProvisioningJob;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Provisioning Source Factory
+ * Opens the source a job reads from, by its source type
+ */
+@Component
+public class ProvisioningSourceFactory {
+
+    private final JsonFactory jsonFactory;
+    private final HttpClient httpClient;
+
+    @Value("${provisioning.rest.page-size:500}")
+    private int pageSize;
+
+    @Value("${provisioning.rest.first-page:0}")
+    private int firstPage;
+
+    @Value("${provisioning.rest.page-param:page}")
+    private String pageParam;
+
+    @Value("${provisioning.rest.size-param:size}")
+    private String sizeParam;
+
+    @Value("${provisioning.rest.items-field:items}")
+    private String itemsField;
+
+    @Value("${provisioning.rest.next-field:next}")
+    private String nextField;
+
+    @Value("${provisioning.rest.authorization:}")
+    private String authorization;
+
+    @Value("${provisioning.rest.request-timeout-ms:30000}")
+    private long requestTimeoutMs;
+
+    public ProvisioningSourceFactory(ObjectMapper objectMapper,
+                                     @Value("${provisioning.rest.connect-timeout-ms:5000}") long connectTimeoutMs) {
+        this.jsonFactory = objectMapper.getFactory();
+        this.httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+    }
+
+    /**
+     * Open the job's source
+     *
+     * @param spoolFile the uploaded file, or null for sources that are pulled
+     */
+    public ProvisioningSource open(ProvisioningJob job, Path spoolFile) throws IOException {
+        return switch (job.getSourceType()) {
+            case CSV -> new CsvSource(spoolFile);
+            case JSON -> new JsonArraySource(spoolFile, jsonFactory);
+            case NDJSON -> new NdjsonSource(spoolFile, jsonFactory);
+            case REST -> new RestPageSource(httpClient, jsonFactory, new RestPageSource.Settings(
+                URI.create(job.getSourceLocation()), pageSize, firstPage, pageParam, sizeParam,
+                itemsField, nextField, authorization, Duration.ofMillis(requestTimeoutMs)));
+        };
+    }
+}
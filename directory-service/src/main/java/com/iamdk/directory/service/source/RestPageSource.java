@@ -0,0 +1,194 @@
+package com.iamdk.directory.service.source;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * REST Page Source
+ * Pulls user records from a paged REST endpoint. Each page is a JSON array, or an
+ * object holding the records under the items field and optionally the URL of the
+ * next page under the next field. Without a next link pages are requested by number
+ * until a short or empty page. The next page is fetched while the current one is
+ * being consumed, so the request latency overlaps with writing.
+ * <p>
+ * Next links may be relative to the page they came from. The Authorization header
+ * is only sent to the scheme, host and port of the configured endpoint, never to
+ * another server a next link names.
+ */
+public class RestPageSource implements ProvisioningSource {
+
+    /**
+     * Endpoint and paging settings
+     *
+     * @param authorization value of the Authorization header, or null
+     */
+    public record Settings(
+        URI uri,
+        int pageSize,
+        int firstPage,
+        String pageParam,
+        String sizeParam,
+        String itemsField,
+        String nextField,
+        String authorization,
+        Duration requestTimeout
+    ) {}
+
+    /**
+     * @param nextNumber number of the next page if its URI was built from the page
+     *                   number, or -1 if it is a link from the response
+     */
+    private record Page(List<Map<String, String>> records, URI next, int nextNumber) {}
+
+    private final HttpClient httpClient;
+    private final JsonFactory jsonFactory;
+    private final Settings settings;
+
+    private CompletableFuture<Page> pending;
+    private Iterator<Map<String, String>> current;
+    private long rowNumber;
+
+    public RestPageSource(HttpClient httpClient, JsonFactory jsonFactory, Settings settings) {
+        this.httpClient = httpClient;
+        this.jsonFactory = jsonFactory;
+        this.settings = settings;
+        this.pending = fetch(pageUri(settings.firstPage()), settings.firstPage());
+    }
+
+    @Override
+    public SourceRecord next() throws IOException {
+        while (current == null || !current.hasNext()) {
+            if (pending == null) {
+                return null;
+            }
+            Page page = await(pending);
+            // Request the next page before the caller starts writing this one
+            pending = page.next() != null ? fetch(page.next(), page.nextNumber()) : null;
+            current = page.records().iterator();
+        }
+        return SourceRecord.of(++rowNumber, current.next());
+    }
+
+    @Override
+    public void close() {
+        if (pending != null) {
+            pending.cancel(true);
+        }
+    }
+
+    private CompletableFuture<Page> fetch(URI uri, int pageNumber) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri)
+            .timeout(settings.requestTimeout())
+            .header("Accept", "application/json")
+            .GET();
+        if (settings.authorization() != null && !settings.authorization().isBlank() && sameOrigin(uri, settings.uri())) {
+            request.header("Authorization", settings.authorization());
+        }
+
+        return httpClient.sendAsync(request.build(), HttpResponse.BodyHandlers.ofInputStream())
+            .thenApply(response -> {
+                try (InputStream body = response.body()) {
+                    if (response.statusCode() / 100 != 2) {
+                        throw new IOException("GET " + uri + " returned HTTP " + response.statusCode());
+                    }
+                    return readPage(body, uri, pageNumber);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+    }
+
+    /**
+     * @param uri URI the page was read from, which relative next links are resolved against
+     */
+    private Page readPage(InputStream body, URI uri, int pageNumber) throws IOException {
+        List<Map<String, String>> records = new ArrayList<>();
+        URI next = null;
+
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_ARRAY) {
+                readRecords(parser, records);
+            } else if (token == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.currentName();
+                    JsonToken value = parser.nextToken();
+                    if (name.equals(settings.itemsField()) && value == JsonToken.START_ARRAY) {
+                        readRecords(parser, records);
+                    } else if (name.equals(settings.nextField()) && value == JsonToken.VALUE_STRING) {
+                        next = uri.resolve(parser.getText());
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                throw new IOException("Expected a JSON array or object from " + settings.uri());
+            }
+        }
+
+        // Pages requested through a next link follow the link rather than numbering
+        int nextNumber = -1;
+        if (next == null && pageNumber >= 0 && records.size() >= settings.pageSize()) {
+            nextNumber = pageNumber + 1;
+            next = pageUri(nextNumber);
+        }
+        return new Page(records, records.isEmpty() ? null : next, nextNumber);
+    }
+
+    private void readRecords(JsonParser parser, List<Map<String, String>> records) throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+            if (token == JsonToken.START_OBJECT) {
+                records.add(JsonRecords.readObject(parser));
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private URI pageUri(int pageNumber) {
+        String base = settings.uri().toString();
+        return URI.create(base + (base.contains("?") ? "&" : "?")
+            + settings.pageParam() + "=" + pageNumber + "&" + settings.sizeParam() + "=" + settings.pageSize());
+    }
+
+    private static boolean sameOrigin(URI a, URI b) {
+        return a.getScheme() != null && a.getScheme().equalsIgnoreCase(b.getScheme())
+            && a.getHost() != null && a.getHost().equalsIgnoreCase(b.getHost())
+            && portOf(a) == portOf(b);
+    }
+
+    private static int portOf(URI uri) {
+        if (uri.getPort() != -1) {
+            return uri.getPort();
+        }
+        return "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+    }
+
+    private static Page await(CompletableFuture<Page> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            throw new IOException("REST source request failed: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.iamdk.directory.service.source;
+
+import org.apache.commons.csv.CSVRecord;
+
+import java.util.Map;
+
+/**
+ * Source Record
+ * One user record of a provisioning source, with its fields as strings
+ */
+public interface SourceRecord {
+
+    /**
+     * Separator of the values of a multi-valued field such as groups
+     */
+    String MULTI_VALUE_SEPARATOR = ";";
+
+    /**
+     * 1-based position of the record in its source
+     */
+    long rowNumber();
+
+    /**
+     * Value of a field, or null if the record does not have it
+     */
+    String get(String field);
+
+    /**
+     * Value of a field by position, or null if the record does not have it. Only
+     * records of sources with a header have positions; mapping plans are compiled
+     * by field name for all other sources.
+     */
+    String get(int index);
+
+    /**
+     * Why the record could not be read, or null if it was read
+     */
+    default String error() {
+        return null;
+    }
+
+    static SourceRecord of(long rowNumber, Map<String, String> fields) {
+        return new MapRecord(rowNumber, fields);
+    }
+
+    static SourceRecord of(long rowNumber, CSVRecord record) {
+        return new CsvRecord(rowNumber, record);
+    }
+
+    static SourceRecord malformed(long rowNumber, String error) {
+        return new MalformedRecord(rowNumber, error);
+    }
+
+    record MapRecord(long rowNumber, Map<String, String> fields) implements SourceRecord {
+
+        @Override
+        public String get(String field) {
+            return fields.get(field);
+        }
+
+        @Override
+        public String get(int index) {
+            return null; // Named fields only
+        }
+    }
+
+    record CsvRecord(long rowNumber, CSVRecord record) implements SourceRecord {
+
+        @Override
+        public String get(String field) {
+            return record.isSet(field) ? record.get(field) : null;
+        }
+
+        @Override
+        public String get(int index) {
+            return index < record.size() ? record.get(index) : null;
+        }
+    }
+
+    record MalformedRecord(long rowNumber, String error) implements SourceRecord {
+
+        @Override
+        public String get(String field) {
+            return null;
+        }
+
+        @Override
+        public String get(int index) {
+            return null;
+        }
+    }
+}
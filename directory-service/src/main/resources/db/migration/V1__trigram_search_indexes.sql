@@ -0,0 +1,10 @@
+-- Substring search over users and groups (UserRepository.search, GroupRepository.search).
+-- pg_trgm GIN indexes serve LIKE '%term%' without scanning the table.
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+CREATE INDEX IF NOT EXISTS idx_users_login_name_trgm ON users USING gin (lower(login_name) gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_users_email_trgm ON users USING gin (lower(email) gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_users_first_name_trgm ON users USING gin (lower(first_name) gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_users_last_name_trgm ON users USING gin (lower(last_name) gin_trgm_ops);
+
+CREATE INDEX IF NOT EXISTS idx_groups_name_trgm ON groups USING gin (lower(name) gin_trgm_ops);
@@ -0,0 +1,4 @@
+-- Attribute queries (UserAttributeRepository) compile to attributes @> '{"name": value}'.
+-- jsonb_path_ops indexes only support containment and jsonpath matches, and are
+-- smaller and faster for them than the default jsonb_ops.
+CREATE INDEX IF NOT EXISTS idx_users_attributes_path ON users USING gin (attributes jsonb_path_ops);
@@ -0,0 +1,31 @@
+-- Users, groups, OAuth clients and provisioning jobs take ids from pooled sequences
+-- (allocationSize 50 on the entities, SequenceIdAllocator for JDBC inserts): each
+-- value drawn reserves the 50 ids ending at it. Hibernate creates the sequences on
+-- new databases; on databases created with identity columns they are created here.
+-- The sequences are moved past the existing ids, and the identity columns become
+-- plain columns defaulting to the sequence so nothing else draws ids from the old
+-- identity sequences.
+
+CREATE SEQUENCE IF NOT EXISTS users_seq INCREMENT BY 50;
+ALTER SEQUENCE users_seq INCREMENT BY 50;
+SELECT setval('users_seq', (SELECT COALESCE(max(id), 0) FROM users) + 50);
+ALTER TABLE users ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE users ALTER COLUMN id SET DEFAULT nextval('users_seq');
+
+CREATE SEQUENCE IF NOT EXISTS groups_seq INCREMENT BY 50;
+ALTER SEQUENCE groups_seq INCREMENT BY 50;
+SELECT setval('groups_seq', (SELECT COALESCE(max(id), 0) FROM groups) + 50);
+ALTER TABLE groups ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE groups ALTER COLUMN id SET DEFAULT nextval('groups_seq');
+
+CREATE SEQUENCE IF NOT EXISTS oauth_clients_seq INCREMENT BY 50;
+ALTER SEQUENCE oauth_clients_seq INCREMENT BY 50;
+SELECT setval('oauth_clients_seq', (SELECT COALESCE(max(id), 0) FROM oauth_clients) + 50);
+ALTER TABLE oauth_clients ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE oauth_clients ALTER COLUMN id SET DEFAULT nextval('oauth_clients_seq');
+
+CREATE SEQUENCE IF NOT EXISTS provisioning_jobs_seq INCREMENT BY 50;
+ALTER SEQUENCE provisioning_jobs_seq INCREMENT BY 50;
+SELECT setval('provisioning_jobs_seq', (SELECT COALESCE(max(id), 0) FROM provisioning_jobs) + 50);
+ALTER TABLE provisioning_jobs ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE provisioning_jobs ALTER COLUMN id SET DEFAULT nextval('provisioning_jobs_seq');
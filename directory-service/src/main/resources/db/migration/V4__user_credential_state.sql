@@ -0,0 +1,12 @@
+-- Hibernate adds password_reset_required before this runs, but on a populated table
+-- an older mapping without a default could not add it as not null, so add it here too.
+ALTER TABLE users ADD COLUMN IF NOT EXISTS password_reset_required boolean NOT NULL DEFAULT false;
+
+-- password_reset_required was nullable; rows written before it was always set are
+-- given false, as the entity defaulted to.
+UPDATE users SET password_reset_required = false WHERE password_reset_required IS NULL;
+ALTER TABLE users ALTER COLUMN password_reset_required SET DEFAULT false;
+ALTER TABLE users ALTER COLUMN password_reset_required SET NOT NULL;
+
+-- Users without a credential, which InitialPasswordService sweeps in id order
+CREATE INDEX IF NOT EXISTS idx_users_credential_not_set ON users (id) WHERE password = '';
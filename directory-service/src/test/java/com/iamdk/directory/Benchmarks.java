@@ -0,0 +1,69 @@
+package com.iamdk.directory;
+
+import com.iamdk.directory.dto.provisioning.ProvisioningRow;
+import com.iamdk.directory.repository.UserBatchRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Benchmarks
+ * Timing and seeding shared by the benchmarks run with gradle benchmark. Sizes and
+ * iteration counts come from -Dbenchmark.* properties.
+ */
+public final class Benchmarks {
+
+    public static final int USERS = Integer.getInteger("benchmark.users", 100_000);
+    public static final int WARMUP = Integer.getInteger("benchmark.warmup", 3);
+    public static final int ITERATIONS = Integer.getInteger("benchmark.iterations", 5);
+
+    private Benchmarks() {
+    }
+
+    /**
+     * Run an action through the warm-up and measured iterations and print its timings
+     *
+     * @param units what one run processes, for the per-second rate, or 0 to print no rate
+     * @return the best time of one run, in nanoseconds
+     */
+    public static long time(String name, long units, Runnable action) {
+        for (int i = 0; i < WARMUP; i++) {
+            action.run();
+        }
+        long best = Long.MAX_VALUE;
+        long total = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            action.run();
+            long elapsed = System.nanoTime() - start;
+            best = Math.min(best, elapsed);
+            total += elapsed;
+        }
+        String rate = units > 0 ? String.format("  %,12.0f /s", units / (best / 1e9)) : "";
+        System.out.printf("%-40s best %,10.2f ms  mean %,10.2f ms%s%n", name, best / 1e6,
+            total / 1e6 / ITERATIONS, rate);
+        return best;
+    }
+
+    /**
+     * Users user0 to user(count - 1), with names and attributes as provisioning writes them
+     */
+    public static List<ProvisioningRow> users(int from, int count) {
+        List<ProvisioningRow> rows = new ArrayList<>(count);
+        for (int i = from; i < from + count; i++) {
+            rows.add(new ProvisioningRow(i + 1, "user" + i, "user" + i + "@example.com", "First" + i, "Last" + i,
+                true, null, Map.of("department", "dept" + (i % 50), "costCenter", String.valueOf(4000 + i % 100))));
+        }
+        return rows;
+    }
+
+    /**
+     * Insert {@link #USERS} users in batches of 1000
+     */
+    public static void seedUsers(UserBatchRepository userBatchRepository) {
+        for (int from = 0; from < USERS; from += 1000) {
+            userBatchRepository.upsertUsers(users(from, Math.min(1000, USERS - from)));
+        }
+    }
+}
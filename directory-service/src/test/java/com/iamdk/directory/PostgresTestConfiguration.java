@@ -0,0 +1,22 @@
+package com.iamdk.directory;
+
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Bean;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+/**
+ * Postgres Test Configuration
+ * The database of repository tests: the image docker-compose runs, started once
+ * for every test class sharing the context. The queries under test use Postgres
+ * features (jsonb, pg_trgm, row value comparisons) that no embedded database has.
+ */
+@TestConfiguration(proxyBeanMethods = false)
+public class PostgresTestConfiguration {
+
+    @Bean
+    @ServiceConnection
+    PostgreSQLContainer<?> postgres() {
+        return new PostgreSQLContainer<>("postgres:15-alpine");
+    }
+}
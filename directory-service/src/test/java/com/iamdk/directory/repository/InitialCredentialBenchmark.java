@@ -0,0 +1,119 @@
+package com.iamdk.directory.repository;
+
+import com.iamdk.directory.Benchmarks;
+import com.iamdk.directory.PostgresTestConfiguration;
+import com.iamdk.directory.config.SchemaMigrationConfig;
+import com.iamdk.directory.dto.provisioning.ProvisioningRow;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.json.AutoConfigureJson;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Times importing new users with a BCrypt hash of the initial password computed for
+ * each row on the importing thread, as before users were created without a
+ * credential, against the credential-less JDBC batch upsert, in chunks of 1000.
+ * The upsert imports benchmark.import.users users (default 50k). BCrypt takes tens of
+ * milliseconds a row, so the hashing path imports benchmark.bcrypt.users (default
+ * 500) and its time for the full import is projected from that; set both to 50000
+ * to measure it outright. Every run starts from an empty table.
+ * Run with gradle benchmark.
+ */
+@Tag("benchmark")
+@DataJpaTest(showSql = false,
+    properties = "spring.datasource.hikari.data-source-properties.reWriteBatchedInserts=true")
+@AutoConfigureJson
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({PostgresTestConfiguration.class, SchemaMigrationConfig.class, UserAttributeRepository.class,
+    SequenceIdAllocator.class, UserBatchRepository.class})
+@Testcontainers(disabledWithoutDocker = true)
+class InitialCredentialBenchmark {
+
+    private static final int USERS = Integer.getInteger("benchmark.import.users", 50_000);
+    private static final int HASHED_USERS = Integer.getInteger("benchmark.bcrypt.users", 500);
+    private static final int CHUNK_SIZE = 1000;
+    private static final String INITIAL_PASSWORD = "ChangeMe123!";
+
+    private static final String UPSERT_WITH_HASH_SQL = """
+        INSERT INTO users (id, login_name, email, password, password_reset_required, first_name, last_name,
+                           active, failed_login_attempts, created_at, updated_at)
+        VALUES (nextval('users_seq'), ?, ?, ?, false, ?, ?, true, 0, now(), now())
+        ON CONFLICT (login_name) DO UPDATE SET
+            email = EXCLUDED.email,
+            first_name = EXCLUDED.first_name,
+            last_name = EXCLUDED.last_name,
+            updated_at = EXCLUDED.updated_at
+        """;
+
+    @Autowired
+    private UserBatchRepository userBatchRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // The encoder SecurityConfig configures
+    private final PasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
+
+    @Test
+    void hashingPerRowAgainstCredentialLessUpsert() {
+        System.out.printf("%,d users in chunks of %d, %,d of them with hashing%n", USERS, CHUNK_SIZE, HASHED_USERS);
+
+        List<List<ProvisioningRow>> chunks = chunks(USERS);
+        Benchmarks.time("credential-less upsert", USERS, () -> {
+            truncate();
+            chunks.forEach(userBatchRepository::upsertUsers);
+        });
+
+        List<List<ProvisioningRow>> hashedChunks = chunks(HASHED_USERS);
+        long best = Benchmarks.time("BCrypt per row", HASHED_USERS, () -> {
+            truncate();
+            for (List<ProvisioningRow> chunk : hashedChunks) {
+                List<String> hashes = chunk.stream().map(row -> passwordEncoder.encode(INITIAL_PASSWORD)).toList();
+                jdbcTemplate.batchUpdate(UPSERT_WITH_HASH_SQL, new BatchPreparedStatementSetter() {
+
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        ProvisioningRow row = chunk.get(i);
+                        ps.setString(1, row.loginName());
+                        ps.setString(2, row.email());
+                        ps.setString(3, hashes.get(i));
+                        ps.setString(4, row.firstName());
+                        ps.setString(5, row.lastName());
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return chunk.size();
+                    }
+                });
+            }
+        });
+        System.out.printf("%-40s projected %,10.0f ms for %,d users%n", "BCrypt per row",
+            best / 1e6 * USERS / HASHED_USERS, USERS);
+    }
+
+    private void truncate() {
+        jdbcTemplate.execute("TRUNCATE users CASCADE");
+    }
+
+    private static List<List<ProvisioningRow>> chunks(int users) {
+        List<List<ProvisioningRow>> chunks = new ArrayList<>();
+        for (int from = 0; from < users; from += CHUNK_SIZE) {
+            chunks.add(Benchmarks.users(from, Math.min(CHUNK_SIZE, users - from)));
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,102 @@
+package com.iamdk.directory.repository;
+
+import com.iamdk.directory.PostgresTestConfiguration;
+import com.iamdk.directory.config.SchemaMigrationConfig;
+import com.iamdk.directory.dto.provisioning.ProvisioningRow;
+import com.iamdk.directory.entity.User;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.json.AutoConfigureJson;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest
+@AutoConfigureJson
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({PostgresTestConfiguration.class, SchemaMigrationConfig.class, UserAttributeRepository.class,
+    SequenceIdAllocator.class, UserBatchRepository.class})
+@Testcontainers(disabledWithoutDocker = true)
+class SequenceIdAllocatorTest {
+
+    @Autowired
+    private SequenceIdAllocator idAllocator;
+
+    @Autowired
+    private UserBatchRepository userBatchRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void allocatesWholeBlocksEndingAtEachSequenceValue() {
+        long[] ids = idAllocator.allocate("users_seq", 120);
+
+        assertEquals(120, ids.length);
+        assertEquals(120, Arrays.stream(ids).distinct().count());
+        assertTrue(ids[0] > 0);
+        // Three values were drawn, each reserving the contiguous block of ids ending at it
+        for (int block = 0; block < 3; block++) {
+            int first = block * SequenceIdAllocator.ALLOCATION_SIZE;
+            for (int i = first + 1; i < Math.min(ids.length, first + SequenceIdAllocator.ALLOCATION_SIZE); i++) {
+                assertEquals(ids[i - 1] + 1, ids[i], "ids of block " + block + " are contiguous");
+            }
+        }
+        // The unused end of the last block stays reserved
+        long drawn = jdbcTemplate.queryForObject("SELECT last_value FROM users_seq", Long.class);
+        assertEquals(ids[100] + SequenceIdAllocator.ALLOCATION_SIZE - 1, drawn);
+    }
+
+    @Test
+    void allocatesNothingForNoRows() {
+        assertEquals(0, idAllocator.allocate("users_seq", 0).length);
+    }
+
+    @Test
+    void jdbcAndHibernateIdsNeverCollide() {
+        List<Long> ids = new ArrayList<>();
+        ids.add(save("before").getId());
+
+        List<ProvisioningRow> rows = new ArrayList<>();
+        for (int i = 0; i < 70; i++) {
+            rows.add(new ProvisioningRow(i + 1, "jdbc" + i, "jdbc" + i + "@example.com", "First", "Last",
+                true, null, null));
+        }
+        userBatchRepository.upsertUsers(rows);
+        ids.addAll(userBatchRepository.findUserIds(rows.stream().map(ProvisioningRow::loginName).toList()).values());
+
+        // Enough entities to use up Hibernate's block and draw another
+        for (int i = 0; i < 60; i++) {
+            ids.add(save("after" + i).getId());
+        }
+
+        Set<Long> distinct = new HashSet<>(ids);
+        assertEquals(131, ids.size());
+        assertEquals(ids.size(), distinct.size());
+        assertEquals(131L, userRepository.count());
+    }
+
+    private User save(String loginName) {
+        return userRepository.saveAndFlush(User.builder()
+            .loginName(loginName)
+            .email(loginName + "@example.com")
+            .password("hash")
+            .firstName("First")
+            .lastName("Last")
+            .build());
+    }
+}
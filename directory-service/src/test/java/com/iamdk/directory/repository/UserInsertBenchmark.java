@@ -0,0 +1,107 @@
+package com.iamdk.directory.repository;
+
+import com.iamdk.directory.Benchmarks;
+import com.iamdk.directory.PostgresTestConfiguration;
+import com.iamdk.directory.config.SchemaMigrationConfig;
+import com.iamdk.directory.dto.provisioning.ProvisioningRow;
+import com.iamdk.directory.entity.User;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.json.AutoConfigureJson;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Times inserting {@link Benchmarks#USERS} users (default 100k) through the JDBC batch
+ * upsert with pooled sequence ids, through Hibernate with JDBC batching, and row by
+ * row, one statement and round trip per user as identity ids forced Hibernate to.
+ * Every run starts from an empty table; the TRUNCATE is part of the timing.
+ * Run with gradle benchmark; the driver rewrites batches as in application.yml.
+ */
+@Tag("benchmark")
+@DataJpaTest(showSql = false,
+    properties = "spring.datasource.hikari.data-source-properties.reWriteBatchedInserts=true")
+@AutoConfigureJson
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({PostgresTestConfiguration.class, SchemaMigrationConfig.class, UserAttributeRepository.class,
+    SequenceIdAllocator.class, UserBatchRepository.class})
+@Testcontainers(disabledWithoutDocker = true)
+class UserInsertBenchmark {
+
+    private static final int CHUNK_SIZE = 1000;
+
+    private static final String INSERT_SQL = """
+        INSERT INTO users (id, login_name, email, password, password_reset_required, first_name, last_name,
+                           active, failed_login_attempts, created_at, updated_at)
+        VALUES (nextval('users_seq'), ?, ?, '', true, ?, ?, true, 0, now(), now())
+        """;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserBatchRepository userBatchRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Test
+    void batchedAgainstRowByRowInserts() {
+        List<List<ProvisioningRow>> chunks = new ArrayList<>();
+        for (int from = 0; from < Benchmarks.USERS; from += CHUNK_SIZE) {
+            chunks.add(Benchmarks.users(from, Math.min(CHUNK_SIZE, Benchmarks.USERS - from)));
+        }
+        System.out.printf("%,d users in chunks of %d%n", Benchmarks.USERS, CHUNK_SIZE);
+
+        Benchmarks.time("JDBC batch upsert", Benchmarks.USERS, () -> {
+            truncate();
+            chunks.forEach(userBatchRepository::upsertUsers);
+        });
+
+        Benchmarks.time("Hibernate, batched at flush", Benchmarks.USERS, () -> {
+            truncate();
+            for (List<ProvisioningRow> chunk : chunks) {
+                userRepository.saveAll(chunk.stream().map(UserInsertBenchmark::toUser).toList());
+                entityManager.flush();
+                entityManager.clear();
+            }
+        });
+
+        Benchmarks.time("row by row", Benchmarks.USERS, () -> {
+            truncate();
+            for (List<ProvisioningRow> chunk : chunks) {
+                for (ProvisioningRow row : chunk) {
+                    jdbcTemplate.update(INSERT_SQL, row.loginName(), row.email(), row.firstName(), row.lastName());
+                }
+            }
+        });
+    }
+
+    private void truncate() {
+        entityManager.clear();
+        jdbcTemplate.execute("TRUNCATE users CASCADE");
+    }
+
+    private static User toUser(ProvisioningRow row) {
+        return User.builder()
+            .loginName(row.loginName())
+            .email(row.email())
+            .password(User.CREDENTIAL_NOT_SET)
+            .passwordResetRequired(true)
+            .firstName(row.firstName())
+            .lastName(row.lastName())
+            .active(row.active())
+            .build();
+    }
+}
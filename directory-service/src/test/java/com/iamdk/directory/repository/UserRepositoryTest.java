@@ -0,0 +1,126 @@
+package com.iamdk.directory.repository;
+
+import com.iamdk.directory.PostgresTestConfiguration;
+import com.iamdk.directory.config.SchemaMigrationConfig;
+import com.iamdk.directory.dto.admin.UserSummary;
+import com.iamdk.directory.entity.User;
+import com.iamdk.directory.service.SearchTerms;
+import com.iamdk.directory.service.UserIdentity;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.json.AutoConfigureJson;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest
+@AutoConfigureJson
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({PostgresTestConfiguration.class, SchemaMigrationConfig.class, UserAttributeRepository.class})
+@Testcontainers(disabledWithoutDocker = true)
+class UserRepositoryTest {
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Test
+    void summariesCarryTheListedColumns() {
+        User alice = save("alice", "Alice", "Smith", true);
+        save("bob", "Bob", "Jones", false);
+
+        Page<UserSummary> page = userRepository.findSummaries(PageRequest.of(0, 10, Sort.by("loginName")));
+
+        assertEquals(2, page.getTotalElements());
+        UserSummary summary = page.getContent().get(0);
+        assertEquals(alice.getId(), summary.getId());
+        assertEquals("alice", summary.getLoginName());
+        assertEquals("alice@example.com", summary.getEmail());
+        assertEquals("Alice", summary.getFirstName());
+        assertEquals("Smith", summary.getLastName());
+        assertTrue(summary.getActive());
+        assertEquals(alice.getCreatedAt().withNano(0), summary.getCreatedAt().withNano(0));
+        assertFalse(page.getContent().get(1).getActive());
+    }
+
+    @Test
+    void summariesByIdsAreInIdOrder() {
+        User carol = save("carol", "Carol", "White", true);
+        User alice = save("alice", "Alice", "Smith", true);
+        User bob = save("bob", "Bob", "Jones", true);
+
+        List<UserSummary> summaries = userRepository.findSummariesByIds(List.of(bob.getId(), carol.getId(), -1L));
+
+        List<Long> expected = List.of(carol.getId(), bob.getId()).stream().sorted().toList();
+        assertEquals(expected, summaries.stream().map(UserSummary::getId).toList());
+        assertFalse(summaries.stream().anyMatch(summary -> summary.getId().equals(alice.getId())));
+    }
+
+    @Test
+    void keysetPagesNewestFirstCoverEveryUserOnce() {
+        for (int i = 0; i < 5; i++) {
+            save("user" + i, "First" + i, "Last" + i, true);
+        }
+        List<Long> expected = userRepository.findAll().stream()
+            .sorted(Comparator.comparing(User::getCreatedAt).thenComparing(User::getId).reversed())
+            .map(User::getId)
+            .toList();
+
+        List<UserSummary> first = userRepository.findNewest(PageRequest.of(0, 2));
+        UserSummary last = first.get(1);
+        List<UserSummary> rest = userRepository.findOlderThan(last.getCreatedAt(), last.getId(), PageRequest.of(0, 10));
+
+        assertEquals(expected.subList(0, 2), first.stream().map(UserSummary::getId).toList());
+        assertEquals(expected.subList(2, 5), rest.stream().map(UserSummary::getId).toList());
+    }
+
+    @Test
+    void searchSummariesMapNativeColumns() {
+        User alice = save("alice", "Alice", "Smith", true);
+        save("bob", "Bob", "Jones", true);
+        SearchTerms terms = SearchTerms.parse("smith");
+
+        Page<UserSummary> page = userRepository.searchSummaries(terms.query(), terms.primary(), terms.patterns(),
+            PageRequest.of(0, 10));
+
+        assertEquals(1, page.getTotalElements());
+        UserSummary summary = page.getContent().get(0);
+        assertEquals(alice.getId(), summary.getId());
+        assertEquals("alice", summary.getLoginName());
+        assertEquals("alice@example.com", summary.getEmail());
+        assertEquals("Alice", summary.getFirstName());
+        assertTrue(summary.getActive());
+    }
+
+    @Test
+    void identityHasTheLoginFields() {
+        User alice = save("alice", "Alice", "Smith", false);
+
+        UserIdentity identity = userRepository.findIdentityByLoginName("alice").orElseThrow();
+
+        assertEquals(new UserIdentity(alice.getId(), "alice", "hash", false, false, null), identity);
+        assertEquals(identity, userRepository.findIdentityById(alice.getId()).orElseThrow());
+        assertTrue(userRepository.findIdentityByLoginName("nobody").isEmpty());
+    }
+
+    private User save(String loginName, String firstName, String lastName, boolean active) {
+        return userRepository.saveAndFlush(User.builder()
+            .loginName(loginName)
+            .email(loginName + "@example.com")
+            .password("hash")
+            .firstName(firstName)
+            .lastName(lastName)
+            .active(active)
+            .build());
+    }
+}
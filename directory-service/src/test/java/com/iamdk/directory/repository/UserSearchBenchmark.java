@@ -0,0 +1,68 @@
+package com.iamdk.directory.repository;
+
+import com.iamdk.directory.Benchmarks;
+import com.iamdk.directory.PostgresTestConfiguration;
+import com.iamdk.directory.config.SchemaMigrationConfig;
+import com.iamdk.directory.service.SearchTerms;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.json.AutoConfigureJson;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.List;
+
+/**
+ * Times the trigram-indexed user search against the same query with index scans
+ * disabled, the sequential scan the LIKE '%term%' search did before the indexes.
+ * Run with gradle benchmark; -Dbenchmark.users sets the table size (default 100k).
+ */
+@Tag("benchmark")
+@DataJpaTest(showSql = false)
+@AutoConfigureJson
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({PostgresTestConfiguration.class, SchemaMigrationConfig.class, UserAttributeRepository.class,
+    SequenceIdAllocator.class, UserBatchRepository.class})
+@Testcontainers(disabledWithoutDocker = true)
+class UserSearchBenchmark {
+
+    private static final List<String> QUERIES = List.of("user4711", "first123 last123", "example.com user99", "zzz");
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserBatchRepository userBatchRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void trigramIndexesAgainstSequentialScans() {
+        Benchmarks.seedUsers(userBatchRepository);
+        jdbcTemplate.execute("ANALYZE users");
+        System.out.printf("%,d users%n", Benchmarks.USERS);
+
+        for (String query : QUERIES) {
+            SearchTerms terms = SearchTerms.parse(query);
+            Benchmarks.time("indexed \"" + query + "\"", 0, () -> search(terms));
+        }
+
+        jdbcTemplate.execute("SET LOCAL enable_bitmapscan = off");
+        jdbcTemplate.execute("SET LOCAL enable_indexscan = off");
+        for (String query : QUERIES) {
+            SearchTerms terms = SearchTerms.parse(query);
+            Benchmarks.time("sequential \"" + query + "\"", 0, () -> search(terms));
+        }
+    }
+
+    private void search(SearchTerms terms) {
+        userRepository.searchSummaries(terms.query(), terms.primary(), terms.patterns(), PageRequest.of(0, 20))
+            .getContent();
+    }
+}
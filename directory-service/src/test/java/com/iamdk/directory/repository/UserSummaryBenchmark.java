@@ -0,0 +1,74 @@
+package com.iamdk.directory.repository;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.iamdk.directory.Benchmarks;
+import com.iamdk.directory.PostgresTestConfiguration;
+import com.iamdk.directory.config.SchemaMigrationConfig;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.json.AutoConfigureJson;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+/**
+ * Times a page of the admin user list read as summary projections against the same
+ * page read as User entities, and prints the JSON size of each.
+ * Run with gradle benchmark; -Dbenchmark.users sets the table size (default 100k).
+ */
+@Tag("benchmark")
+@DataJpaTest(showSql = false)
+@AutoConfigureJson
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({PostgresTestConfiguration.class, SchemaMigrationConfig.class, UserAttributeRepository.class,
+    SequenceIdAllocator.class, UserBatchRepository.class})
+@Testcontainers(disabledWithoutDocker = true)
+class UserSummaryBenchmark {
+
+    private static final int PAGE_SIZE = 100;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserBatchRepository userBatchRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    void summariesAgainstEntities() throws JsonProcessingException {
+        Benchmarks.seedUsers(userBatchRepository);
+        jdbcTemplate.execute("ANALYZE users");
+        Pageable page = PageRequest.of(10, PAGE_SIZE, Sort.by("createdAt").descending());
+        System.out.printf("%,d users, pages of %d%n", Benchmarks.USERS, PAGE_SIZE);
+
+        Benchmarks.time("summaries", PAGE_SIZE, () -> {
+            entityManager.clear();
+            userRepository.findSummaries(page).getContent();
+        });
+        Benchmarks.time("entities", PAGE_SIZE, () -> {
+            entityManager.clear();
+            userRepository.findAll(page).getContent();
+        });
+
+        entityManager.clear();
+        System.out.printf("JSON of a page: summaries %,d bytes, entities %,d bytes%n",
+            objectMapper.writeValueAsBytes(userRepository.findSummaries(page).getContent()).length,
+            objectMapper.writeValueAsBytes(userRepository.findAll(page).getContent()).length);
+    }
+}
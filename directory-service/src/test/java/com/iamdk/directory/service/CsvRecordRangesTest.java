@@ -0,0 +1,245 @@
+package com.iamdk.directory.service;
+
+import com.iamdk.directory.service.source.ProvisioningSource;
+import com.iamdk.directory.service.source.SourceRecord;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * The splitter, the byte tokenizer and commons-csv must agree on every record of a
+ * file, wherever the file is cut into ranges
+ */
+class CsvRecordRangesTest {
+
+    private static final String HEADER = "loginName,email,firstName,lastName\n";
+
+    private static final List<String> BODIES = List.of(
+        // LF, CRLF and CR line breaks
+        "alice,alice@example.com,Alice,Smith\nbob,bob@example.com,Bob,Jones\n",
+        "alice,alice@example.com,Alice,Smith\r\nbob,bob@example.com,Bob,Jones\r\n",
+        "alice,alice@example.com,Alice,Smith\rbob,bob@example.com,Bob,Jones\r",
+        // Mixed breaks and no break after the last record
+        "alice,alice@example.com,Alice,Smith\r\nbob,bob@example.com,Bob,Jones\rcarol,carol@example.com,Carol,White",
+        // Blank lines before, between and after records
+        "\n\r\nalice,alice@example.com,Alice,Smith\n\n\n\r\n\rbob,bob@example.com,Bob,Jones\n\n\r\n",
+        // Quoted fields holding delimiters, line breaks and escaped quotes
+        "\"alice\",\"alice@example.com\",\"Alice, Jr.\",\"Smith\"\n"
+            + "bob,bob@example.com,\"Bob\r\nRobert\",\"O\"\"Brien\"\n"
+            + "carol,carol@example.com,\"\",\"line\nbreak\n\n\"\r\n"
+            + "dave,dave@example.com,\"\"\"quoted\"\"\",Doe",
+        // Values padded with spaces, whitespace after a closing quote, and a line of spaces
+        "  alice , alice@example.com ,Alice,\"Smith\"  \n   \nbob,bob@example.com,  \" Bob \" ,Jones\n",
+        // Missing and extra columns
+        "alice,alice@example.com\nbob,bob@example.com,Bob,Jones,extra,columns\n,,,\n",
+        // Multi-byte characters
+        "jürgen,jürgen@example.com,Jürgen,Groß\nzoë,zoë@example.com,Zoë,\"Brontë, Ann\"\n"
+    );
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void tokenizerAndParserMatchCommonsCsvForEverySplit() throws IOException {
+        for (int i = 0; i < BODIES.size(); i++) {
+            String content = HEADER + BODIES.get(i);
+            Path file = write("file" + i + ".csv", content);
+            List<List<String>> expected = commonsCsv(content);
+
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long headerEnd = CsvRecordRanges.headerEnd(channel);
+                String[] header = CsvRecordRanges.header(channel, headerEnd);
+                assertArrayEquals(new String[]{"loginName", "email", "firstName", "lastName"}, header);
+
+                for (long targetSize : new long[]{1, 7, 40, 1 << 20}) {
+                    for (long maxRows : new long[]{1, 2, Long.MAX_VALUE}) {
+                        String split = "body " + i + ", target " + targetSize + ", max rows " + maxRows;
+                        List<CsvRecordRanges.Range> ranges = CsvRecordRanges.split(channel, headerEnd, 1,
+                            targetSize, maxRows);
+                        assertContiguous(ranges, headerEnd, channel.size(), split);
+
+                        assertEquals(expected, readAll(channel, ranges, header, true), "tokenizer, " + split);
+                        assertEquals(expected, readAll(channel, ranges, header, false), "commons-csv, " + split);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void rangesResumeFromAnOffsetAndRow() throws IOException {
+        String content = HEADER + BODIES.get(5);
+        Path file = write("resume.csv", content);
+        List<List<String>> expected = commonsCsv(content);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long headerEnd = CsvRecordRanges.headerEnd(channel);
+            String[] header = CsvRecordRanges.header(channel, headerEnd);
+            List<CsvRecordRanges.Range> all = CsvRecordRanges.split(channel, headerEnd, 1, 1, Long.MAX_VALUE);
+            CsvRecordRanges.Range second = all.get(1);
+
+            List<CsvRecordRanges.Range> resumed = CsvRecordRanges.split(channel, second.start(), second.firstRow(),
+                1 << 20, Long.MAX_VALUE);
+
+            assertEquals(expected.subList(1, expected.size()), readAll(channel, resumed, header, true));
+        }
+    }
+
+    @Test
+    void tokenizerDecodesOnlyTheColumnsRead() throws IOException {
+        Path file = write("columns.csv", HEADER + "alice,alice@example.com,Alice,Smith\n");
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long headerEnd = CsvRecordRanges.headerEnd(channel);
+            String[] header = CsvRecordRanges.header(channel, headerEnd);
+            CsvRecordRanges.Range range = CsvRecordRanges.split(channel, headerEnd, 1 << 20).get(0);
+            CsvRecordRanges.Format format = new CsvRecordRanges.Format(header, ',',
+                new boolean[]{true, false, false, true}, true);
+
+            try (ProvisioningSource records = CsvRecordRanges.records(channel, range, format)) {
+                SourceRecord record = records.next();
+                assertEquals("alice", record.get("LOGINNAME"));
+                assertNull(record.get("email"));
+                assertEquals("Smith", record.get(3));
+                assertNull(records.next());
+            }
+        }
+    }
+
+    @Test
+    void tokenizerRejectsAnUnterminatedQuote() throws IOException {
+        Path file = write("unterminated.csv", HEADER + "alice,\"alice@example.com,Alice,Smith\n");
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long headerEnd = CsvRecordRanges.headerEnd(channel);
+            String[] header = CsvRecordRanges.header(channel, headerEnd);
+            CsvRecordRanges.Range range = new CsvRecordRanges.Range(headerEnd, channel.size(), 1, 1);
+
+            try (ProvisioningSource records = CsvRecordRanges.records(channel, range, format(header, true))) {
+                assertThrows(IOException.class, records::next);
+            }
+        }
+    }
+
+    @Test
+    void headerSkipsLeadingBlankLines() throws IOException {
+        Path file = write("blank.csv", "\r\n\nloginName,email\r\n\r\nalice,alice@example.com\r\n");
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long headerEnd = CsvRecordRanges.headerEnd(channel);
+
+            assertArrayEquals(new String[]{"loginName", "email"}, CsvRecordRanges.header(channel, headerEnd));
+            List<CsvRecordRanges.Range> ranges = CsvRecordRanges.split(channel, headerEnd, 1 << 20);
+            assertEquals(1, ranges.size());
+            assertEquals(1, ranges.get(0).lastRow());
+        }
+    }
+
+    @Test
+    void headerDropsTheByteOrderMarkAndGuessesTheDelimiter() throws IOException {
+        Path file = write("bom.csv", "\uFEFFloginName;email\r\nalice;alice@example.com\r\n");
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long headerEnd = CsvRecordRanges.headerEnd(channel);
+
+            assertEquals(';', CsvRecordRanges.delimiter(channel, headerEnd));
+            assertArrayEquals(new String[]{"loginName", "email"}, CsvRecordRanges.header(channel, headerEnd));
+        }
+    }
+
+    @Test
+    void completeRecordsEndExcludesARecordStillBeingWritten() throws IOException {
+        String complete = HEADER + "alice,alice@example.com,Alice,\"Smith\nJones\"\r\n";
+        Path file = write("tail.csv", complete + "bob,bob@example.com,\"Bob\n");
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long headerEnd = CsvRecordRanges.headerEnd(channel);
+
+            assertEquals(complete.length(), CsvRecordRanges.completeRecordsEnd(channel, headerEnd, true));
+        }
+    }
+
+    private static void assertContiguous(List<CsvRecordRanges.Range> ranges, long start, long size, String split) {
+        long offset = start;
+        long row = 1;
+        for (CsvRecordRanges.Range range : ranges) {
+            assertEquals(offset, range.start(), split);
+            assertEquals(row, range.firstRow(), split);
+            offset = range.end();
+            row = range.lastRow() + 1;
+        }
+        assertEquals(size, offset, split);
+    }
+
+    /**
+     * Every record of the ranges as its row number followed by its values,
+     * checking that each range holds exactly the rows it claims
+     */
+    private static List<List<String>> readAll(FileChannel channel, List<CsvRecordRanges.Range> ranges,
+                                              String[] header, boolean tokenize) throws IOException {
+        List<List<String>> rows = new ArrayList<>();
+        for (CsvRecordRanges.Range range : ranges) {
+            int before = rows.size();
+            try (ProvisioningSource records = CsvRecordRanges.records(channel, range, format(header, tokenize))) {
+                SourceRecord record;
+                while ((record = records.next()) != null) {
+                    List<String> row = new ArrayList<>();
+                    row.add(String.valueOf(record.rowNumber()));
+                    for (int column = 0; column < header.length; column++) {
+                        row.add(record.get(column));
+                    }
+                    rows.add(row);
+                }
+            }
+            assertEquals(range.lastRow() - range.firstRow() + 1, rows.size() - before, "rows of " + range);
+        }
+        return rows;
+    }
+
+    private static CsvRecordRanges.Format format(String[] header, boolean tokenize) {
+        boolean[] columnsRead = new boolean[header.length];
+        Arrays.fill(columnsRead, true);
+        return new CsvRecordRanges.Format(header, ',', columnsRead, tokenize);
+    }
+
+    /**
+     * The records of a whole file as commons-csv reads them, in the importer's dialect
+     */
+    private static List<List<String>> commonsCsv(String content) throws IOException {
+        List<List<String>> rows = new ArrayList<>();
+        try (CSVParser parser = CSVFormat.DEFAULT.builder().setHeader().setSkipHeaderRecord(true).setTrim(true)
+                .build().parse(new StringReader(content))) {
+            for (CSVRecord record : parser) {
+                List<String> row = new ArrayList<>();
+                row.add(String.valueOf(record.getRecordNumber()));
+                for (int column = 0; column < parser.getHeaderNames().size(); column++) {
+                    row.add(column < record.size() ? record.get(column) : null);
+                }
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    private Path write(String name, String content) throws IOException {
+        return Files.writeString(tempDir.resolve(name), content, StandardCharsets.UTF_8);
+    }
+}
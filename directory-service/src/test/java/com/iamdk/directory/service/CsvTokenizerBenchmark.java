@@ -0,0 +1,118 @@
+package com.iamdk.directory.service;
+
+import com.iamdk.directory.service.source.ProvisioningSource;
+import com.iamdk.directory.service.source.SourceRecord;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Reads the same generated file with the byte tokenizer and with commons-csv, range
+ * by range as the importers do, and prints the rows per second of each.
+ * Run with gradle benchmark; -Dbenchmark.csv.rows sets the file size (default 1M rows).
+ */
+@Tag("benchmark")
+class CsvTokenizerBenchmark {
+
+    private static final int ROWS = Integer.getInteger("benchmark.csv.rows", 1_000_000);
+    private static final int WARMUP = Integer.getInteger("benchmark.warmup", 3);
+    private static final int ITERATIONS = Integer.getInteger("benchmark.iterations", 5);
+    private static final long RANGE_SIZE = 8L << 20;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void tokenizerAgainstCommonsCsv() throws IOException {
+        Path file = generate(tempDir.resolve("users.csv"));
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long headerEnd = CsvRecordRanges.headerEnd(channel);
+            String[] header = CsvRecordRanges.header(channel, headerEnd);
+            List<CsvRecordRanges.Range> ranges = CsvRecordRanges.split(channel, headerEnd, RANGE_SIZE);
+            System.out.printf("%,d rows, %,d bytes, %d ranges%n", ROWS, channel.size(), ranges.size());
+
+            // Every column, and only the five the default mappings read
+            boolean[] allColumns = new boolean[header.length];
+            Arrays.fill(allColumns, true);
+            boolean[] mappedColumns = new boolean[header.length];
+            Arrays.fill(mappedColumns, 0, 5, true);
+
+            measure("commons-csv", channel, ranges, new CsvRecordRanges.Format(header, ',', allColumns, false));
+            measure("tokenizer, all columns", channel, ranges,
+                new CsvRecordRanges.Format(header, ',', allColumns, true));
+            measure("tokenizer, mapped columns", channel, ranges,
+                new CsvRecordRanges.Format(header, ',', mappedColumns, true));
+        }
+    }
+
+    private static void measure(String name, FileChannel channel, List<CsvRecordRanges.Range> ranges,
+                                CsvRecordRanges.Format format) throws IOException {
+        for (int i = 0; i < WARMUP; i++) {
+            assertEquals(ROWS, readAll(channel, ranges, format));
+        }
+        long best = Long.MAX_VALUE;
+        long total = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            assertEquals(ROWS, readAll(channel, ranges, format));
+            long elapsed = System.nanoTime() - start;
+            best = Math.min(best, elapsed);
+            total += elapsed;
+        }
+        System.out.printf("%-26s best %,8.1f ms  mean %,8.1f ms  %,12.0f rows/s%n", name,
+            best / 1e6, total / 1e6 / ITERATIONS, ROWS / (best / 1e9));
+    }
+
+    /**
+     * Read every record, touching each column read so nothing is optimized away
+     */
+    private static long readAll(FileChannel channel, List<CsvRecordRanges.Range> ranges,
+                                CsvRecordRanges.Format format) throws IOException {
+        long rows = 0;
+        long chars = 0;
+        for (CsvRecordRanges.Range range : ranges) {
+            try (ProvisioningSource records = CsvRecordRanges.records(channel, range, format)) {
+                SourceRecord record;
+                while ((record = records.next()) != null) {
+                    rows++;
+                    String loginName = record.get(0);
+                    chars += loginName != null ? loginName.length() : 0;
+                }
+            }
+        }
+        if (chars == 0) {
+            throw new IllegalStateException("No values read");
+        }
+        return rows;
+    }
+
+    /**
+     * A feed of the shape HR exports have: the mapped columns, a few quoted values
+     * holding delimiters, and unmapped columns after them
+     */
+    private static Path generate(Path file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("loginName,email,firstName,lastName,active,department,title,phone,costCenter,manager\n");
+            for (int i = 0; i < ROWS; i++) {
+                writer.write("user" + i + ",user" + i + "@example.com,First" + i + ",Last" + i + ",true,");
+                writer.write(i % 10 == 0 ? "\"Sales, EMEA\"" : "Engineering");
+                writer.write(",Engineer,+49 30 " + (1_000_000 + i) + "," + (4000 + i % 100) + ",manager" + (i / 50));
+                writer.write('\n');
+            }
+        }
+        return file;
+    }
+}
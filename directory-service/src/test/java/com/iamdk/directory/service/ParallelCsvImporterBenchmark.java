@@ -0,0 +1,146 @@
+package com.iamdk.directory.service;
+
+import com.iamdk.directory.Benchmarks;
+import com.iamdk.directory.PostgresTestConfiguration;
+import com.iamdk.directory.config.ProvisioningConfig;
+import com.iamdk.directory.config.SchemaMigrationConfig;
+import com.iamdk.directory.dto.provisioning.RowError;
+import com.iamdk.directory.entity.ProvisioningJob;
+import com.iamdk.directory.repository.GroupBatchRepository;
+import com.iamdk.directory.repository.ProvisioningFingerprintRepository;
+import com.iamdk.directory.repository.SequenceIdAllocator;
+import com.iamdk.directory.repository.UserAttributeRepository;
+import com.iamdk.directory.repository.UserBatchRepository;
+import com.iamdk.directory.repository.UserWriteLocks;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.json.AutoConfigureJson;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Times importing a file of {@link Benchmarks#USERS} new users (default 100k) with 1,
+ * 2 and 4 workers and one per core, and prints the rows per second of each, so the
+ * scaling with provisioning.parallel.workers can be read off. Every run starts from
+ * an empty table; the TRUNCATE is part of the timing.
+ * Run with gradle benchmark; the tests run outside a transaction, as the lanes commit
+ * chunks of their own.
+ */
+@Tag("benchmark")
+@DataJpaTest(showSql = false, properties = {
+    "spring.datasource.hikari.data-source-properties.reWriteBatchedInserts=true",
+    "spring.datasource.hikari.maximum-pool-size=" + (ParallelCsvImporterBenchmark.MAX_WORKERS + 4)})
+@AutoConfigureJson
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({PostgresTestConfiguration.class, SchemaMigrationConfig.class, ProvisioningConfig.class,
+    ParallelCsvImporterBenchmark.Encoder.class, UserAttributeRepository.class, SequenceIdAllocator.class,
+    UserBatchRepository.class, ProvisioningFingerprintRepository.class, GroupBatchRepository.class,
+    UserWriteLocks.class, UserIdentityCache.class, UserSuggestIndex.class, InitialPasswordService.class,
+    ProvisioningBatchWriter.class, ParallelCsvImporter.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Testcontainers(disabledWithoutDocker = true)
+class ParallelCsvImporterBenchmark {
+
+    static final int MAX_WORKERS = 32;
+
+    private static final Map<String, String> MAPPINGS = Map.of("loginName", "loginName", "email", "email",
+        "firstName", "firstName", "lastName", "lastName", "active", "active");
+
+    @Autowired
+    private ParallelCsvImporter importer;
+
+    @Autowired
+    private UserSuggestIndex suggestIndex;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * InitialPasswordService needs an encoder; without an initial password it never hashes
+     */
+    @TestConfiguration(proxyBeanMethods = false)
+    static class Encoder {
+
+        @Bean
+        PasswordEncoder passwordEncoder() {
+            return new BCryptPasswordEncoder();
+        }
+    }
+
+    @Test
+    void throughputByWorkerCount() throws IOException {
+        Path file = generate(tempDir.resolve("users.csv"));
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.printf("%,d users, %,d bytes, %d cores%n", Benchmarks.USERS, Files.size(file), cores);
+
+        for (int workers : new TreeSet<>(List.of(1, 2, 4, Math.min(cores, MAX_WORKERS)))) {
+            Benchmarks.time(workers + (workers == 1 ? " worker" : " workers"), Benchmarks.USERS, () -> {
+                jdbcTemplate.execute("TRUNCATE users CASCADE");
+                // Drop the previous run's users from the typeahead index, which the TRUNCATE bypassed
+                suggestIndex.refresh();
+                ImportCounters counters = new ImportCounters();
+                try {
+                    importer.importFile(file, 0, 1, workers, counters, null, null, MAPPINGS, new Listener());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                ProvisioningJob job = new ProvisioningJob();
+                counters.applyTo(job);
+                assertEquals(Benchmarks.USERS, job.getCreatedCount());
+            });
+        }
+    }
+
+    private static class Listener implements ParallelCsvImporter.Listener {
+
+        @Override
+        public void checkpoint(long offset, long lastRow, ImportCounters committed) {
+        }
+
+        @Override
+        public void chunkWritten() {
+        }
+
+        @Override
+        public void rowFailed(RowError error) {
+            throw new IllegalStateException("Row " + error.rowNumber() + " failed: " + error.reason());
+        }
+    }
+
+    private static Path generate(Path file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("loginName,email,firstName,lastName,active,department\n");
+            for (int i = 0; i < Benchmarks.USERS; i++) {
+                writer.write("user" + i + ",user" + i + "@example.com,First" + i + ",Last" + i + ",true,dept"
+                    + (i % 50) + "\n");
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,135 @@
+package com.iamdk.directory.service;
+
+import com.iamdk.directory.Benchmarks;
+import com.iamdk.directory.dto.provisioning.ProvisioningRow;
+import com.iamdk.directory.entity.ProvisioningJob.SourceType;
+import com.iamdk.directory.service.source.CsvSource;
+import com.iamdk.directory.service.source.SourceRecord;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Maps the same parsed CSV records to rows by looking each column up by name, as
+ * the mapper did before mappings were compiled, and with compiled plans that read
+ * by name and by header position, and prints the rows per second of each. Records
+ * are parsed once up front, so only the mapping is timed.
+ * Run with gradle benchmark; -Dbenchmark.mapping.rows sets the record count
+ * (default 500k).
+ */
+@Tag("benchmark")
+class ProvisioningMappingPlanBenchmark {
+
+    private static final int ROWS = Integer.getInteger("benchmark.mapping.rows", 500_000);
+
+    private static final String[] REQUIRED_FIELDS = {"loginName", "email", "firstName", "lastName"};
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void compiledPlanAgainstLookupsByName() throws IOException {
+        Path file = generate(tempDir.resolve("users.csv"));
+        List<SourceRecord> records = new ArrayList<>(ROWS);
+        String[] header;
+        try (CsvSource source = new CsvSource(file)) {
+            header = source.header();
+            SourceRecord record;
+            while ((record = source.next()) != null) {
+                records.add(record);
+            }
+        }
+        System.out.printf("%,d records of %d columns%n", records.size(), header.length);
+
+        Map<String, String> mappings = new LinkedHashMap<>();
+        for (String target : List.of("loginName", "email", "firstName", "lastName", "active", "groups")) {
+            mappings.put(target, target);
+        }
+        ProvisioningMappingPlan byName = ProvisioningMappingPlan.compile(mappings, SourceType.CSV, null);
+        ProvisioningMappingPlan byIndex = ProvisioningMappingPlan.compile(mappings, SourceType.CSV, header);
+
+        Benchmarks.time("record.get(name)", ROWS, () -> mapAll(records, ProvisioningMappingPlanBenchmark::mapByName));
+        Benchmarks.time("plan, by name", ROWS, () -> mapAll(records, record -> byName.map(record).row()));
+        Benchmarks.time("plan, by index", ROWS, () -> mapAll(records, record -> byIndex.map(record).row()));
+    }
+
+    /**
+     * Map every record, touching each row so nothing is optimized away
+     */
+    private static void mapAll(List<SourceRecord> records, Function<SourceRecord, ProvisioningRow> mapper) {
+        int mapped = 0;
+        long chars = 0;
+        for (SourceRecord record : records) {
+            ProvisioningRow row = mapper.apply(record);
+            if (row != null) {
+                mapped++;
+                chars += row.loginName().length() + row.groups().size();
+            }
+        }
+        assertEquals(records.size(), mapped);
+        assertTrue(chars > 0);
+    }
+
+    /**
+     * The mapping before plans: every field looked up by its header name, as
+     * ProvisioningRowMapper.map did
+     */
+    private static ProvisioningRow mapByName(SourceRecord record) {
+        for (String field : REQUIRED_FIELDS) {
+            String value = record.get(field);
+            if (value == null || value.isBlank()) {
+                return null;
+            }
+        }
+        String activeValue = record.get("active");
+        boolean active = activeValue == null || activeValue.isBlank() || parseBoolean(activeValue);
+        String groupsValue = record.get("groups");
+        Set<String> groups = null;
+        if (groupsValue != null) {
+            Set<String> names = new LinkedHashSet<>();
+            for (String group : groupsValue.split(SourceRecord.MULTI_VALUE_SEPARATOR)) {
+                if (!group.isBlank()) {
+                    names.add(group.trim());
+                }
+            }
+            groups = Set.copyOf(names);
+        }
+        return new ProvisioningRow(record.rowNumber(), record.get("loginName"), record.get("email"),
+            record.get("firstName"), record.get("lastName"), active, groups, null);
+    }
+
+    private static boolean parseBoolean(String value) {
+        String lower = value.toLowerCase();
+        return "true".equals(lower) || "yes".equals(lower) || "1".equals(lower) || "y".equals(lower);
+    }
+
+    /**
+     * The columns the default mappings read, between unmapped ones as in HR exports
+     */
+    private static Path generate(Path file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("employeeId,loginName,email,firstName,lastName,department,active,title,groups,costCenter\n");
+            for (int i = 0; i < ROWS; i++) {
+                writer.write((100_000 + i) + ",user" + i + ",user" + i + "@example.com,First" + i + ",Last" + i
+                    + ",dept" + (i % 50) + ",true,Engineer,staff;team" + (i % 20) + "," + (4000 + i % 100) + "\n");
+            }
+        }
+        return file;
+    }
+}
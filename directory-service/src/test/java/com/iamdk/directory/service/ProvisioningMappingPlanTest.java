@@ -0,0 +1,194 @@
+package com.iamdk.directory.service;
+
+import com.iamdk.directory.dto.provisioning.ProvisioningRow;
+import com.iamdk.directory.entity.ProvisioningJob.SourceType;
+import com.iamdk.directory.service.source.SourceRecord;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProvisioningMappingPlanTest {
+
+    private static final String[] HEADER = {"uid", "Mail", "givenName", "sn", "enabled", "memberOf", "dept"};
+
+    @Test
+    void appliesTransformsInOrder() {
+        ProvisioningMappingPlan plan = compile(SourceType.CSV, HEADER,
+            "loginName", "uid|trim|lower",
+            "email", "mail|lower|trim",
+            "firstName", "givenName",
+            "lastName", "sn|upper",
+            "attributes.department", "dept|trim|upper");
+
+        ProvisioningRow row = plan.map(new Row(2, " JDoe ", " John.Doe@Example.COM", "John", "Doe", "", "", " sales "))
+            .row();
+
+        assertEquals("jdoe", row.loginName());
+        assertEquals("john.doe@example.com", row.email());
+        assertEquals("John", row.firstName());
+        assertEquals("DOE", row.lastName());
+        assertEquals(Map.of("department", "SALES"), row.attributes());
+        assertEquals(2, row.rowNumber());
+    }
+
+    @Test
+    void transformNamesAndTargetsIgnoreCase() {
+        ProvisioningMappingPlan plan = compile(SourceType.CSV, HEADER,
+            "LOGINNAME", "UID| Lower ",
+            "email", "MAIL",
+            "firstname", "givenname",
+            "lastName", "SN");
+
+        ProvisioningRow row = plan.map(new Row(1, "JDOE", "j@example.com", "John", "Doe")).row();
+
+        assertEquals("jdoe", row.loginName());
+        assertEquals("Doe", row.lastName());
+    }
+
+    @Test
+    void readsNamedFieldsWithoutAHeader() {
+        ProvisioningMappingPlan plan = compile(SourceType.JSON, null,
+            "loginName", "user|lower",
+            "email", "mail",
+            "firstName", "first",
+            "lastName", "last",
+            "groups", "roles");
+
+        ProvisioningRow row = plan.map(SourceRecord.of(7, Map.of(
+            "user", "JDoe", "mail", "j@example.com", "first", "John", "last", "Doe", "roles", "admins; ops;;"))).row();
+
+        assertEquals("jdoe", row.loginName());
+        assertEquals(Set.of("admins", "ops"), row.groups());
+        assertTrue(row.active());
+        assertNull(row.attributes());
+    }
+
+    @Test
+    void rejectsAHeaderForSourcesOfNamedFields() {
+        for (SourceType type : SourceType.values()) {
+            if (type.hasFieldPositions()) {
+                continue;
+            }
+            IllegalArgumentException error = assertThrows(IllegalArgumentException.class,
+                () -> compile(type, HEADER, "loginName", "uid"));
+            assertTrue(error.getMessage().contains(type.name()), error.getMessage());
+        }
+    }
+
+    @Test
+    void rejectsUnknownTransformsAndTargets() {
+        IllegalArgumentException transform = assertThrows(IllegalArgumentException.class,
+            () -> compile(SourceType.CSV, HEADER, "email", "mail|lower|reverse"));
+        assertTrue(transform.getMessage().contains("'reverse'"), transform.getMessage());
+
+        IllegalArgumentException target = assertThrows(IllegalArgumentException.class,
+            () -> compile(SourceType.CSV, HEADER, "phone", "tel"));
+        assertTrue(target.getMessage().contains("'phone'"), target.getMessage());
+    }
+
+    @Test
+    void reportsTheFirstMissingRequiredField() {
+        ProvisioningMappingPlan plan = standardPlan();
+
+        ProvisioningRowMapper.Result result = plan.map(new Row(4, "jdoe", "  ", "John", "Doe"));
+
+        assertFalse(result.isValid());
+        assertEquals(4, result.error().rowNumber());
+        assertEquals("email", result.error().field());
+        assertEquals("required", result.error().reason());
+        assertEquals("jdoe", plan.loginNameOf(new Row(4, "jdoe", "  ", "John", "Doe")));
+    }
+
+    @Test
+    void unmappedColumnsReadAsAbsent() {
+        // The header has no "title" column, so the attribute is left out rather than failing the row
+        ProvisioningMappingPlan plan = compile(SourceType.CSV, HEADER,
+            "loginName", "uid", "email", "mail", "firstName", "givenName", "lastName", "sn",
+            "attributes.title", "title");
+
+        ProvisioningRow row = plan.map(new Row(1, "jdoe", "j@example.com", "John", "Doe")).row();
+
+        assertEquals(Map.of(), row.attributes());
+        assertTrue(row.active());
+        assertNull(row.groups());
+    }
+
+    @Test
+    void parsesActiveFlagsAndGroups() {
+        ProvisioningMappingPlan plan = standardPlan();
+
+        assertTrue(plan.map(new Row(1, "a", "a@example.com", "A", "A", " Yes ", "admins")).row().active());
+        assertFalse(plan.map(new Row(1, "a", "a@example.com", "A", "A", "no", "admins")).row().active());
+        // A blank groups column removes every membership rather than leaving them unchanged
+        assertEquals(Set.of(), plan.map(new Row(1, "a", "a@example.com", "A", "A", "1", " ")).row().groups());
+        assertEquals("groups", plan.map(new Row(1, "a", "a@example.com", "A", "A", "1", "x".repeat(101)))
+            .error().field());
+    }
+
+    @Test
+    void malformedRecordsAreRejectedWithTheirError() {
+        ProvisioningMappingPlan plan = standardPlan();
+        SourceRecord malformed = SourceRecord.malformed(9, "unterminated quote");
+
+        ProvisioningRowMapper.Result result = plan.map(malformed);
+
+        assertNull(result.error().field());
+        assertEquals("unterminated quote", result.error().reason());
+        assertNull(plan.loginNameOf(malformed));
+    }
+
+    @Test
+    void marksOnlyTheColumnsItReads() {
+        ProvisioningMappingPlan plan = compile(SourceType.CSV, HEADER,
+            "loginName", "uid", "email", "mail", "firstName", "givenName", "lastName", "sn", "attributes.dept", "dept");
+
+        assertArrayEquals(new Boolean[]{true, true, true, true, false, false, true}, boxed(plan.columnsRead(7)));
+    }
+
+    private static ProvisioningMappingPlan standardPlan() {
+        return compile(SourceType.CSV, HEADER,
+            "loginName", "uid", "email", "mail", "firstName", "givenName", "lastName", "sn",
+            "active", "enabled", "groups", "memberOf");
+    }
+
+    private static ProvisioningMappingPlan compile(SourceType sourceType, String[] header, String... mappings) {
+        Map<String, String> compiled = new LinkedHashMap<>();
+        for (int i = 0; i < mappings.length; i += 2) {
+            compiled.put(mappings[i], mappings[i + 1]);
+        }
+        return ProvisioningMappingPlan.compile(compiled, sourceType, header);
+    }
+
+    private static Boolean[] boxed(boolean[] values) {
+        Boolean[] boxed = new Boolean[values.length];
+        for (int i = 0; i < values.length; i++) {
+            boxed[i] = values[i];
+        }
+        return boxed;
+    }
+
+    /**
+     * A CSV record in header order; columns past the given values are missing
+     */
+    private record Row(long rowNumber, String... values) implements SourceRecord {
+
+        @Override
+        public String get(String field) {
+            return null;
+        }
+
+        @Override
+        public String get(int index) {
+            return index < values.length ? values[index] : null;
+        }
+    }
+}
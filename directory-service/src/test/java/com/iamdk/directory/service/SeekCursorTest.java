@@ -0,0 +1,62 @@
+package com.iamdk.directory.service;
+
+import com.iamdk.directory.dto.CursorPage;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SeekCursorTest {
+
+    @Test
+    void roundTripsValuesContainingTheSeparator() {
+        SeekCursor cursor = new SeekCursor("a|b|c", 42);
+
+        assertEquals(cursor, SeekCursor.decode(cursor.encode()));
+    }
+
+    @Test
+    void roundTripsTimestamps() {
+        LocalDateTime createdAt = LocalDateTime.of(2024, 3, 1, 12, 30, 0, 123456000);
+
+        SeekCursor decoded = SeekCursor.decode(new SeekCursor(createdAt.toString(), 7).encode());
+
+        assertEquals(createdAt, decoded.timeValue());
+        assertEquals(7, decoded.id());
+    }
+
+    @Test
+    void blankCursorStartsAtTheFirstPage() {
+        assertNull(SeekCursor.decode(null));
+        assertNull(SeekCursor.decode(" "));
+    }
+
+    @Test
+    void rejectsTamperedCursors() {
+        assertThrows(IllegalArgumentException.class, () -> SeekCursor.decode("not a cursor!"));
+        assertThrows(IllegalArgumentException.class, () -> SeekCursor.decode(new SeekCursor("x", 1).encode() + "A"));
+        assertThrows(IllegalArgumentException.class, () -> new SeekCursor("yesterday", 1).timeValue());
+    }
+
+    @Test
+    void pagesContinueAfterTheLastItem() {
+        CursorPage<Long> page = SeekCursor.page(List.of(5L, 4L, 3L), 2, id -> new SeekCursor("", id), 10L);
+
+        assertEquals(List.of(5L, 4L), page.items());
+        assertEquals(4, SeekCursor.decode(page.nextCursor()).id());
+        assertEquals(Long.valueOf(10), page.totalResults());
+    }
+
+    @Test
+    void lastPageHasNoNextCursor() {
+        CursorPage<Long> page = SeekCursor.page(List.of(5L, 4L), 2, id -> new SeekCursor("", id), null);
+
+        assertEquals(List.of(5L, 4L), page.items());
+        assertNull(page.nextCursor());
+        assertNull(page.totalResults());
+    }
+}
@@ -0,0 +1,114 @@
+package com.iamdk.directory.service;
+
+import com.iamdk.directory.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UserIdentityCacheTest {
+
+    private static final UserIdentity ALICE = new UserIdentity(1L, "alice", "hash", false, true, null);
+
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final UserIdentityCache cache = new UserIdentityCache(userRepository, 100, 60);
+
+    @Test
+    void readsThroughOnce() {
+        when(userRepository.findIdentityByLoginName("alice")).thenReturn(Optional.of(ALICE));
+
+        assertEquals(Optional.of(ALICE), cache.findByLoginName("alice"));
+        assertEquals(Optional.of(ALICE), cache.findByLoginName("alice"));
+
+        verify(userRepository, times(1)).findIdentityByLoginName("alice");
+        assertEquals(1, cache.stats().hits());
+    }
+
+    @Test
+    void doesNotCacheMissingUsers() {
+        when(userRepository.findIdentityByLoginName("bob")).thenReturn(Optional.empty());
+
+        assertFalse(cache.findByLoginName("bob").isPresent());
+        assertFalse(cache.findByLoginName("bob").isPresent());
+
+        verify(userRepository, times(2)).findIdentityByLoginName("bob");
+    }
+
+    @Test
+    void loadOverlappingAnInvalidationIsNotKept() {
+        // The row is read before the writer commits and the invalidation runs before it is cached
+        UserIdentity locked = ALICE.withStatus(true, LocalDateTime.now().plusMinutes(15));
+        when(userRepository.findIdentityByLoginName("alice"))
+            .thenAnswer(invocation -> {
+                cache.invalidate(List.of("alice"));
+                return Optional.of(ALICE);
+            })
+            .thenReturn(Optional.of(locked));
+
+        assertEquals(Optional.of(ALICE), cache.findByLoginName("alice"));
+        assertEquals(Optional.of(locked), cache.findByLoginName("alice"));
+        assertEquals(Optional.of(locked), cache.findByLoginName("alice"));
+
+        verify(userRepository, times(2)).findIdentityByLoginName("alice");
+    }
+
+    @Test
+    void invalidatesByLoginName() {
+        UserIdentity deactivated = ALICE.withStatus(false, null);
+        when(userRepository.findIdentityByLoginName("alice"))
+            .thenReturn(Optional.of(ALICE), Optional.of(deactivated));
+
+        cache.findByLoginName("alice");
+        cache.invalidate(List.of("alice"));
+
+        assertEquals(Optional.of(deactivated), cache.findByLoginName("alice"));
+    }
+
+    @Test
+    void findsByIdThroughTheLoginNameEntry() {
+        when(userRepository.findIdentityById(1L)).thenReturn(Optional.of(ALICE));
+        when(userRepository.findIdentityByLoginName("alice")).thenReturn(Optional.of(ALICE));
+
+        assertEquals(Optional.of(ALICE), cache.findById(1L));
+        assertEquals(Optional.of(ALICE), cache.findById(1L));
+        assertEquals(Optional.of(ALICE), cache.findById(1L));
+
+        verify(userRepository, times(1)).findIdentityById(1L);
+        verify(userRepository, times(1)).findIdentityByLoginName("alice");
+    }
+
+    @Test
+    void renameInvalidatesTheIdIndex() {
+        UserIdentity renamed = new UserIdentity(1L, "alice2", "hash", false, true, null);
+        when(userRepository.findIdentityById(1L)).thenReturn(Optional.of(ALICE), Optional.of(renamed));
+        when(userRepository.findIdentityByLoginName("alice")).thenReturn(Optional.of(ALICE));
+        when(userRepository.findIdentityByLoginName("alice2")).thenReturn(Optional.of(renamed));
+
+        cache.findById(1L);
+        cache.invalidate(1L, "alice");
+
+        assertEquals(Optional.of(renamed), cache.findById(1L));
+        assertEquals(Optional.of(renamed), cache.findById(1L));
+    }
+
+    @Test
+    void idWhoseLoginNameMovedToAnotherUserIsReloaded() {
+        // alice was deleted and her login name given to a new user without an invalidation by id
+        UserIdentity newAlice = new UserIdentity(2L, "alice", "hash2", false, true, null);
+        when(userRepository.findIdentityById(1L)).thenReturn(Optional.of(ALICE), Optional.empty());
+        when(userRepository.findIdentityByLoginName("alice")).thenReturn(Optional.of(newAlice));
+
+        cache.findById(1L);
+        cache.invalidate(List.of("alice"));
+
+        assertFalse(cache.findById(1L).isPresent());
+    }
+}
@@ -0,0 +1,126 @@
+package com.iamdk.directory.service.source;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JsonFileSourceTest {
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void ndjsonRowNumbersAreLineNumbersSkippingBlankLines() throws IOException {
+        Path file = write("users.ndjson",
+            "{\"loginName\":\"alice\"}\n\n   \r\n{\"loginName\":\"bob\"}\r\n{\"loginName\":\"carol\"}");
+
+        List<SourceRecord> records = readAll(new NdjsonSource(file, jsonFactory));
+
+        assertEquals(3, records.size());
+        assertEquals(1, records.get(0).rowNumber());
+        assertEquals("bob", records.get(1).get("loginName"));
+        assertEquals(4, records.get(1).rowNumber());
+        assertEquals(5, records.get(2).rowNumber());
+    }
+
+    @Test
+    void ndjsonMalformedLineRejectsOnlyItsRecord() throws IOException {
+        Path file = write("users.ndjson",
+            "{\"loginName\":\"alice\"}\n{\"loginName\":\n[1,2]\n{\"loginName\":\"bob\"}\n");
+
+        List<SourceRecord> records = readAll(new NdjsonSource(file, jsonFactory));
+
+        assertEquals(4, records.size());
+        assertNull(records.get(0).error());
+        assertNotNull(records.get(1).error());
+        assertEquals(2, records.get(1).rowNumber());
+        assertEquals("not a JSON object", records.get(2).error());
+        assertEquals("bob", records.get(3).get("loginName"));
+    }
+
+    @Test
+    void fieldsAreFlattenedToText() throws IOException {
+        Path file = write("users.ndjson",
+            "{\"loginName\":\"alice\",\"active\":true,\"age\":42,\"groups\":[\"admins\",null,\"ops\"],"
+                + "\"manager\":{\"loginName\":\"bob\"},\"email\":null}\n");
+
+        SourceRecord record = readAll(new NdjsonSource(file, jsonFactory)).get(0);
+
+        assertEquals("true", record.get("active"));
+        assertEquals("42", record.get("age"));
+        assertEquals("admins;ops", record.get("groups"));
+        assertNull(record.get("manager"));
+        assertNull(record.get("email"));
+    }
+
+    @Test
+    void jsonArraySourceReadsADocumentArray() throws IOException {
+        Path file = write("users.json", "[{\"loginName\":\"alice\"}, 7, {\"loginName\":\"bob\"}]");
+
+        List<SourceRecord> records = readAll(new JsonArraySource(file, jsonFactory));
+
+        assertEquals(3, records.size());
+        assertEquals("alice", records.get(0).get("loginName"));
+        assertEquals("not a JSON object", records.get(1).error());
+        assertEquals("bob", records.get(2).get("loginName"));
+        assertEquals(3, records.get(2).rowNumber());
+    }
+
+    @Test
+    void jsonArraySourceReadsTheFirstArrayOfAnObject() throws IOException {
+        Path file = write("users.json",
+            "{\"meta\":{\"tags\":[\"x\"]},\"count\":2,\"users\":[{\"loginName\":\"alice\"},{\"loginName\":\"bob\"}],"
+                + "\"other\":[{\"loginName\":\"carol\"}]}");
+
+        List<SourceRecord> records = readAll(new JsonArraySource(file, jsonFactory));
+
+        assertEquals(List.of("alice", "bob"), records.stream().map(record -> record.get("loginName")).toList());
+    }
+
+    @Test
+    void jsonArraySourceRejectsADocumentWithoutRecords() throws IOException {
+        Path file = write("users.json", "{\"count\":0}");
+
+        assertThrows(IllegalArgumentException.class, () -> new JsonArraySource(file, jsonFactory));
+    }
+
+    @Test
+    void fileSourcesReportProgress() throws IOException {
+        Path file = write("users.ndjson", "{\"loginName\":\"alice\"}\n");
+
+        try (NdjsonSource source = new NdjsonSource(file, jsonFactory)) {
+            assertEquals(0, source.fractionDone());
+            source.next();
+            assertEquals(1, source.fractionDone());
+        }
+    }
+
+    private Path write(String name, String content) throws IOException {
+        return Files.writeString(tempDir.resolve(name), content, StandardCharsets.UTF_8);
+    }
+
+    private static List<SourceRecord> readAll(ProvisioningSource source) throws IOException {
+        try (source) {
+            List<SourceRecord> records = new ArrayList<>();
+            SourceRecord record;
+            while ((record = source.next()) != null) {
+                records.add(record);
+            }
+            return records;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.iamdk.directory.service.source;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RestPageSourceTest {
+
+    private static final int PAGE_SIZE = 2;
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private final List<String> queries = new CopyOnWriteArrayList<>();
+    private HttpServer server;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void requestsNumberedPagesUntilAShortPage() throws IOException {
+        // Pages 0 to 2 are full, page 3 holds the last user
+        serve(exchange -> {
+            int page = pageNumber(exchange);
+            respond(exchange, 200, usersArray(page * PAGE_SIZE, page < 3 ? PAGE_SIZE : 1));
+        });
+
+        List<SourceRecord> records = readAll(source(null, null));
+
+        assertEquals(7, records.size());
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals(i + 1, records.get(i).rowNumber());
+            assertEquals("user" + i, records.get(i).get("loginName"));
+        }
+        assertEquals(List.of("page=0&size=2", "page=1&size=2", "page=2&size=2", "page=3&size=2"), queries);
+    }
+
+    @Test
+    void stopsAtAnEmptyPage() throws IOException {
+        serve(exchange -> {
+            int page = pageNumber(exchange);
+            respond(exchange, 200, usersArray(page * PAGE_SIZE, page < 3 ? PAGE_SIZE : 0));
+        });
+
+        List<SourceRecord> records = readAll(source(null, null));
+
+        assertEquals(6, records.size());
+        assertEquals("user5", records.get(5).get("loginName"));
+        assertEquals(4, queries.size());
+    }
+
+    @Test
+    void numbersPagesFromTheFirstPageSetting() throws IOException {
+        serve(exchange -> {
+            int page = pageNumber(exchange);
+            respond(exchange, 200, usersArray((page - 1) * PAGE_SIZE, page < 4 ? PAGE_SIZE : 1));
+        });
+
+        RestPageSource source = new RestPageSource(httpClient, new JsonFactory(), new RestPageSource.Settings(
+            uri("/users"), PAGE_SIZE, 1, "page", "size", "items", "next", null, Duration.ofSeconds(5)));
+
+        assertEquals(7, readAll(source).size());
+        assertEquals(List.of("page=1&size=2", "page=2&size=2", "page=3&size=2", "page=4&size=2"), queries);
+    }
+
+    @Test
+    void followsNextLinksInsteadOfNumbering() throws IOException {
+        // Every page is full, so only the missing link on the last page ends the feed
+        serve(exchange -> {
+            String query = exchange.getRequestURI().getQuery();
+            int page = query.startsWith("cursor=") ? Integer.parseInt(query.substring("cursor=".length())) : 0;
+            String next = page < 3 ? ",\"next\":\"" + uri("/users?cursor=" + (page + 1)) + "\"" : "";
+            respond(exchange, 200, "{\"total\":8,\"items\":" + usersArray(page * PAGE_SIZE, PAGE_SIZE) + next + "}");
+        });
+
+        List<SourceRecord> records = readAll(source("items", "next"));
+
+        assertEquals(8, records.size());
+        assertEquals("user7", records.get(7).get("loginName"));
+        assertEquals(List.of("page=0&size=2", "cursor=1", "cursor=2", "cursor=3"), queries);
+    }
+
+    @Test
+    void resolvesRelativeNextLinks() throws IOException {
+        serve(exchange -> {
+            String query = exchange.getRequestURI().getQuery();
+            int page = query.startsWith("cursor=") ? Integer.parseInt(query.substring("cursor=".length())) : 0;
+            String next = page < 2 ? ",\"next\":\"/users?cursor=" + (page + 1) + "\"" : "";
+            respond(exchange, 200, "{\"items\":" + usersArray(page * PAGE_SIZE, PAGE_SIZE) + next + "}");
+        });
+
+        List<SourceRecord> records = readAll(source("items", "next"));
+
+        assertEquals(6, records.size());
+        assertEquals(List.of("page=0&size=2", "cursor=1", "cursor=2"), queries);
+    }
+
+    @Test
+    void keepsTheAuthorizationHeaderFromOtherServers() throws IOException {
+        List<String> authorizations = new CopyOnWriteArrayList<>();
+        HttpServer other = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        other.createContext("/users", exchange -> {
+            authorizations.add(String.valueOf(exchange.getRequestHeaders().getFirst("Authorization")));
+            respond(exchange, 200, "{\"items\":" + usersArray(PAGE_SIZE, 1) + "}");
+        });
+        other.start();
+        try {
+            String elsewhere = "http://" + other.getAddress().getHostString() + ":" + other.getAddress().getPort() + "/users";
+            serve(exchange -> {
+                authorizations.add(exchange.getRequestHeaders().getFirst("Authorization"));
+                respond(exchange, 200,
+                    "{\"items\":" + usersArray(0, PAGE_SIZE) + ",\"next\":\"" + elsewhere + "\"}");
+            });
+
+            RestPageSource source = new RestPageSource(httpClient, new JsonFactory(), new RestPageSource.Settings(
+                uri("/users"), PAGE_SIZE, 0, "page", "size", "items", "next", "Bearer token", Duration.ofSeconds(5)));
+
+            assertEquals(3, readAll(source).size());
+            assertEquals(List.of("Bearer token", "null"), authorizations);
+        } finally {
+            other.stop(0);
+        }
+    }
+
+    @Test
+    void sendsTheAuthorizationHeader() throws IOException {
+        List<String> authorizations = new CopyOnWriteArrayList<>();
+        serve(exchange -> {
+            authorizations.add(exchange.getRequestHeaders().getFirst("Authorization"));
+            respond(exchange, 200, usersArray(0, 1));
+        });
+
+        RestPageSource source = new RestPageSource(httpClient, new JsonFactory(), new RestPageSource.Settings(
+            uri("/users"), PAGE_SIZE, 0, "page", "size", "items", "next", "Bearer token", Duration.ofSeconds(5)));
+
+        assertEquals(1, readAll(source).size());
+        assertEquals(List.of("Bearer token"), authorizations);
+    }
+
+    @Test
+    void failsOnAnErrorStatus() throws IOException {
+        serve(exchange -> {
+            if (pageNumber(exchange) == 0) {
+                respond(exchange, 200, usersArray(0, PAGE_SIZE));
+            } else {
+                respond(exchange, 503, "unavailable");
+            }
+        });
+
+        try (RestPageSource source = source(null, null)) {
+            source.next();
+            source.next();
+            IOException error = assertThrows(IOException.class, source::next);
+            assertTrue(error.getMessage().contains("HTTP 503"), error.getMessage());
+        }
+    }
+
+    @Test
+    void rejectsAPageThatIsNotJsonArrayOrObject() throws IOException {
+        serve(exchange -> respond(exchange, 200, "\"users\""));
+
+        try (RestPageSource source = source(null, null)) {
+            assertThrows(IOException.class, source::next);
+        }
+    }
+
+    private RestPageSource source(String itemsField, String nextField) {
+        return new RestPageSource(httpClient, new JsonFactory(), new RestPageSource.Settings(
+            uri("/users"), PAGE_SIZE, 0, "page", "size", itemsField, nextField, null, Duration.ofSeconds(5)));
+    }
+
+    private void serve(HttpHandler handler) {
+        server.createContext("/users", exchange -> {
+            queries.add(exchange.getRequestURI().getQuery());
+            handler.handle(exchange);
+        });
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + path);
+    }
+
+    private static List<SourceRecord> readAll(RestPageSource source) throws IOException {
+        try (source) {
+            List<SourceRecord> records = new ArrayList<>();
+            SourceRecord record;
+            while ((record = source.next()) != null) {
+                records.add(record);
+            }
+            assertNull(source.next());
+            return records;
+        }
+    }
+
+    private static int pageNumber(HttpExchange exchange) {
+        for (String param : exchange.getRequestURI().getQuery().split("&")) {
+            if (param.startsWith("page=")) {
+                return Integer.parseInt(param.substring("page=".length()));
+            }
+        }
+        throw new IllegalArgumentException("No page number in " + exchange.getRequestURI());
+    }
+
+    private static String usersArray(int first, int count) {
+        StringJoiner users = new StringJoiner(",", "[", "]");
+        for (int i = first; i < first + count; i++) {
+            users.add("{\"loginName\":\"user" + i + "\",\"email\":\"user" + i + "@example.com\"}");
+        }
+        return users.toString();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}